@@ -42,9 +42,15 @@ import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyCombination;
 import javafx.scene.input.KeyEvent;
 import javafx.stage.Stage;
+import org.publo.controller.MainViewController;
 import org.publo.controller.utils.Dialogs;
 import org.publo.controller.utils.FileUploader;
+import org.publo.controller.utils.Metrics;
+import org.publo.controller.utils.PreviewServer;
+import org.publo.controller.utils.RenderWarmUp;
+import org.publo.controller.utils.ProjectSearch;
 import org.publo.controller.utils.SiteExporter;
+import org.publo.controller.utils.Startup;
 import org.publo.filebrowser.FileBrowserPane;
 
 /**
@@ -99,8 +105,26 @@ public class Launcher extends Application {
                     KeyCombination.SHIFT_DOWN,
                     KeyCombination.CONTROL_DOWN);
 
+    /**
+     * The find in project key combination.
+     */
+    private static final KeyCombination CTRL_SHIFT_F
+            = new KeyCodeCombination(
+                    KeyCode.F,
+                    KeyCombination.SHIFT_DOWN,
+                    KeyCombination.CONTROL_DOWN);
+
+    /**
+     * The main view controller, shut down on exit.
+     */
+    private MainViewController mainViewController;
+
     @Override
     public void start(final Stage primaryStage) throws Exception {
+        /**
+         * Load the libraries the first frame does without in the background
+         */
+        Startup.warmUp();
         /**
          * Initialise the FileBrowser
          */
@@ -122,6 +146,7 @@ public class Launcher extends Application {
         final URL mainViewFxml = getClass().getResource("/fxml/mainView.fxml");
         final FXMLLoader mainView = new FXMLLoader(mainViewFxml);
         final Scene scene = new Scene(mainView.load());
+        mainViewController = mainView.getController();
         scene.addEventFilter(KeyEvent.KEY_PRESSED, (evt) -> {
             switch (evt.getCode()) {
                 case F1:
@@ -131,7 +156,14 @@ public class Launcher extends Application {
                     FileUploader.upload();
                     break;
                 case F7:
-                    SiteExporter.export();
+                    if (evt.isShiftDown()) {
+                        SiteExporter.exportAll();
+                    } else {
+                        SiteExporter.export();
+                    }
+                    break;
+                case F8:
+                    PreviewServer.toggle();
                     break;
                 case F11:
                     primaryStage.setFullScreen(true);
@@ -141,11 +173,33 @@ public class Launcher extends Application {
         scene.addEventFilter(KeyEvent.KEY_PRESSED, (evt) -> {
             if (CTRL_SHIFT_N.match(evt)) {
                 Dialogs.createNewProject();
+            } else if (CTRL_SHIFT_F.match(evt)) {
+                Dialogs.showSearch().ifPresent(mainViewController::select);
             }
         });
         primaryStage.setScene(scene);
         primaryStage.setMaximized(true);
         primaryStage.show();
+
+        /**
+         * Index the projects for searching, expose the metrics through JMX
+         * and, if enabled, warm up the renderer once the window is up
+         */
+        Startup.onFirstFrame(() -> {
+            ProjectSearch.start();
+            Metrics.register();
+            RenderWarmUp.startIfEnabled();
+        });
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (mainViewController != null) {
+            mainViewController.shutdown();
+        }
+        PreviewServer.shutdown();
+        ProjectSearch.shutdown();
+        super.stop();
     }
 
     public static void main(String[] args) {
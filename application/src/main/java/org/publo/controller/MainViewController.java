@@ -23,11 +23,17 @@
  */
 package org.publo.controller;
 
+import java.nio.file.Path;
 import java.util.logging.Logger;
+import javafx.application.Platform;
 import javafx.beans.property.DoubleProperty;
 import javafx.fxml.FXML;
 import org.publo.controller.listener.ActiveProjectListener;
+import org.publo.controller.utils.MetadataIndex;
+import org.publo.controller.utils.ProjectConfig;
+import org.publo.controller.utils.TemplateDependencies;
 import org.publo.filebrowser.FileBrowserPane;
+import org.publo.filebrowser.utils.FileSystemWatcher;
 import org.publo.preview.PreviewPane;
 import org.publo.textarea.TextAreaPane;
 
@@ -73,9 +79,36 @@ public final class MainViewController {
         fileBrowserPane.addTreeItemSelectionListener(activeProjectListener);
         fileBrowserPane.addTreeItemInvalidationListener(previewPane);
         textAreaPane.addTextChangeListener(previewPane);
-        textAreaPane.scrollPercentageProperty().addListener((evt) -> {
-            double percentageScrolled = ((DoubleProperty) evt).getValue();
-            previewPane.scrollTo(percentageScrolled);
+        textAreaPane.scrollLineProperty().addListener((evt) -> {
+            double lineScrolled = ((DoubleProperty) evt).getValue();
+            previewPane.scrollToLine(lineScrolled);
         });
+        FileSystemWatcher.getInstance().addFileChangeListener(
+                (kind, path) -> Platform.runLater(() -> {
+                    textAreaPane.invalidate(path);
+                    previewPane.invalidate(path);
+                }));
+        FileSystemWatcher.getInstance().addFileChangeListener(
+                (kind, path) -> MetadataIndex.invalidate(path));
+        FileSystemWatcher.getInstance().addFileChangeListener(
+                ProjectConfig::invalidate);
+    }
+
+    /**
+     * Selects a file in the browser, loading it in the editor.
+     *
+     * @param path of the file
+     */
+    public final void select(final Path path) {
+        fileBrowserPane.select(path);
+    }
+
+    /**
+     * Releases the resources held by the panes, saving any pending change.
+     */
+    public final void shutdown() {
+        LOGGER.info("Shutting down the Main View");
+        textAreaPane.shutdown();
+        TemplateDependencies.saveAll();
     }
 }
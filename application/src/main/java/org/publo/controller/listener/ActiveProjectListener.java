@@ -29,12 +29,13 @@ import java.util.logging.Logger;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import org.publo.Launcher;
+import org.publo.controller.utils.ProjectConfig;
 
 /**
  * Listener concerning the project currently selected.
  *
- * On selection of a file or directory in a different project it will update its
- * Project{@link Path} property.
+ * On selection of a file or directory in a different project it will make its
+ * {@link ProjectConfig} the active one.
  *
  * @author Antonio Cucchiara
  * @since 0.4
@@ -47,11 +48,6 @@ public class ActiveProjectListener implements ChangeListener<Path> {
     private static final Logger LOGGER
             = Logger.getLogger(ActiveProjectListener.class.getName());
 
-    /**
-     * The active project system property key.
-     */
-    public static final String PROJECT_KEY = "publo.active.project";
-
     @Override
     public void changed(
             final ObservableValue<? extends Path> observable,
@@ -60,7 +56,11 @@ public class ActiveProjectListener implements ChangeListener<Path> {
         final int projPathNameCount = Launcher.PROJECTS_PATH.getNameCount();
         final Path projectPath = newValue.subpath(0, projPathNameCount + 1);
         final Path projectRootPath = newValue.getRoot().resolve(projectPath);
-        LOGGER.log(Level.INFO, "Setting active project {0}", projectRootPath);
-        System.setProperty(PROJECT_KEY, projectRootPath.toString());
+        if (ProjectConfig.getActive() == null || !projectRootPath.equals(
+                ProjectConfig.getActive().getProjectPath())) {
+            LOGGER.log(Level.INFO, "Setting active project {0}",
+                    projectRootPath);
+        }
+        ProjectConfig.setActive(projectRootPath);
     }
 }
@@ -0,0 +1,456 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+/**
+ * Bundles and inlines the assets of exported pages, so that they load with
+ * fewer requests.
+ *
+ * Runs of stylesheets, and of scripts, following one another in a page are
+ * concatenated into a single file of the {@value #BUNDLES_DIR_NAME} site
+ * folder, named after its content so that it can be cached for good. A run
+ * is made of sibling elements with nothing but whitespace and comments in
+ * between: any other element, such as a style, an inline script or the end
+ * of the head, ends it, preserving the cascade and the order of
+ * execution. Stylesheets importing others, and scripts loaded asynchronously
+ * or as modules, are left alone. The {@code url()} references of the
+ * stylesheets bundled are rewritten to the bundle location.
+ *
+ * Images, icons and stylesheet resources up to the inline size are embedded
+ * as data URIs.
+ *
+ * Pages rendered with the same template share their assets: each run is
+ * bundled, and each asset read, once per export and reused for the following
+ * pages.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+final class AssetBundler {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(AssetBundler.class.getName());
+
+    /**
+     * The site folder of the bundles.
+     */
+    static final String BUNDLES_DIR_NAME = "bundles";
+
+    private static final String BUNDLES_WRITTEN = "export.bundles.written";
+    private static final String ASSETS_INLINED = "export.assets.inlined";
+
+    private static final String STYLESHEET_QUERY
+            = "link[rel=stylesheet], style";
+    private static final String SCRIPT_QUERY = "script";
+    private static final String INLINE_QUERY
+            = "img[src], source[src], link[rel~=(?i)icon][href]";
+
+    private static final Pattern CSS_URL = Pattern.compile(
+            "url\\(\\s*(['\"]?)([^'\")]+)\\1\\s*\\)");
+
+    /**
+     * The media types of the assets that may be inlined, by extension.
+     */
+    private static final Map<String, String> MEDIA_TYPES = new HashMap<>();
+
+    static {
+        MEDIA_TYPES.put("png", "image/png");
+        MEDIA_TYPES.put("jpg", "image/jpeg");
+        MEDIA_TYPES.put("jpeg", "image/jpeg");
+        MEDIA_TYPES.put("gif", "image/gif");
+        MEDIA_TYPES.put("svg", "image/svg+xml");
+        MEDIA_TYPES.put("webp", "image/webp");
+        MEDIA_TYPES.put("ico", "image/x-icon");
+        MEDIA_TYPES.put("woff", "font/woff");
+        MEDIA_TYPES.put("woff2", "font/woff2");
+        MEDIA_TYPES.put("ttf", "font/ttf");
+        MEDIA_TYPES.put("otf", "font/otf");
+    }
+
+    private final Path targetPath;
+    private final boolean bundle;
+    private final long inlineBytes;
+
+    /**
+     * The bundles by run of assets, empty if the run cannot be bundled.
+     */
+    private final Map<List<String>, String> bundles
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The data URIs by asset, empty if the asset is not inlined.
+     */
+    private final Map<String, String> dataUris = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a bundler for a site.
+     *
+     * @param targetPath the site root, its assets already copied
+     * @param bundle whether to bundle stylesheets and scripts
+     * @param inlineBytes the size up to which assets are inlined, zero to
+     * inline none
+     */
+    AssetBundler(
+            final Path targetPath,
+            final boolean bundle,
+            final long inlineBytes) {
+        this.targetPath = targetPath;
+        this.bundle = bundle;
+        this.inlineBytes = inlineBytes;
+    }
+
+    /**
+     * Whether the bundler may change the pages at all.
+     *
+     * @return true if bundling or inlining
+     */
+    boolean isEnabled() {
+        return bundle || inlineBytes > 0;
+    }
+
+    /**
+     * Rewrites a page to use the bundles and inline its small assets.
+     *
+     * @param page the page markup
+     * @param pagePath the '/' separated page path in the site
+     * @return the page rewritten, or as it was if nothing changed
+     */
+    String process(final String page, final String pagePath) {
+        if (!isEnabled()) {
+            return page;
+        }
+        final Document document = Jsoup.parse(page);
+        boolean changed = false;
+        if (bundle) {
+            changed |= bundleRuns(document, pagePath, true);
+            changed |= bundleRuns(document, pagePath, false);
+        }
+        for (Element element : document.select(INLINE_QUERY)) {
+            final String attribute = element.hasAttr("src") ? "src" : "href";
+            final String asset = localAsset(pagePath, element.attr(attribute));
+            final String dataUri = asset == null ? null : dataUri(asset);
+            if (dataUri != null) {
+                element.attr(attribute, dataUri);
+                changed = true;
+            }
+        }
+        return changed ? document.toString() : page;
+    }
+
+    /**
+     * Replaces the runs of stylesheets or scripts of a page with bundles.
+     *
+     * @param document the page
+     * @param pagePath the page path in the site
+     * @param css whether to bundle stylesheets rather than scripts
+     * @return true if the page changed
+     */
+    private boolean bundleRuns(
+            final Document document,
+            final String pagePath,
+            final boolean css) {
+        final List<Element> run = new ArrayList<>();
+        final List<String> assets = new ArrayList<>();
+        boolean changed = false;
+        for (Element element : document.select(
+                css ? STYLESHEET_QUERY : SCRIPT_QUERY)) {
+            final String asset = css ? stylesheetOf(element, pagePath)
+                    : scriptOf(element, pagePath);
+            if (asset == null || !run.isEmpty() && run.get(run.size() - 1)
+                    .nextElementSibling() != element) {
+                changed |= bundleRun(run, assets, pagePath, css);
+                run.clear();
+                assets.clear();
+            }
+            if (asset != null) {
+                run.add(element);
+                assets.add(asset);
+            }
+        }
+        changed |= bundleRun(run, assets, pagePath, css);
+        return changed;
+    }
+
+    /**
+     * Points the first element of a run to its bundle and removes the
+     * others. Runs of a single element are left as they are.
+     */
+    private boolean bundleRun(
+            final List<Element> run,
+            final List<String> assets,
+            final String pagePath,
+            final boolean css) {
+        if (run.size() < 2) {
+            return false;
+        }
+        final String bundlePath = bundles.computeIfAbsent(
+                new ArrayList<>(assets), key -> writeBundle(key, css));
+        if (bundlePath.isEmpty()) {
+            return false;
+        }
+        run.get(0).attr(css ? "href" : "src",
+                relativize(pagePath, bundlePath));
+        for (Element element : run.subList(1, run.size())) {
+            element.remove();
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the stylesheet a link loads, provided it applies to all
+     * media and is part of the site.
+     *
+     * @return the stylesheet site path or null if not to be bundled
+     */
+    private String stylesheetOf(final Element element, final String pagePath) {
+        final String media = element.attr("media").trim();
+        if (!"link".equals(element.tagName())
+                || !media.isEmpty() && !"all".equalsIgnoreCase(media)) {
+            return null;
+        }
+        return localAsset(pagePath, element.attr("href"));
+    }
+
+    /**
+     * Retrieves the script an element loads, provided it runs in document
+     * order and is part of the site.
+     *
+     * @return the script site path or null if not to be bundled
+     */
+    private String scriptOf(final Element element, final String pagePath) {
+        final String type = element.attr("type").trim();
+        if (!element.hasAttr("src") || element.hasAttr("async")
+                || element.hasAttr("defer") || element.hasAttr("nomodule")
+                || !type.isEmpty()
+                && !"text/javascript".equalsIgnoreCase(type)) {
+            return null;
+        }
+        return localAsset(pagePath, element.attr("src"));
+    }
+
+    /**
+     * Resolves a link to a file of the site.
+     *
+     * @param fromPath the site path the link appears in
+     * @param link the link
+     * @return the file site path, or null if external or missing
+     */
+    private String localAsset(final String fromPath, final String link) {
+        if (LinkChecker.isExternal(link)) {
+            return null;
+        }
+        final String asset = LinkChecker.resolve(fromPath, link);
+        if (asset == null || asset.isEmpty() || asset.endsWith("/")
+                || !Files.isRegularFile(targetPath.resolve(asset))) {
+            return null;
+        }
+        return asset;
+    }
+
+    /**
+     * Concatenates assets into a bundle named after its content.
+     *
+     * @param assets the site paths of the assets, in order
+     * @param css whether the assets are stylesheets
+     * @return the bundle site path, empty if the assets cannot be bundled
+     */
+    private String writeBundle(final List<String> assets, final boolean css) {
+        try {
+            final StringBuilder content = new StringBuilder();
+            for (String asset : assets) {
+                String text = new String(Files.readAllBytes(
+                        targetPath.resolve(asset)), StandardCharsets.UTF_8);
+                if (css) {
+                    if (text.contains("@import")
+                            || text.contains("@charset")) {
+                        LOGGER.log(Level.FINE, "Not bundling {0}, it imports "
+                                + "or declares a charset.", asset);
+                        return "";
+                    }
+                    text = rewriteUrls(text, asset);
+                }
+                content.append("/* ").append(asset).append(" */\n")
+                        .append(text).append(css ? "\n" : "\n;\n");
+            }
+            final byte[] bytes
+                    = content.toString().getBytes(StandardCharsets.UTF_8);
+            final String bundlePath = BUNDLES_DIR_NAME + "/" + hash(bytes)
+                    + (css ? ".css" : ".js");
+            final Path bundleFile = targetPath.resolve(bundlePath);
+            Files.createDirectories(bundleFile.getParent());
+            Files.write(bundleFile, bytes);
+            Metrics.counter(BUNDLES_WRITTEN).increment();
+            LOGGER.log(Level.FINE, "Bundled {0} into {1}",
+                    new Object[]{assets, bundlePath});
+            return bundlePath;
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not bundle " + assets, ex);
+            return "";
+        }
+    }
+
+    /**
+     * Rewrites the {@code url()} references of a stylesheet to point from
+     * the bundles folder, inlining the small resources.
+     *
+     * @param css the stylesheet
+     * @param cssPath the site path of the stylesheet
+     * @return the stylesheet rewritten
+     */
+    private String rewriteUrls(final String css, final String cssPath) {
+        final Matcher matcher = CSS_URL.matcher(css);
+        final StringBuffer rewritten = new StringBuffer(css.length());
+        while (matcher.find()) {
+            final String quote = matcher.group(1);
+            final String link = matcher.group(2).trim();
+            String replacement = matcher.group();
+            if (!LinkChecker.isExternal(link)) {
+                final String asset = LinkChecker.resolve(cssPath, link);
+                final String dataUri = asset == null
+                        || !Files.isRegularFile(targetPath.resolve(asset))
+                        ? null : dataUri(asset);
+                if (dataUri != null) {
+                    replacement = "url(\"" + dataUri + "\")";
+                } else if (asset != null) {
+                    final int suffix = link.replaceFirst("[?#].*", "")
+                            .length();
+                    replacement = "url(" + quote + relativize(
+                            BUNDLES_DIR_NAME + "/", asset)
+                            + link.substring(suffix) + quote + ")";
+                }
+            }
+            matcher.appendReplacement(rewritten,
+                    Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(rewritten);
+        return rewritten.toString();
+    }
+
+    /**
+     * Retrieves the data URI of an asset, read once.
+     *
+     * @param asset the site path of the asset
+     * @return the data URI or null if too large or of an unknown type
+     */
+    private String dataUri(final String asset) {
+        if (inlineBytes <= 0) {
+            return null;
+        }
+        final String dataUri = dataUris.computeIfAbsent(asset, key -> {
+            final String mediaType = MEDIA_TYPES.get(
+                    FileUtils.getExtension(key).replace(".", "")
+                            .toLowerCase(Locale.ROOT));
+            final Path file = targetPath.resolve(key);
+            try {
+                if (mediaType == null || Files.size(file) > inlineBytes) {
+                    return "";
+                }
+                return "data:" + mediaType + ";base64," + Base64.getEncoder()
+                        .encodeToString(Files.readAllBytes(file));
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Could not inline " + key, ex);
+                return "";
+            }
+        });
+        if (dataUri.isEmpty()) {
+            return null;
+        }
+        Metrics.counter(ASSETS_INLINED).increment();
+        return dataUri;
+    }
+
+    /**
+     * Computes the link from a site path to another.
+     *
+     * @param fromPath the '/' separated site path the link appears in
+     * @param toPath the '/' separated site path linked
+     * @return the relative, URL encoded, link
+     */
+    static String relativize(final String fromPath, final String toPath) {
+        final String[] from = fromPath.split("/", -1);
+        final String[] to = toPath.split("/", -1);
+        int common = 0;
+        while (common < from.length - 1 && common < to.length - 1
+                && from[common].equals(to[common])) {
+            common++;
+        }
+        final StringBuilder link = new StringBuilder();
+        for (int i = common; i < from.length - 1; i++) {
+            link.append("../");
+        }
+        for (int i = common; i < to.length; i++) {
+            if (i > common) {
+                link.append('/');
+            }
+            link.append(encode(to[i]));
+        }
+        return link.toString();
+    }
+
+    private static String encode(final String segment) {
+        try {
+            return URLEncoder.encode(segment, StandardCharsets.UTF_8.name())
+                    .replace("+", "%20");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException("UTF-8 not available.", ex);
+        }
+    }
+
+    private static String hash(final byte[] content) {
+        try {
+            final byte[] digest
+                    = MessageDigest.getInstance("SHA-256").digest(content);
+            final StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available.", ex);
+        }
+    }
+}
@@ -32,11 +32,14 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
 import javafx.event.ActionEvent;
 import javafx.geometry.Insets;
 import javafx.scene.Node;
@@ -47,10 +50,14 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Hyperlink;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.PasswordField;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.GridPane;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseButton;
 import javafx.scene.layout.Priority;
 import static org.publo.Launcher.BUNDLE;
 import static org.publo.Launcher.PROJ_DIR_NAME;
@@ -86,11 +93,31 @@ public class Dialogs {
      */
     public static final String FTP_URL_PROP = "ftp.url";
 
+    /**
+     * The site root Url Property, enabling the sitemap and feeds on export.
+     */
+    public static final String SITE_URL_PROP = "site.url";
+
+    /**
+     * The site title Property, used by the feeds.
+     */
+    public static final String SITE_TITLE_PROP = "site.title";
+
+    /**
+     * The site author Property, used by the feeds.
+     */
+    public static final String SITE_AUTHOR_PROP = "site.author";
+
     /**
      * Project name compliance RegEx.
      */
     private static final String PROJECT_NAME_REGEX = "^[a-zA-Z0-9\\-_]{3,20}$";
 
+    /**
+     * The maximum number of search results listed.
+     */
+    private static final int SEARCH_RESULTS = 50;
+
     /**
      * FTP server compliance RegEx.
      */
@@ -258,6 +285,127 @@ public class Dialogs {
         return dialog.showAndWait().orElse(new Credentials("", ""));
     }
 
+    /**
+     * Find in project dialog. Results are listed as the query is typed.
+     *
+     * @return the file chosen, if any
+     * @since 0.4
+     */
+    public static Optional<Path> showSearch() {
+        final Dialog<Path> dialog = new Dialog<>();
+        dialog.setTitle(BUNDLE.getString("publo.appname"));
+        dialog.setHeaderText(BUNDLE.getString("publo.search"));
+
+        final ButtonType buttonType
+                = new ButtonType(
+                        BUNDLE.getString("publo.search.button"),
+                        ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes()
+                .addAll(buttonType, ButtonType.CANCEL);
+
+        final GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20, 20, 20, 10));
+
+        final TextField queryField = new TextField();
+        queryField.setPromptText(BUNDLE.getString("publo.search.prompt"));
+        final ListView<SearchIndex.Result> resultList = new ListView<>();
+        resultList.setPrefSize(480, 320);
+
+        grid.add(new Label(BUNDLE.getString("publo.search.label")), 0, 0);
+        grid.add(queryField, 1, 0);
+        grid.add(resultList, 0, 1, 2, 1);
+        GridPane.setHgrow(queryField, Priority.ALWAYS);
+        GridPane.setVgrow(resultList, Priority.ALWAYS);
+
+        final Node openButton
+                = dialog.getDialogPane().lookupButton(buttonType);
+        openButton.setDisable(true);
+
+        queryField.textProperty().addListener((evt) -> {
+            final List<SearchIndex.Result> results
+                    = ProjectSearch.search(queryField.getText(), SEARCH_RESULTS);
+            resultList.getItems().setAll(results);
+            if (!results.isEmpty()) {
+                resultList.getSelectionModel().selectFirst();
+            }
+        });
+        resultList.getSelectionModel().selectedItemProperty().addListener(
+                (evt) -> openButton.setDisable(
+                        resultList.getSelectionModel().isEmpty()));
+        queryField.setOnKeyPressed((evt) -> {
+            if (evt.getCode() == KeyCode.DOWN) {
+                resultList.requestFocus();
+            }
+        });
+        resultList.setOnMouseClicked((evt) -> {
+            if (evt.getButton() == MouseButton.PRIMARY
+                    && evt.getClickCount() == 2
+                    && !resultList.getSelectionModel().isEmpty()) {
+                dialog.setResult(resultList.getSelectionModel()
+                        .getSelectedItem().getPath());
+                dialog.close();
+            }
+        });
+
+        dialog.getDialogPane().setContent(grid);
+
+        Platform.runLater(() -> queryField.requestFocus());
+
+        dialog.setResultConverter(dialogButton -> {
+            if (dialogButton == buttonType
+                    && !resultList.getSelectionModel().isEmpty()) {
+                return resultList.getSelectionModel().getSelectedItem()
+                        .getPath();
+            }
+            return null;
+        });
+        return dialog.showAndWait();
+    }
+
+    /**
+     * Progress dialog of a background task. The dialog closes once the task
+     * is done and cancels the task if closed beforehand.
+     *
+     * @param header of the dialog
+     * @param task to follow
+     * @since 0.4
+     */
+    public static void showProgress(final String header, final Task<?> task) {
+        final Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle(BUNDLE.getString("publo.appname"));
+        dialog.setHeaderText(header);
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
+
+        final GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20, 20, 20, 10));
+
+        final Label messageLabel = new Label();
+        messageLabel.textProperty().bind(task.messageProperty());
+        final ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(400);
+        progressBar.progressProperty().bind(task.progressProperty());
+
+        grid.add(messageLabel, 0, 0);
+        grid.add(progressBar, 0, 1);
+        dialog.getDialogPane().setContent(grid);
+
+        task.stateProperty().addListener((observable, oldState, state) -> {
+            if (state == Worker.State.SUCCEEDED
+                    || state == Worker.State.FAILED
+                    || state == Worker.State.CANCELLED) {
+                dialog.close();
+            }
+        });
+        dialog.setOnHidden((evt) -> task.cancel());
+        if (!task.isDone()) {
+            dialog.show();
+        }
+    }
+
     public static void showHelp() {
         final Alert alert = new Alert(AlertType.INFORMATION);
         alert.setTitle(BUNDLE.getString("publo.about"));
@@ -0,0 +1,309 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Streams the Atom and RSS feeds of an exported site.
+ *
+ * The feeds list the most recent pages declaring a {@value #DATE_KEY} in
+ * their front matter. Only the latest entries are retained while iterating
+ * the pages, so that memory stays flat regardless of the site size.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class FeedWriter {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(FeedWriter.class.getName());
+
+    /**
+     * The name of the Atom feed.
+     */
+    public static final String ATOM_FILE_NAME = "atom.xml";
+
+    /**
+     * The name of the RSS feed.
+     */
+    public static final String RSS_FILE_NAME = "rss.xml";
+
+    /**
+     * The default number of entries in the feeds.
+     */
+    public static final int DEFAULT_ENTRIES = 20;
+
+    static final String DATE_KEY = "date";
+    static final String TITLE_KEY = "title";
+    static final String DESCRIPTION_KEY = "description";
+
+    private static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+    private static final String ENCODING = "UTF-8";
+
+    private final String siteUrl;
+    private final String title;
+    private final String author;
+    private final int maxEntries;
+
+    /**
+     * Creates a writer for a site.
+     *
+     * @param siteUrl the site root url
+     * @param title the site title
+     * @param author the site author or null
+     * @param maxEntries the number of entries in the feeds
+     */
+    public FeedWriter(
+            final String siteUrl,
+            final String title,
+            final String author,
+            final int maxEntries) {
+        this.siteUrl = siteUrl;
+        this.title = title;
+        this.author = author;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Writes the feeds of the pages to the site target directory.
+     *
+     * @param pages of the site
+     * @param targetPath the site target directory
+     * @return the number of entries in the feeds
+     * @throws IOException on failure to write
+     */
+    public int write(final Iterable<PageMetadata> pages, final Path targetPath)
+            throws IOException {
+        final List<Entry> entries = latest(pages);
+        try {
+            writeAtom(entries, targetPath.resolve(ATOM_FILE_NAME));
+            writeRss(entries, targetPath.resolve(RSS_FILE_NAME));
+        } catch (XMLStreamException ex) {
+            throw new IOException("Could not write the feeds.", ex);
+        }
+        LOGGER.log(Level.INFO, "Feeds written with {0} entries.",
+                entries.size());
+        return entries.size();
+    }
+
+    /**
+     * Selects the latest dated pages.
+     *
+     * @param pages of the site
+     * @return the entries, most recent first
+     */
+    private List<Entry> latest(final Iterable<PageMetadata> pages) {
+        final Comparator<Entry> byDate = Comparator
+                .comparing((Entry entry) -> entry.date)
+                .thenComparing(entry -> entry.page.getPath(),
+                        Comparator.reverseOrder());
+        final PriorityQueue<Entry> queue = new PriorityQueue<>(byDate);
+        for (PageMetadata page : pages) {
+            final OffsetDateTime date = parseDate(page.get(DATE_KEY));
+            if (date == null) {
+                continue;
+            }
+            queue.add(new Entry(page, date));
+            if (queue.size() > maxEntries) {
+                queue.poll();
+            }
+        }
+        final List<Entry> entries = new ArrayList<>(queue);
+        entries.sort(byDate.reversed());
+        return entries;
+    }
+
+    /**
+     * Parses a front matter date, either an offset date time, a local date
+     * time taken as UTC or a local date.
+     *
+     * @param value the front matter value
+     * @return the date or null if missing or not a date
+     */
+    static OffsetDateTime parseDate(final String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        final String text = value.trim();
+        try {
+            return OffsetDateTime.parse(text);
+        } catch (DateTimeParseException ex) {
+            // Reported below
+        }
+        try {
+            return LocalDateTime.parse(text).atOffset(ZoneOffset.UTC);
+        } catch (DateTimeParseException ex) {
+            // Reported below
+        }
+        try {
+            return LocalDate.parse(text).atStartOfDay()
+                    .atOffset(ZoneOffset.UTC);
+        } catch (DateTimeParseException ex) {
+            LOGGER.log(Level.WARNING, "Ignoring invalid date {0}.", text);
+            return null;
+        }
+    }
+
+    private void writeAtom(final List<Entry> entries, final Path atomPath)
+            throws IOException, XMLStreamException {
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(atomPath))) {
+            final XMLStreamWriter xml = XMLOutputFactory.newInstance()
+                    .createXMLStreamWriter(out, ENCODING);
+            xml.writeStartDocument(ENCODING, "1.0");
+            xml.writeStartElement("feed");
+            xml.writeDefaultNamespace(ATOM_NAMESPACE);
+            writeElement(xml, "title", title);
+            writeLink(xml, SitemapWriter.absoluteUrl(siteUrl, ATOM_FILE_NAME),
+                    "self");
+            writeLink(xml, SitemapWriter.absoluteUrl(siteUrl, ""), null);
+            writeElement(xml, "updated", (entries.isEmpty()
+                    ? OffsetDateTime.now(ZoneOffset.UTC)
+                    : entries.get(0).date)
+                    .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+            writeElement(xml, "id", SitemapWriter.absoluteUrl(siteUrl, ""));
+            if (author != null) {
+                xml.writeStartElement("author");
+                writeElement(xml, "name", author);
+                xml.writeEndElement();
+            }
+            for (Entry entry : entries) {
+                final String url = entry.getUrl();
+                xml.writeStartElement("entry");
+                writeElement(xml, "title", entry.getTitle());
+                writeLink(xml, url, null);
+                writeElement(xml, "id", url);
+                writeElement(xml, "updated", entry.date
+                        .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+                final String description
+                        = entry.page.get(DESCRIPTION_KEY);
+                if (description != null) {
+                    writeElement(xml, "summary", description);
+                }
+                xml.writeEndElement();
+            }
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.close();
+        }
+    }
+
+    private void writeRss(final List<Entry> entries, final Path rssPath)
+            throws IOException, XMLStreamException {
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(rssPath))) {
+            final XMLStreamWriter xml = XMLOutputFactory.newInstance()
+                    .createXMLStreamWriter(out, ENCODING);
+            xml.writeStartDocument(ENCODING, "1.0");
+            xml.writeStartElement("rss");
+            xml.writeAttribute("version", "2.0");
+            xml.writeStartElement("channel");
+            writeElement(xml, "title", title);
+            writeElement(xml, "link", SitemapWriter.absoluteUrl(siteUrl, ""));
+            writeElement(xml, "description", title);
+            for (Entry entry : entries) {
+                final String url = entry.getUrl();
+                xml.writeStartElement("item");
+                writeElement(xml, "title", entry.getTitle());
+                writeElement(xml, "link", url);
+                writeElement(xml, "guid", url);
+                writeElement(xml, "pubDate", entry.date
+                        .format(DateTimeFormatter.RFC_1123_DATE_TIME));
+                final String description
+                        = entry.page.get(DESCRIPTION_KEY);
+                if (description != null) {
+                    writeElement(xml, "description", description);
+                }
+                xml.writeEndElement();
+            }
+            xml.writeEndElement();
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.close();
+        }
+    }
+
+    private static void writeLink(
+            final XMLStreamWriter xml,
+            final String href,
+            final String rel) throws XMLStreamException {
+        xml.writeEmptyElement("link");
+        xml.writeAttribute("href", href);
+        if (rel != null) {
+            xml.writeAttribute("rel", rel);
+        }
+    }
+
+    private static void writeElement(
+            final XMLStreamWriter xml,
+            final String name,
+            final String value) throws XMLStreamException {
+        xml.writeStartElement(name);
+        xml.writeCharacters(value);
+        xml.writeEndElement();
+    }
+
+    /**
+     * A dated page.
+     */
+    private final class Entry {
+
+        private final PageMetadata page;
+        private final OffsetDateTime date;
+
+        private Entry(final PageMetadata page, final OffsetDateTime date) {
+            this.page = page;
+            this.date = date;
+        }
+
+        private String getUrl() {
+            return SitemapWriter.absoluteUrl(siteUrl, page.getUrl());
+        }
+
+        private String getTitle() {
+            final String pageTitle = page.get(TITLE_KEY);
+            return pageTitle == null ? page.getPath() : pageTitle;
+        }
+    }
+}
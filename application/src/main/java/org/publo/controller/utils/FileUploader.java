@@ -23,19 +23,24 @@
  */
 package org.publo.controller.utils;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.Properties;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.scene.control.Alert;
@@ -59,13 +64,18 @@ public class FileUploader {
     private static final Logger LOGGER
             = Logger.getLogger(FileUploader.class.getName());
 
+    private static final String BYTES_UPLOADED = "upload.bytes";
+    private static final String FILES_UPLOADED = "upload.files";
+    private static final String FILES_FAILED = "upload.files.failed";
+    private static final String FILE_NANOS = "upload.file.nanos";
+    private static final String THROUGHPUT = "upload.bytes.per.second";
+
     /**
      * Creates an FTP Client, walks the compiled file tree for the site and
      * uploads it to the remote host.
      *
-     * This facility relies on a {@link String} representation of the active
-     * project root at the system property defined in the
-     * {@link ActiveProjectListener}.
+     * This facility relies on the {@link ProjectConfig} of the active project
+     * as selected by the {@link ActiveProjectListener}.
      *
      * The FTP Client will be initialised with the host name entered on creation
      * of the project. Details are gathered from the site property file
@@ -76,14 +86,18 @@ public class FileUploader {
      * implementation of local firewall rules.
      *
      * Upload, at this stage, will simply make a remote copy of the files
-     * overriding their remote counterparts.
+     * overriding their remote counterparts. The remote directories are created
+     * first, the files are then uploaded over as many connections as the
+     * project configuration sets.
      *
      * A dialog for the FTP server username and password will be presented to
      * the user before client initialisation.
+     *
+     * The bytes uploaded, the time taken per file and the throughput are
+     * recorded in the {@link Metrics}.
      */
     public static void upload() {
-        final String activeProject
-                = System.getProperty(ActiveProjectListener.PROJECT_KEY);
+        final ProjectConfig activeProject = ProjectConfig.getActive();
         if (activeProject == null) {
             final Alert alert = new Alert(Alert.AlertType.WARNING);
             alert.setTitle("Unable to upload the site");
@@ -94,31 +108,31 @@ public class FileUploader {
             LOGGER.severe("No project selected.");
             return;
         }
+        final String ftpUrl = activeProject.getFtpUrl();
+        if (ftpUrl == null) {
+            final Alert alert = new Alert(Alert.AlertType.WARNING);
+            alert.setTitle("Unable to upload the site");
+            alert.setHeaderText("It appears no FTP host is configured.");
+            alert.setContentText("Please set " + Dialogs.FTP_URL_PROP
+                    + " in the project properties file and retry uploading.");
+            alert.showAndWait();
+            LOGGER.severe("No FTP host configured.");
+            return;
+        }
         final FTPClient client = new FTPClient();
         try {
-            final Path projectAbsPath = Paths.get(activeProject);
-            final Path projTargetPath
-                    = projectAbsPath.resolve(TARGET_DIR_NAME);
-            final Path projectPropPath = Paths.get(
-                    projectAbsPath.toString(), Dialogs.CONFIG_PROP_FILE);
-            final InputStream propsFileInputStream
-                    = new FileInputStream(projectPropPath.toFile());
-            final Properties projectProps = new Properties();
-            projectProps.load(propsFileInputStream);
+            final Path projTargetPath = activeProject.getProjectPath()
+                    .resolve(TARGET_DIR_NAME);
             final Credentials cred = Dialogs.showLoginDialog();
 
-            client.connect(projectProps.getProperty(Dialogs.FTP_URL_PROP));
-            client.login(cred.getUsername(), cred.getPassword());
-            client.enterLocalPassiveMode();
-            client.setFileType(FTP.BINARY_FILE_TYPE);
+            connect(client, ftpUrl, cred);
 
+            final Queue<Path> files = new ConcurrentLinkedQueue<>();
             Files.walkFileTree(projTargetPath, new SimpleFileVisitor<Path>() {
 
                 /**
-                 * Before visiting a directory attempt to change the ftp client
-                 * working directory to the one being walked. If it does not
-                 * exist, create it and move to the newly created working
-                 * directory.
+                 * Before visiting a directory create its remote counterpart,
+                 * unless it exists.
                  *
                  * @param directory in analysis
                  * @param attrs unused
@@ -130,69 +144,33 @@ public class FileUploader {
                         final Path directory,
                         final BasicFileAttributes attrs)
                         throws IOException {
-                    final Path remotePath
-                            = projTargetPath.relativize(directory);
-                    LOGGER.log(Level.INFO, "Moving to directory {0}",
-                            remotePath);
-                    final String remotePathString = remotePath.toString();
-                    if (!client.changeWorkingDirectory(remotePathString)) {
-                        client.makeDirectory(remotePathString);
-                        client.changeWorkingDirectory(remotePathString);
+                    if (!directory.equals(projTargetPath)) {
+                        final String remotePath
+                                = remotePathOf(projTargetPath, directory);
+                        LOGGER.log(Level.FINE, "Creating directory {0}",
+                                remotePath);
+                        client.makeDirectory(remotePath);
                     }
                     return FileVisitResult.CONTINUE;
                 }
 
                 /**
-                 * After visiting a directory move back to its parent.
-                 *
-                 * @param directory in analysis
-                 * @param exc unused
-                 * @return CONTINUE
-                 * @throws IOException
-                 */
-                @Override
-                public FileVisitResult postVisitDirectory(
-                        final Path directory,
-                        final IOException exc)
-                        throws IOException {
-                    client.changeToParentDirectory();
-                    return FileVisitResult.CONTINUE;
-                }
-
-                /**
-                 * Visit the local file and upload it through the FTPClient.
+                 * Queue the local file for upload.
                  *
                  * @param filePath of the resource to upload
                  * @param attrs unused
                  * @return CONTINUE
-                 * @throws IOException
                  */
                 @Override
                 public FileVisitResult visitFile(
                         Path filePath,
-                        BasicFileAttributes attrs)
-                        throws IOException {
-                    LOGGER.log(Level.INFO, "Uploading local {0}", filePath);
-                    final File file = filePath.toFile();
-                    try (FileInputStream inputStream
-                            = new FileInputStream(file)) {
-                        final String fileName = file.getName();
-                        LOGGER.log(Level.INFO, "Uploading remote {0}",
-                                fileName);
-                        boolean done = client.storeFile(fileName, inputStream);
-                        if (done) {
-                            LOGGER.log(Level.INFO,
-                                    "File {0} successfully uploaded.",
-                                    filePath);
-                        } else {
-                            LOGGER.log(Level.WARNING,
-                                    "Failed to upload file {0}.",
-                                    filePath);
-                        }
-                    }
+                        BasicFileAttributes attrs) {
+                    files.add(filePath);
                     return FileVisitResult.CONTINUE;
                 }
             });
+            storeFiles(client, ftpUrl, cred, projTargetPath, files,
+                    activeProject.getUploadConnections());
             final Alert alert = new Alert(Alert.AlertType.INFORMATION);
             alert.setTitle("Success");
             alert.setHeaderText("Upload completed");
@@ -222,15 +200,162 @@ public class FileUploader {
             alert.showAndWait();
             LOGGER.log(Level.SEVERE, "Could not upload site.", ex);
         } finally {
-            try {
-                if (client.isConnected()) {
-                    client.logout();
-                    client.disconnect();
-                }
-            } catch (final IOException ex) {
-                LOGGER.log(Level.SEVERE, "Error initialising the FTP Client",
-                        ex);
+            disconnect(client);
+        }
+    }
+
+    /**
+     * Uploads the queued files over the given number of connections, the
+     * client already connected being one of them.
+     *
+     * @param client connected
+     * @param ftpUrl the host to connect the other clients to
+     * @param cred the credentials of the other clients
+     * @param projTargetPath the local root of the site
+     * @param files the files to upload
+     * @param connections the number of connections
+     * @throws IOException on failure of any of the connections
+     */
+    private static void storeFiles(
+            final FTPClient client,
+            final String ftpUrl,
+            final Credentials cred,
+            final Path projTargetPath,
+            final Queue<Path> files,
+            final int connections) throws IOException {
+        final int workerCount = Math.min(connections, files.size()) - 1;
+        if (workerCount <= 0) {
+            storeFiles(client, projTargetPath, files);
+            return;
+        }
+        LOGGER.log(Level.FINE, "Uploading {0} files over {1} connections",
+                new Object[]{files.size(), workerCount + 1});
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                workerCount, runnable -> {
+                    final Thread thread = new Thread(runnable, "publo-upload");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            final List<Future<Void>> workers = new ArrayList<>();
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(executor.submit(() -> {
+                    final FTPClient worker = new FTPClient();
+                    try {
+                        connect(worker, ftpUrl, cred);
+                        storeFiles(worker, projTargetPath, files);
+                    } finally {
+                        disconnect(worker);
+                    }
+                    return null;
+                }));
+            }
+            storeFiles(client, projTargetPath, files);
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload interrupted.");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Uploads files through a client until none is left in the queue.
+     *
+     * @param client connected
+     * @param projTargetPath the local root of the site
+     * @param files the files to upload
+     * @throws IOException on failure to read a file or to transfer it
+     */
+    private static void storeFiles(
+            final FTPClient client,
+            final Path projTargetPath,
+            final Queue<Path> files) throws IOException {
+        Path filePath;
+        while ((filePath = files.poll()) != null) {
+            storeFile(client, projTargetPath, filePath);
+        }
+    }
+
+    private static void storeFile(
+            final FTPClient client,
+            final Path projTargetPath,
+            final Path filePath) throws IOException {
+        final String remotePath = remotePathOf(projTargetPath, filePath);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "Uploading {0} to {1}",
+                    new Object[]{filePath, remotePath});
+        }
+        final long size = Files.size(filePath);
+        try (InputStream inputStream = Files.newInputStream(filePath)) {
+            final long start = System.nanoTime();
+            final boolean done = Trace.time("upload.file", () -> filePath,
+                    () -> client.storeFile(remotePath, inputStream));
+            final long nanos = System.nanoTime() - start;
+            if (done) {
+                Metrics.counter(FILES_UPLOADED).increment();
+                Metrics.counter(BYTES_UPLOADED).add(size);
+                Metrics.histogram(FILE_NANOS).record(nanos);
+                Metrics.histogram(THROUGHPUT).record(
+                        size * 1_000_000_000L / Math.max(1, nanos));
+                LOGGER.log(Level.FINE, "File {0} successfully uploaded.",
+                        filePath);
+            } else {
+                Metrics.counter(FILES_FAILED).increment();
+                LOGGER.log(Level.WARNING, "Failed to upload file {0}.",
+                        filePath);
+            }
+        }
+    }
+
+    private static void connect(
+            final FTPClient client,
+            final String ftpUrl,
+            final Credentials cred) throws IOException {
+        client.connect(ftpUrl);
+        client.login(cred.getUsername(), cred.getPassword());
+        client.enterLocalPassiveMode();
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+    }
+
+    private static void disconnect(final FTPClient client) {
+        try {
+            if (client.isConnected()) {
+                client.logout();
+                client.disconnect();
+            }
+        } catch (final IOException ex) {
+            LOGGER.log(Level.SEVERE, "Error initialising the FTP Client",
+                    ex);
+        }
+    }
+
+    /**
+     * Translates a local path of the site to its remote counterpart, relative
+     * to the FTP user directory.
+     *
+     * @param projTargetPath the local root of the site
+     * @param path the local file or directory
+     * @return the remote path, "/" separated
+     */
+    private static String remotePathOf(
+            final Path projTargetPath,
+            final Path path) {
+        final StringBuilder remotePath = new StringBuilder();
+        for (Path name : projTargetPath.relativize(path)) {
+            if (remotePath.length() > 0) {
+                remotePath.append('/');
             }
+            remotePath.append(name);
         }
+        return remotePath.toString();
     }
 }
@@ -0,0 +1,310 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+/**
+ * Checks the internal links of an exported site.
+ *
+ * The export gathers in memory the paths of the files it writes to the site.
+ * The pages among them are then parsed in parallel and every relative
+ * {@code href} and {@code src} is resolved against that set, so that the
+ * check takes time linear in the number of links. Files left in the site by
+ * earlier exports are not part of the set: links to them are broken. External
+ * links are not followed.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class LinkChecker {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(LinkChecker.class.getName());
+
+    /**
+     * The report file name, in the project root.
+     */
+    public static final String REPORT_FILE_NAME = ".link-report";
+
+    private static final String MARKUP_EXT = ".html";
+    private static final String INDEX_PAGE = "index.html";
+    private static final String LINK_QUERY = "[href], [src]";
+    private static final String[] LINK_ATTRIBUTES = {"href", "src"};
+
+    /**
+     * Links with a scheme, such as http: or mailto:, or protocol relative.
+     */
+    private static final Pattern EXTERNAL
+            = Pattern.compile("^([A-Za-z][A-Za-z0-9+.-]*:|//).*");
+
+    private LinkChecker() {
+    }
+
+    /**
+     * Checks the links of all the pages emitted to a site.
+     *
+     * @param targetPath the site root
+     * @param emitted the '/' separated site paths of the files emitted
+     * @return the report of the check
+     * @throws IOException on failure to read the site
+     */
+    public static Report check(
+            final Path targetPath,
+            final Set<String> emitted) throws IOException {
+        final List<Path> pages = emitted.stream()
+                .filter(path -> path.endsWith(MARKUP_EXT))
+                .map(targetPath::resolve)
+                .collect(Collectors.toList());
+        final List<BrokenLink> broken;
+        try {
+            broken = pages.parallelStream()
+                    .flatMap(page -> checkPage(targetPath, page, emitted)
+                            .stream())
+                    .sorted(Comparator.comparing(BrokenLink::getPage)
+                            .thenComparing(BrokenLink::getLink))
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        final Report report = new Report(pages.size(), broken);
+        LOGGER.info(report.toString());
+        return report;
+    }
+
+    /**
+     * Checks the links of a page.
+     *
+     * @param targetPath the site root
+     * @param page the page to check
+     * @param emitted the site paths
+     * @return the broken links of the page
+     * @throws UncheckedIOException on failure to read the page
+     */
+    private static List<BrokenLink> checkPage(
+            final Path targetPath,
+            final Path page,
+            final Set<String> emitted) {
+        final Document document;
+        try {
+            document = Jsoup.parse(page.toFile(),
+                    StandardCharsets.UTF_8.name());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        final String pagePath = toSitePath(targetPath, page);
+        final List<BrokenLink> broken = new ArrayList<>();
+        for (Element element : document.select(LINK_QUERY)) {
+            for (String attribute : LINK_ATTRIBUTES) {
+                final String link = element.attr(attribute);
+                if (!element.hasAttr(attribute) || isExternal(link)) {
+                    continue;
+                }
+                final String target = resolve(pagePath, link);
+                if (target != null && (emitted.contains(target)
+                        || emitted.contains(target + INDEX_PAGE)
+                        || emitted.contains(target + "/" + INDEX_PAGE))) {
+                    continue;
+                }
+                broken.add(new BrokenLink(pagePath, link));
+            }
+        }
+        return broken;
+    }
+
+    /**
+     * Whether a link points outside of the site or within the page.
+     *
+     * @param link the link
+     * @return true for empty links, fragments and links with a scheme
+     */
+    static boolean isExternal(final String link) {
+        return link.isEmpty() || link.startsWith("#")
+                || EXTERNAL.matcher(link).matches();
+    }
+
+    /**
+     * Resolves a link against the page it appears in.
+     *
+     * @param pagePath the '/' separated page path in the site
+     * @param link the link
+     * @return the '/' separated target path in the site, empty for the site
+     * root or null if the link leaves the site
+     */
+    static String resolve(final String pagePath, final String link) {
+        String target = link;
+        final int end = indexOfAny(target, '?', '#');
+        if (end >= 0) {
+            target = target.substring(0, end);
+        }
+        if (target.isEmpty()) {
+            return pagePath;
+        }
+        try {
+            target = URLDecoder.decode(target.replace("+", "%2B"),
+                    StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException | IllegalArgumentException ex) {
+            return null;
+        }
+        final List<String> segments = new ArrayList<>();
+        if (!target.startsWith("/")) {
+            final int slash = pagePath.lastIndexOf('/');
+            if (slash >= 0) {
+                Collections.addAll(segments,
+                        pagePath.substring(0, slash).split("/"));
+            }
+        }
+        for (String segment : target.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                if (segments.isEmpty()) {
+                    return null;
+                }
+                segments.remove(segments.size() - 1);
+            } else {
+                segments.add(segment);
+            }
+        }
+        final String resolved = String.join("/", segments);
+        return target.endsWith("/") && !resolved.isEmpty()
+                ? resolved + "/" : resolved;
+    }
+
+    private static int indexOfAny(final String text, final char... chars) {
+        int index = -1;
+        for (char c : chars) {
+            final int i = text.indexOf(c);
+            if (i >= 0 && (index < 0 || i < index)) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    private static String toSitePath(final Path targetPath, final Path file) {
+        return targetPath.relativize(file).toString()
+                .replace(File.separatorChar, '/');
+    }
+
+    /**
+     * A link to a file missing from the site.
+     */
+    public static final class BrokenLink {
+
+        private final String page;
+        private final String link;
+
+        BrokenLink(final String page, final String link) {
+            this.page = page;
+            this.link = link;
+        }
+
+        public String getPage() {
+            return page;
+        }
+
+        public String getLink() {
+            return link;
+        }
+
+        @Override
+        public String toString() {
+            return page + "\t" + link;
+        }
+    }
+
+    /**
+     * The outcome of a check.
+     */
+    public static final class Report {
+
+        private final int pageCount;
+        private final List<BrokenLink> brokenLinks;
+
+        Report(final int pageCount, final List<BrokenLink> brokenLinks) {
+            this.pageCount = pageCount;
+            this.brokenLinks = Collections.unmodifiableList(brokenLinks);
+        }
+
+        public int getPageCount() {
+            return pageCount;
+        }
+
+        /**
+         * Retrieves the broken links sorted by page and link.
+         *
+         * @return the broken links
+         */
+        public List<BrokenLink> getBrokenLinks() {
+            return brokenLinks;
+        }
+
+        /**
+         * Writes the report, a line per broken link with the page and the
+         * link tab separated.
+         *
+         * @param reportPath the report file
+         * @throws IOException on failure to write
+         */
+        public void write(final Path reportPath) throws IOException {
+            try (BufferedWriter writer = Files.newBufferedWriter(reportPath,
+                    StandardCharsets.UTF_8)) {
+                writer.write("# " + toString());
+                writer.newLine();
+                for (BrokenLink brokenLink : brokenLinks) {
+                    writer.write(brokenLink.toString());
+                    writer.newLine();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Link check: " + pageCount + " pages, "
+                    + brokenLinks.size() + " broken links";
+        }
+    }
+}
@@ -0,0 +1,529 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.Desktop;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import java.nio.file.WatchEvent.Kind;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.scene.control.Alert;
+import static org.publo.Launcher.TARGET_DIR_NAME;
+import static org.publo.Launcher.TEMPLATES_DIR_NAME;
+import org.publo.filebrowser.listener.FileChangeListener;
+import org.publo.filebrowser.utils.FileSystemWatcher;
+
+/**
+ * Local HTTP server rendering the active project pages on demand.
+ *
+ * Requests for {@code .html} pages are served by rendering the markdown
+ * counterpart through the {@link TemplateRenderer}. Every other resource is
+ * served as is from the project directory.
+ *
+ * Rendered pages are kept in a bounded least recently used cache invalidated
+ * by the {@link FileSystemWatcher}. Browsers are notified of changes through a
+ * server-sent events stream so to reload the page being viewed. Hidden files,
+ * such as autosave copies and export reports, are not sources of the site and
+ * are ignored. Bursts of changes result in a single reload.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class PreviewServer implements FileChangeListener {
+
+    /**
+     * The {@code PreviewServer} logger.
+     */
+    private static final Logger LOGGER
+            = Logger.getLogger(PreviewServer.class.getName());
+
+    /**
+     * The server port system property key.
+     */
+    public static final String PORT_KEY = "publo.server.port";
+
+    private static final int DEFAULT_PORT = 4000;
+
+    /**
+     * The maximum number of rendered pages held in memory.
+     */
+    private static final int CACHE_SIZE = 256;
+
+    /**
+     * The interval between keep-alive messages on the reload streams.
+     */
+    private static final long PING_SECONDS = 20;
+
+    /**
+     * The quiet period after a change before the browsers are notified, so
+     * that a burst of changes, such as a save, results in a single reload.
+     */
+    private static final long RELOAD_DELAY_MILLIS = 250;
+
+    private static final String MARKDOWN_EXT = ".md";
+    private static final String MARKUP_EXT = ".html";
+    private static final String INDEX_PAGE = "index" + MARKUP_EXT;
+    private static final String RELOAD_PATH = "/__publo/reload";
+
+    private static final String RELOAD_SCRIPT
+            = "<script>new EventSource('" + RELOAD_PATH + "').onmessage"
+            + " = function () { window.location.reload(); };</script>";
+
+    private static final byte[] RELOAD_MESSAGE
+            = "data: reload\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] PING_MESSAGE
+            = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The running server, if any.
+     */
+    private static PreviewServer instance;
+
+    private final Path projectPath;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService pinger;
+
+    /**
+     * Rendered pages by source markdown {@code Path}.
+     */
+    private final Map<Path, byte[]> cache
+            = new LinkedHashMap<Path, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, byte[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Incremented on every invalidation so that renders started before a
+     * change are not cached.
+     */
+    private long generation;
+
+    /**
+     * The project metadata version the cached pages were rendered with. Pages
+     * listing others are dropped when it changes.
+     */
+    private long cachedMetadataVersion = -1;
+
+    /**
+     * The open live-reload streams.
+     */
+    private final List<OutputStream> reloadClients
+            = new CopyOnWriteArrayList<>();
+
+    /**
+     * The directories registered on the {@link FileSystemWatcher}, released
+     * on stop.
+     */
+    private final Set<Path> watchedDirectories
+            = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The pending reload notification, if any.
+     */
+    private ScheduledFuture<?> pendingReload;
+
+    private PreviewServer(final Path projectPath, final int port)
+            throws IOException {
+        this.projectPath = projectPath.toAbsolutePath().normalize();
+        this.server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port), 0);
+        final int threads = Runtime.getRuntime().availableProcessors() * 2;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable,
+                    "preview-server-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pinger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "preview-server-ping");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(executor);
+        this.server.createContext(RELOAD_PATH, this::handleReload);
+        this.server.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts the server on the active project or stops it if running.
+     *
+     * On start the default browser is pointed to the project index page.
+     */
+    public static synchronized void toggle() {
+        if (instance != null) {
+            shutdown();
+            final Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("Preview server");
+            alert.setHeaderText("Preview server stopped");
+            alert.setContentText("The local preview server has been stopped.");
+            alert.showAndWait();
+            return;
+        }
+        final ProjectConfig activeProject = ProjectConfig.getActive();
+        if (activeProject == null) {
+            final Alert alert = new Alert(Alert.AlertType.WARNING);
+            alert.setTitle("Unable to start the preview server");
+            alert.setHeaderText("It appears no project is selected.");
+            alert.setContentText("Please select a project and retry "
+                    + "starting the preview server.");
+            alert.showAndWait();
+            LOGGER.severe("No project selected.");
+            return;
+        }
+        final int port = Integer.getInteger(PORT_KEY, DEFAULT_PORT);
+        try {
+            instance = new PreviewServer(activeProject.getProjectPath(), port);
+            instance.start();
+            final URI uri = URI.create("http://localhost:" + port + "/");
+            if (Desktop.isDesktopSupported() && Desktop.getDesktop()
+                    .isSupported(Desktop.Action.BROWSE)) {
+                Desktop.getDesktop().browse(uri);
+            } else {
+                final Alert alert = new Alert(Alert.AlertType.INFORMATION);
+                alert.setTitle("Preview server");
+                alert.setHeaderText("Preview server started");
+                alert.setContentText("Point your browser to " + uri);
+                alert.showAndWait();
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Could not start the preview server.", ex);
+            shutdown();
+            final Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Unable to start the preview server");
+            alert.setHeaderText("Error whilst starting the preview server");
+            alert.setContentText("Please check that port " + port
+                    + " is not in use by another application.");
+            alert.showAndWait();
+        }
+    }
+
+    /**
+     * Stops the running server, if any.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.stop();
+            instance = null;
+        }
+    }
+
+    private void start() throws IOException {
+        final FileSystemWatcher watcher = FileSystemWatcher.getInstance();
+        Files.walkFileTree(projectPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(
+                    final Path dir,
+                    final BasicFileAttributes attrs) {
+                if (!isSource(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                watch(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        watcher.addFileChangeListener(this);
+        pinger.scheduleAtFixedRate(() -> broadcast(PING_MESSAGE),
+                PING_SECONDS, PING_SECONDS, TimeUnit.SECONDS);
+        server.start();
+        LOGGER.log(Level.INFO, "Serving {0} on {1}",
+                new Object[]{projectPath, server.getAddress()});
+    }
+
+    private void stop() {
+        final FileSystemWatcher watcher = FileSystemWatcher.getInstance();
+        watcher.removeFileChangeListener(this);
+        watchedDirectories.forEach(watcher::unregister);
+        watchedDirectories.clear();
+        TemplateDependencies.saveAll();
+        server.stop(0);
+        pinger.shutdownNow();
+        executor.shutdownNow();
+        reloadClients.clear();
+        LOGGER.log(Level.INFO, "Stopped serving {0}", projectPath);
+    }
+
+    /**
+     * On change of a project resource drop the affected pages and notify the
+     * browsers. A template change affects the pages depending on it, as
+     * recorded in the {@link TemplateDependencies}.
+     *
+     * @param kind of the event
+     * @param path of the resource changed
+     */
+    @Override
+    public void changed(final Kind<?> kind, final Path path) {
+        if (!isSource(path)) {
+            return;
+        }
+        if (ENTRY_CREATE.equals(kind) && Files.isDirectory(path)) {
+            watch(path);
+        }
+        MetadataIndex.invalidate(path);
+        synchronized (cache) {
+            generation++;
+            if (isTemplate(path)) {
+                cache.keySet().removeAll(TemplateDependencies.of(projectPath)
+                        .getAffectedPages(path));
+            } else {
+                cache.remove(path);
+            }
+        }
+        scheduleReload();
+    }
+
+    /**
+     * Whether a resource is a source of the site: in the project, outside of
+     * the target directory and neither hidden nor in a hidden directory.
+     *
+     * @param path of the resource
+     * @return true if a source
+     */
+    private boolean isSource(final Path path) {
+        if (!path.startsWith(projectPath)
+                || path.startsWith(projectPath.resolve(TARGET_DIR_NAME))) {
+            return false;
+        }
+        for (Path name : projectPath.relativize(path)) {
+            if (name.toString().startsWith(".")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registers a directory of the project on the {@link FileSystemWatcher}.
+     *
+     * @param directory to watch
+     */
+    private void watch(final Path directory) {
+        if (watchedDirectories.add(directory)) {
+            FileSystemWatcher.getInstance().register(directory,
+                    ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        }
+    }
+
+    /**
+     * Notifies the browsers once no further change arrives for
+     * {@link #RELOAD_DELAY_MILLIS}.
+     */
+    private synchronized void scheduleReload() {
+        if (pendingReload != null) {
+            pendingReload.cancel(false);
+        }
+        try {
+            pendingReload = pinger.schedule(() -> broadcast(RELOAD_MESSAGE),
+                    RELOAD_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            LOGGER.log(Level.FINE, "Server stopped, reload dropped.", ex);
+        }
+    }
+
+    /**
+     * Whether a resource is in a templates directory of the project.
+     *
+     * @param path of the resource
+     * @return true if a template
+     */
+    private boolean isTemplate(final Path path) {
+        for (Path name : projectPath.relativize(path)) {
+            if (TEMPLATES_DIR_NAME.equals(name.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Holds the connection open and registers it for reload notifications.
+     *
+     * @param exchange the HTTP exchange
+     * @throws IOException if the headers could not be sent
+     */
+    private void handleReload(final HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        reloadClients.add(exchange.getResponseBody());
+    }
+
+    /**
+     * Sends a message to all the live-reload clients, dropping the ones no
+     * longer reachable.
+     *
+     * @param message to send
+     */
+    private void broadcast(final byte[] message) {
+        for (OutputStream client : reloadClients) {
+            try {
+                synchronized (client) {
+                    client.write(message);
+                    client.flush();
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, "Dropping reload client.", ex);
+                reloadClients.remove(client);
+            }
+        }
+    }
+
+    /**
+     * Serves a page or a static resource of the project.
+     *
+     * @param exchange the HTTP exchange
+     * @throws IOException if the response could not be sent
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                send(exchange, 405, "text/plain", new byte[0]);
+                return;
+            }
+            String requestPath = exchange.getRequestURI().getPath();
+            if (requestPath.endsWith("/")) {
+                requestPath += INDEX_PAGE;
+            }
+            final Path resourcePath = projectPath
+                    .resolve(requestPath.substring(1)).normalize();
+            if (!resourcePath.startsWith(projectPath)) {
+                send(exchange, 403, "text/plain", new byte[0]);
+                return;
+            }
+            final String fileName = resourcePath.getFileName().toString();
+            final Path markdownPath = resourcePath.resolveSibling(
+                    FileUtils.getBaseName(fileName) + MARKDOWN_EXT);
+            if (MARKUP_EXT.equals(FileUtils.getExtension(fileName))
+                    && Files.isRegularFile(markdownPath)) {
+                send(exchange, 200, "text/html; charset=utf-8",
+                        renderPage(markdownPath));
+            } else if (Files.isRegularFile(resourcePath)) {
+                final String contentType = Files.probeContentType(resourcePath);
+                send(exchange, 200, contentType == null
+                        ? "application/octet-stream" : contentType,
+                        Files.readAllBytes(resourcePath));
+            } else {
+                send(exchange, 404, "text/plain", new byte[0]);
+            }
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.log(Level.SEVERE, "Could not serve the request.", ex);
+            send(exchange, 500, "text/plain", new byte[0]);
+        }
+    }
+
+    /**
+     * Retrieves the rendered page from the cache or renders it.
+     *
+     * @param markdownPath of the page source
+     * @return the page markup bytes
+     * @throws IOException if the source could not be read
+     */
+    private byte[] renderPage(final Path markdownPath) throws IOException {
+        final long metadataVersion
+                = MetadataIndex.of(projectPath).getVersion();
+        final long renderGeneration;
+        synchronized (cache) {
+            if (metadataVersion != cachedMetadataVersion) {
+                final TemplateDependencies dependencies
+                        = TemplateDependencies.of(projectPath);
+                cache.keySet().removeIf(page -> !dependencies.contains(page)
+                        || dependencies.readsMetadata(page));
+                cachedMetadataVersion = metadataVersion;
+                generation++;
+            }
+            final byte[] page = cache.get(markdownPath);
+            if (page != null) {
+                return page;
+            }
+            renderGeneration = generation;
+        }
+        final String markdown = FileUtils.readFileContent(markdownPath);
+        final String html = RenderService.getInstance().render(
+                RenderService.Lane.WATCH,
+                () -> TemplateRenderer.render(markdown, markdownPath, false));
+        final int bodyEnd = html.lastIndexOf("</body>");
+        final String page = bodyEnd == -1
+                ? html + RELOAD_SCRIPT
+                : html.substring(0, bodyEnd) + RELOAD_SCRIPT
+                + html.substring(bodyEnd);
+        final byte[] pageBytes = page.getBytes(StandardCharsets.UTF_8);
+        synchronized (cache) {
+            if (renderGeneration == generation) {
+                cache.put(markdownPath, pageBytes);
+            }
+        }
+        return pageBytes;
+    }
+
+    private static void send(
+            final HttpExchange exchange,
+            final int status,
+            final String contentType,
+            final byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            exchange.sendResponseHeaders(status, body.length == 0 ? -1
+                    : body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        exchange.close();
+    }
+}
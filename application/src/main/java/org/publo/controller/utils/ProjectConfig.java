@@ -0,0 +1,359 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent.Kind;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.publo.filebrowser.utils.FileSystemWatcher;
+
+/**
+ * The configuration of a project, as read from its
+ * {@value Dialogs#CONFIG_PROP_FILE} file.
+ *
+ * Configurations are immutable, so that they can be shared by the render,
+ * export and upload threads. Each project configuration is loaded once, on
+ * first use, and loaded again as a whole when its file changes. Readers keep
+ * the instance they were handed for the duration of an operation, hence an
+ * export or an upload never sees a configuration half way through a change.
+ *
+ * Besides the site details, the configuration carries the performance
+ * settings of the project: the threads rendering pages on export, the
+ * bundling and inlining of the exported assets, the connections uploading
+ * files and the render cache budget.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class ProjectConfig {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(ProjectConfig.class.getName());
+
+    /**
+     * The export threads Property.
+     */
+    public static final String EXPORT_THREADS_PROP = "export.threads";
+
+    /**
+     * The upload connections Property.
+     */
+    public static final String UPLOAD_CONNECTIONS_PROP = "upload.connections";
+
+    /**
+     * The export asset bundling Property, true or false.
+     */
+    public static final String EXPORT_BUNDLE_PROP = "export.bundle";
+
+    /**
+     * The size up to which exported assets are inlined Property, in bytes.
+     */
+    public static final String EXPORT_INLINE_BYTES_PROP = "export.inline.bytes";
+
+    /**
+     * The render cache budget Property, in bytes.
+     */
+    public static final String RENDER_CACHE_BYTES_PROP = "render.cache.bytes";
+
+    /**
+     * The default number of upload connections.
+     */
+    public static final int DEFAULT_UPLOAD_CONNECTIONS = 1;
+
+    /**
+     * The default size up to which exported assets are inlined: 4 KiB.
+     */
+    public static final long DEFAULT_INLINE_BYTES = 4096;
+
+    /**
+     * The configurations by project root.
+     */
+    private static final Map<Path, ProjectConfig> CONFIGS
+            = new ConcurrentHashMap<>();
+
+    private static volatile ProjectConfig active;
+
+    private final Path projectPath;
+    private final String ftpUrl;
+    private final String siteUrl;
+    private final String siteTitle;
+    private final String siteAuthor;
+    private final int exportThreads;
+    private final boolean exportBundle;
+    private final long exportInlineBytes;
+    private final int uploadConnections;
+    private final long renderCacheBytes;
+
+    private ProjectConfig(final Path projectPath, final Properties props) {
+        this.projectPath = projectPath;
+        this.ftpUrl = trimToNull(props.getProperty(Dialogs.FTP_URL_PROP));
+        this.siteUrl = trimToNull(props.getProperty(Dialogs.SITE_URL_PROP));
+        final String title
+                = trimToNull(props.getProperty(Dialogs.SITE_TITLE_PROP));
+        this.siteTitle = title == null
+                ? projectPath.getFileName().toString() : title;
+        this.siteAuthor
+                = trimToNull(props.getProperty(Dialogs.SITE_AUTHOR_PROP));
+        this.exportThreads = (int) number(props, EXPORT_THREADS_PROP,
+                Runtime.getRuntime().availableProcessors(), 1);
+        final String bundle
+                = trimToNull(props.getProperty(EXPORT_BUNDLE_PROP));
+        this.exportBundle = bundle == null || Boolean.parseBoolean(bundle);
+        this.exportInlineBytes = number(props, EXPORT_INLINE_BYTES_PROP,
+                DEFAULT_INLINE_BYTES, 0);
+        this.uploadConnections = (int) number(props,
+                UPLOAD_CONNECTIONS_PROP, DEFAULT_UPLOAD_CONNECTIONS, 1);
+        this.renderCacheBytes = number(props, RENDER_CACHE_BYTES_PROP,
+                Long.getLong(RenderCache.BUDGET_KEY,
+                        RenderCache.DEFAULT_BUDGET), 1);
+    }
+
+    /**
+     * Retrieves the configuration of a project, loading it on first use.
+     *
+     * @param projectPath the project root
+     * @return the project configuration
+     */
+    public static ProjectConfig of(final Path projectPath) {
+        return CONFIGS.computeIfAbsent(projectPath, path -> {
+            FileSystemWatcher.getInstance().register(path,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            return load(path);
+        });
+    }
+
+    /**
+     * Reads the configuration of a project. A missing or unreadable file
+     * results in the default configuration.
+     *
+     * @param projectPath the project root
+     * @return the project configuration
+     */
+    static ProjectConfig load(final Path projectPath) {
+        final Path configPath = Paths.get(
+                projectPath.toString(), Dialogs.CONFIG_PROP_FILE);
+        final Properties props = new Properties();
+        if (Files.exists(configPath)) {
+            try (InputStream in = Files.newInputStream(configPath)) {
+                props.load(in);
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Could not read " + configPath
+                        + ", using the defaults.", ex);
+            }
+        }
+        LOGGER.log(Level.FINE, "Loaded the configuration of {0}",
+                projectPath);
+        return new ProjectConfig(projectPath, props);
+    }
+
+    /**
+     * Retrieves the configuration of the project currently selected.
+     *
+     * @return the configuration or null if no project is selected
+     */
+    public static ProjectConfig getActive() {
+        return active;
+    }
+
+    /**
+     * Selects a project, sizing the render cache as it configures.
+     *
+     * @param projectPath the project root
+     */
+    public static void setActive(final Path projectPath) {
+        final ProjectConfig config = of(projectPath);
+        if (config != active) {
+            active = config;
+            TemplateRenderer.getCache().setBudget(config.renderCacheBytes);
+        }
+    }
+
+    /**
+     * Loads again the configuration a changed file belongs to. Changes to
+     * anything but a configuration file are ignored.
+     *
+     * @param kind of the change
+     * @param path of the file changed
+     */
+    public static void invalidate(final Kind<?> kind, final Path path) {
+        final Path fileName = path.getFileName();
+        if (fileName == null || !Dialogs.CONFIG_PROP_FILE.substring(1)
+                .equals(fileName.toString())) {
+            return;
+        }
+        final Path projectPath = path.getParent();
+        final ProjectConfig reloaded = CONFIGS.computeIfPresent(projectPath,
+                (root, config) -> load(root));
+        final ProjectConfig current = active;
+        if (reloaded != null && current != null
+                && current.projectPath.equals(projectPath)) {
+            LOGGER.log(Level.INFO, "Configuration of {0} changed ({1}).",
+                    new Object[]{projectPath, kind});
+            setActive(projectPath);
+        }
+    }
+
+    public Path getProjectPath() {
+        return projectPath;
+    }
+
+    /**
+     * Retrieves the FTP host the site is uploaded to.
+     *
+     * @return the host or null if not configured
+     */
+    public String getFtpUrl() {
+        return ftpUrl;
+    }
+
+    /**
+     * Retrieves the root url of the site, enabling the sitemap and feeds.
+     *
+     * @return the url or null if not configured
+     */
+    public String getSiteUrl() {
+        return siteUrl;
+    }
+
+    /**
+     * Retrieves the site title, defaulting to the project name.
+     *
+     * @return the title
+     */
+    public String getSiteTitle() {
+        return siteTitle;
+    }
+
+    /**
+     * Retrieves the site author.
+     *
+     * @return the author or null if not configured
+     */
+    public String getSiteAuthor() {
+        return siteAuthor;
+    }
+
+    /**
+     * Retrieves the number of pages rendered at once on export, defaulting
+     * to the number of processors. It caps the export lane of the
+     * {@link RenderService}, whose workers render the pages after the
+     * previews.
+     *
+     * @return the thread count
+     */
+    public int getExportThreads() {
+        return exportThreads;
+    }
+
+    /**
+     * Whether the exported pages have their stylesheets and scripts bundled,
+     * as by default.
+     *
+     * @return true if bundling
+     */
+    public boolean isExportBundle() {
+        return exportBundle;
+    }
+
+    /**
+     * Retrieves the size up to which the assets of exported pages are inlined,
+     * zero disabling inlining.
+     *
+     * @return the size in bytes
+     */
+    public long getExportInlineBytes() {
+        return exportInlineBytes;
+    }
+
+    /**
+     * Retrieves the number of concurrent FTP connections uploading the site.
+     *
+     * @return the connection count
+     */
+    public int getUploadConnections() {
+        return uploadConnections;
+    }
+
+    /**
+     * Retrieves the render cache budget in use while the project is active,
+     * defaulting to {@link RenderCache#RenderCache()}.
+     *
+     * @return the budget in bytes
+     */
+    public long getRenderCacheBytes() {
+        return renderCacheBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "Project " + projectPath + ": " + exportThreads
+                + " export threads, " + uploadConnections
+                + " upload connections, " + renderCacheBytes
+                + " render cache bytes";
+    }
+
+    private static String trimToNull(final String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Reads a number, falling back on the default when missing, invalid or
+     * below the minimum.
+     */
+    private static long number(
+            final Properties props,
+            final String key,
+            final long defaultValue,
+            final long minimum) {
+        final String value = trimToNull(props.getProperty(key));
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            final long number = Long.parseLong(value);
+            if (number >= minimum) {
+                return number;
+            }
+        } catch (NumberFormatException ex) {
+            // Reported below
+        }
+        LOGGER.log(Level.WARNING, "Ignoring {0}={1}, a number from {2} is "
+                + "expected.", new Object[]{key, value, minimum});
+        return defaultValue;
+    }
+}
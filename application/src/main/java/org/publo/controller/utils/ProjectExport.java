@@ -0,0 +1,385 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.publo.filebrowser.utils.ProjectFiles;
+import static org.publo.Launcher.TARGET_DIR_NAME;
+import static org.publo.Launcher.TEMPLATES_DIR_NAME;
+
+/**
+ * The export of a project, in stages.
+ *
+ * {@link #prepare()} creates the counterpart directory structure in the
+ * project "target" sub-folder, copies the resources and lists the markdown
+ * pages. Each page is then rendered by {@link #exportPage(Path)}, possibly
+ * concurrently, its assets bundled and inlined by the {@link AssetBundler},
+ * and {@link #finish()} writes the search index, the sitemap and feeds and
+ * checks the links once all pages are exported. The site paths of the files
+ * emitted along the way are kept for the link check, so that files left in
+ * the site by earlier exports do not hide broken links.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+final class ProjectExport {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(ProjectExport.class.getName());
+
+    private static final String MARKDOWN_EXT = ".md";
+    private static final String MARKUP_EXT = ".html";
+
+    private static final String BYTES_COPIED = "export.bytes.copied";
+    private static final String BYTES_WRITTEN = "export.bytes.written";
+    private static final String PAGES_RENDERED = "export.pages.rendered";
+    private static final String PAGES_UP_TO_DATE = "export.pages.uptodate";
+    private static final String PAGE_NANOS = "export.page.nanos";
+    private static final String STAGE_COPY_NANOS = "export.stage.copy.nanos";
+    private static final String STAGE_INDEX_NANOS = "export.stage.index.nanos";
+    private static final String STAGE_LINKS_NANOS = "export.stage.links.nanos";
+
+    private final ProjectConfig config;
+    private final Path projectPath;
+    private final Path targetPath;
+    private final List<Path> pages = new ArrayList<>();
+    private final SiteSearchIndexer searchIndexer = new SiteSearchIndexer();
+    private final AtomicInteger renderedCount = new AtomicInteger();
+    private final Set<String> emitted = ConcurrentHashMap.newKeySet();
+    private final AssetBundler bundler;
+
+    /**
+     * The latest modification time of the resources copied, in milliseconds.
+     */
+    private long resourcesModified;
+    private final long start = System.nanoTime();
+
+    ProjectExport(final ProjectConfig config) {
+        this.config = config;
+        this.projectPath = config.getProjectPath();
+        this.targetPath = projectPath.resolve(TARGET_DIR_NAME);
+        this.bundler = new AssetBundler(targetPath, config.isExportBundle(),
+                config.getExportInlineBytes());
+    }
+
+    Path getProjectPath() {
+        return projectPath;
+    }
+
+    ProjectConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Retrieves the markdown pages found by {@link #prepare()}.
+     *
+     * @return the pages to export
+     */
+    List<Path> getPages() {
+        return Collections.unmodifiableList(pages);
+    }
+
+    int getRenderedCount() {
+        return renderedCount.get();
+    }
+
+    /**
+     * Retrieves the time elapsed since the export was created.
+     *
+     * @return the duration in milliseconds
+     */
+    long getElapsedMillis() {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Copies the resources and lists the pages to export.
+     *
+     * @throws IOException on failure to read the project or write the target
+     */
+    void prepare() throws IOException {
+        final FileVisitor<Path> projectFileVisitor
+                = new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                    throws IOException {
+                LOGGER.log(Level.FINE, "Visiting directory {0}", dir);
+                final String directoryName = dir.toFile().getName();
+                if (TARGET_DIR_NAME.equals(directoryName)
+                        || TEMPLATES_DIR_NAME.equals(directoryName)) {
+                    LOGGER.log(Level.FINE, "Skipping {0} directory.", dir);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(
+                        targetPath.resolve(projectPath.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public final FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    throws IOException {
+                final String fileName = file.getFileName().toString();
+                if (ProjectFiles.isPubloFile(fileName)) {
+                    LOGGER.log(Level.FINE, "Skipping {0}.", file);
+                    return FileVisitResult.CONTINUE;
+                }
+                if (MARKDOWN_EXT.equals(FileUtils.getExtension(fileName))) {
+                    pages.add(file);
+                    return FileVisitResult.CONTINUE;
+                }
+                final Path targetFilePath
+                        = targetPath.resolve(projectPath.relativize(file));
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, "Copying resource {0} to {1}",
+                            new Object[]{file, targetFilePath});
+                }
+                Trace.time("export.copy", () -> Files.copy(
+                        file,
+                        targetFilePath,
+                        StandardCopyOption.REPLACE_EXISTING
+                ));
+                Metrics.counter(BYTES_COPIED).add(attrs.size());
+                emit(targetFilePath);
+                resourcesModified = Math.max(resourcesModified,
+                        attrs.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public final FileVisitResult visitFileFailed(Path file, IOException exc)
+                    throws IOException {
+                LOGGER.log(Level.SEVERE, "Failed to export {0}", file);
+                return FileVisitResult.CONTINUE;
+            }
+        };
+        final long stageStart = System.nanoTime();
+        Files.walkFileTree(projectPath, projectFileVisitor);
+        MetadataIndex.of(projectPath).refresh();
+        Metrics.recordSince(STAGE_COPY_NANOS, stageStart);
+    }
+
+    /**
+     * Renders a markdown page to its target counterpart, unless up to date,
+     * and adds it to the search index. Pages rendered are indexed as parsed
+     * by the render, only the ones up to date or served from the render
+     * cache are parsed for the index.
+     *
+     * @param file the markdown page
+     * @throws UncheckedIOException on failure to read or write the page
+     */
+    void exportPage(final Path file) {
+        LOGGER.log(Level.FINE, "Processing markdown resource {0}.", file);
+        final long pageStart = System.nanoTime();
+        final Path relativePath = projectPath.relativize(file);
+        final String pageName
+                = FileUtils.getBaseName(file.getFileName().toString())
+                + MARKUP_EXT;
+        final Path htmlFilePath
+                = targetPath.resolve(relativePath).resolveSibling(pageName);
+        try {
+            Trace.run("export.page", () -> file,
+                    () -> writePage(file, htmlFilePath));
+            Metrics.recordSince(PAGE_NANOS, pageStart);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Renders a page, unless up to date, and adds it to the search index.
+     *
+     * @param file the markdown page
+     * @param htmlFilePath the exported page
+     * @throws IOException on failure to read or write the page
+     */
+    private void writePage(final Path file, final Path htmlFilePath)
+            throws IOException {
+        final String markdown = new String(Files.readAllBytes(file));
+        final String sitePagePath = toSitePath(htmlFilePath);
+        emitted.add(sitePagePath);
+        if (isUpToDate(file, htmlFilePath,
+                bundler.isEnabled() ? resourcesModified : 0)) {
+            LOGGER.log(Level.FINE, "{0} is up to date.", htmlFilePath);
+            Metrics.counter(PAGES_UP_TO_DATE).increment();
+            searchIndexer.add(sitePagePath, markdown);
+        } else {
+            final AtomicBoolean indexed = new AtomicBoolean();
+            final String page = RenderService.getInstance().render(
+                    RenderService.Lane.EXPORT,
+                    () -> TemplateRenderer.renderForExport(markdown, file,
+                            document -> {
+                                searchIndexer.add(sitePagePath, document);
+                                indexed.set(true);
+                            }));
+            if (!indexed.get()) {
+                searchIndexer.add(sitePagePath, markdown);
+            }
+            final byte[] pageBytes
+                    = bundler.process(page, sitePagePath).getBytes();
+            Files.write(htmlFilePath, pageBytes);
+            renderedCount.incrementAndGet();
+            Metrics.counter(PAGES_RENDERED).increment();
+            Metrics.counter(BYTES_WRITTEN).add(pageBytes.length);
+        }
+    }
+
+    /**
+     * Writes the site indexes and checks the links, reporting the broken ones
+     * in the project root.
+     *
+     * @return the link check report
+     * @throws IOException on failure to write
+     */
+    LinkChecker.Report finish() throws IOException {
+        long stageStart = System.nanoTime();
+        final Path searchPath
+                = targetPath.resolve(SiteSearchIndexer.SEARCH_DIR_NAME);
+        searchIndexer.write(searchPath);
+        emitFiles(searchPath);
+        TemplateDependencies.of(projectPath).save();
+        exportSitemapAndFeeds();
+        // Bundles are named after their content, the ones in the site are
+        // current even if written by an earlier export
+        emitFiles(targetPath.resolve(AssetBundler.BUNDLES_DIR_NAME));
+        Metrics.recordSince(STAGE_INDEX_NANOS, stageStart);
+
+        stageStart = System.nanoTime();
+        final LinkChecker.Report linkReport
+                = LinkChecker.check(targetPath, emitted);
+        linkReport.write(projectPath.resolve(LinkChecker.REPORT_FILE_NAME));
+        Metrics.recordSince(STAGE_LINKS_NANOS, stageStart);
+
+        LOGGER.log(Level.INFO, "Exported {0}: {1} pages, {2} rendered, {3} "
+                + "terms indexed.", new Object[]{projectPath, pages.size(),
+                    renderedCount.get(), searchIndexer.getTermCount()});
+        return linkReport;
+    }
+
+    /**
+     * Writes the sitemap and the feeds of the site, provided the project
+     * configuration defines the site url.
+     *
+     * @throws IOException on failure to write
+     */
+    private void exportSitemapAndFeeds() throws IOException {
+        final String siteUrl = config.getSiteUrl();
+        if (siteUrl == null) {
+            LOGGER.log(Level.INFO, "No {0} in the project configuration, "
+                    + "skipping sitemap and feeds.", Dialogs.SITE_URL_PROP);
+            return;
+        }
+        final PageList pageList = MetadataIndex.of(projectPath).getPages();
+        new SitemapWriter(siteUrl).write(pageList, targetPath)
+                .forEach(this::emit);
+        new FeedWriter(siteUrl, config.getSiteTitle(), config.getSiteAuthor(),
+                FeedWriter.DEFAULT_ENTRIES).write(pageList, targetPath);
+        emit(targetPath.resolve(FeedWriter.ATOM_FILE_NAME));
+        emit(targetPath.resolve(FeedWriter.RSS_FILE_NAME));
+    }
+
+    /**
+     * Records a file written to the site for the link check.
+     *
+     * @param file the file in the site
+     */
+    private void emit(final Path file) {
+        emitted.add(toSitePath(file));
+    }
+
+    /**
+     * Records the files of a site folder for the link check.
+     *
+     * @param directory the site folder, possibly not existing
+     * @throws IOException on failure to list the folder
+     */
+    private void emitFiles(final Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files
+                = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+            files.forEach(this::emit);
+        }
+    }
+
+    /**
+     * Retrieves the '/' separated path of a file relative to the site root.
+     *
+     * @param file the file in the site
+     * @return the site path
+     */
+    private String toSitePath(final Path file) {
+        return targetPath.relativize(file).toString()
+                .replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Whether an exported page is newer than its source, than all the
+     * templates it depends on and than the resources it may embed. Pages
+     * listing the project pages are never considered up to date, nor the ones
+     * never rendered.
+     *
+     * @param file the markdown page
+     * @param htmlFilePath the exported page
+     * @param resourcesModified the latest modification time of the resources
+     * embedded in the pages, zero if none is
+     * @return true if the page need not be rendered again
+     * @throws IOException on failure to read the modification times
+     */
+    private static boolean isUpToDate(
+            final Path file,
+            final Path htmlFilePath,
+            final long resourcesModified) throws IOException {
+        final TemplateDependencies dependencies = TemplateDependencies.of(file);
+        if (!Files.exists(htmlFilePath) || !dependencies.contains(file)
+                || dependencies.readsMetadata(file)) {
+            return false;
+        }
+        final long exported
+                = Files.getLastModifiedTime(htmlFilePath).toMillis();
+        return exported >= Files.getLastModifiedTime(file).toMillis()
+                && exported >= dependencies.getLastModified(file)
+                && exported >= resourcesModified;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import java.nio.file.WatchEvent.Kind;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import static org.publo.Launcher.PROJECTS_PATH;
+import static org.publo.Launcher.TARGET_DIR_NAME;
+import org.publo.filebrowser.listener.FileChangeListener;
+import org.publo.filebrowser.utils.FileSystemWatcher;
+
+/**
+ * Keeps a {@link SearchIndex} of every project up to date.
+ *
+ * Indexes are opened in the background on {@link #start()} and updated as the
+ * {@link FileSystemWatcher} reports changes to the sources. All the index
+ * maintenance happens on a single background thread; searches are served
+ * from memory on the calling thread.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class ProjectSearch implements FileChangeListener {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(ProjectSearch.class.getName());
+
+    /**
+     * The maximum time waited on shutdown for pending updates.
+     */
+    private static final long SHUTDOWN_SECONDS = 10;
+
+    /**
+     * The running instance, if any.
+     */
+    private static ProjectSearch instance;
+
+    /**
+     * The indexes by project directory.
+     */
+    private final Map<Path, SearchIndex> indexes = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor
+            = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "publo-search");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private ProjectSearch() {
+    }
+
+    /**
+     * Opens the indexes of all the projects in the background and starts
+     * tracking changes.
+     */
+    public static synchronized void start() {
+        if (instance != null) {
+            return;
+        }
+        instance = new ProjectSearch();
+        FileSystemWatcher.getInstance().addFileChangeListener(instance);
+        try (DirectoryStream<Path> projects
+                = Files.newDirectoryStream(PROJECTS_PATH, Files::isDirectory)) {
+            for (Path project : projects) {
+                instance.executor.execute(() -> instance.open(project));
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Could not list the projects.", ex);
+        }
+    }
+
+    /**
+     * Searches the sources of the active project or, if none is selected, of
+     * all the projects. Projects still being indexed on startup are not
+     * searched.
+     *
+     * @param query the words to search
+     * @param limit the maximum number of results
+     * @return the results, most relevant first
+     */
+    public static List<SearchIndex.Result> search(
+            final String query,
+            final int limit) {
+        final ProjectSearch search;
+        synchronized (ProjectSearch.class) {
+            search = instance;
+        }
+        if (search == null) {
+            return new ArrayList<>();
+        }
+        final ProjectConfig activeProject = ProjectConfig.getActive();
+        if (activeProject != null) {
+            final SearchIndex index
+                    = search.indexes.get(activeProject.getProjectPath());
+            return index == null ? new ArrayList<>()
+                    : index.search(query, limit);
+        }
+        return search.indexes.values().stream()
+                .flatMap(index -> index.search(query, limit).stream())
+                .sorted((a, b) -> Double.compare(b.getScore(), a.getScore()))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Stops tracking changes and persists the indexes, waiting for pending
+     * updates to complete.
+     */
+    public static synchronized void shutdown() {
+        if (instance == null) {
+            return;
+        }
+        final ProjectSearch search = instance;
+        instance = null;
+        FileSystemWatcher.getInstance().removeFileChangeListener(search);
+        search.executor.execute(search::save);
+        search.executor.shutdown();
+        try {
+            if (!search.executor.awaitTermination(SHUTDOWN_SECONDS,
+                    TimeUnit.SECONDS)) {
+                LOGGER.warning("Timed out saving the search indexes.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Routes the changes to the index of the project affected. New
+     * directories are watched. As a deleted path cannot be told a directory,
+     * deleting anything but a source or a hidden file causes the project to
+     * be walked again.
+     *
+     * @param kind of the event
+     * @param path of the resource changed
+     */
+    @Override
+    public void changed(final Kind<?> kind, final Path path) {
+        if (!path.startsWith(PROJECTS_PATH) || path.equals(PROJECTS_PATH)) {
+            return;
+        }
+        final Path project = PROJECTS_PATH.resolve(
+                PROJECTS_PATH.relativize(path).getName(0));
+        executor.execute(() -> {
+            final SearchIndex index = indexes.get(project);
+            if (index == null) {
+                if (Files.isDirectory(project)) {
+                    open(project);
+                }
+            } else if (!Files.exists(project)) {
+                indexes.remove(project);
+            } else if (Files.isDirectory(path)) {
+                if (ENTRY_CREATE.equals(kind)) {
+                    watch(path);
+                    index.refresh();
+                }
+            } else if (ENTRY_DELETE.equals(kind) && !isSourceName(path)) {
+                index.refresh();
+            } else {
+                index.update(path);
+            }
+        });
+    }
+
+    private static boolean isSourceName(final Path path) {
+        final String name = path.getFileName().toString();
+        return name.endsWith(".md") || name.startsWith(".");
+    }
+
+    private void open(final Path project) {
+        final SearchIndex index = SearchIndex.open(project);
+        watch(project);
+        indexes.put(project, index);
+        try {
+            index.save();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not save the index of "
+                    + project, ex);
+        }
+        LOGGER.log(Level.INFO, "Search index of {0}: {1} documents, "
+                + "{2} terms.", new Object[]{project,
+                    index.getDocumentCount(), index.getTermCount()});
+    }
+
+    /**
+     * Registers the source directories for changes.
+     */
+    private void watch(final Path directory) {
+        final FileSystemWatcher watcher = FileSystemWatcher.getInstance();
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(
+                        final Path dir,
+                        final BasicFileAttributes attrs) {
+                    final String name = dir.getFileName().toString();
+                    if (TARGET_DIR_NAME.equals(name) || name.startsWith(".")) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    watcher.register(dir, ENTRY_CREATE, ENTRY_DELETE,
+                            ENTRY_MODIFY);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not watch " + directory, ex);
+        }
+    }
+
+    private void save() {
+        for (SearchIndex index : indexes.values()) {
+            try {
+                index.save();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Could not save the index of "
+                        + index.getProjectPath(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,719 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Inverted index of the markdown sources of a project.
+ *
+ * Each term maps to the documents containing it, along with the number of
+ * occurrences and the line of the first one. The terms are kept sorted so
+ * that the last word of a query matches as a prefix, as typed.
+ *
+ * The index is updated a file at a time and persisted in the project
+ * directory, in the {@link #INDEX_FILE_NAME} deflated file. On
+ * {@link #refresh()} only the files modified since are analysed, in
+ * parallel.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class SearchIndex {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(SearchIndex.class.getName());
+
+    /**
+     * The name of the file the index is persisted to.
+     */
+    public static final String INDEX_FILE_NAME = ".search-index";
+
+    /**
+     * The persisted format identifier: "PSI" and the version.
+     */
+    private static final int MAGIC = 0x50534901;
+
+    private static final String MARKDOWN_EXT = ".md";
+
+    /**
+     * The directories holding no sources.
+     */
+    private static final Set<String> SKIPPED_DIRECTORIES
+            = new HashSet<>(Arrays.asList("target", "templates"));
+
+    /**
+     * Terms longer than this are not indexed.
+     */
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private final Path projectPath;
+
+    /**
+     * The documents by id. Removed documents leave a null until their id is
+     * taken again.
+     */
+    private final List<Document> documents = new ArrayList<>();
+
+    /**
+     * The ids of the removed documents, taken by the next documents added.
+     */
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+
+    /**
+     * The document ids by path relative to the project.
+     */
+    private final Map<String, Integer> documentIds = new HashMap<>();
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+
+    /**
+     * Whether the index changed since loaded or saved.
+     */
+    private boolean modified;
+
+    /**
+     * Creates an empty index of a project.
+     *
+     * @param projectPath the project directory
+     */
+    public SearchIndex(final Path projectPath) {
+        this.projectPath = projectPath;
+    }
+
+    /**
+     * Loads the index persisted in a project, if any, and refreshes it.
+     *
+     * @param projectPath the project directory
+     * @return the index
+     */
+    public static SearchIndex open(final Path projectPath) {
+        final SearchIndex index = new SearchIndex(projectPath);
+        try {
+            index.load();
+        } catch (NoSuchFileException ex) {
+            LOGGER.log(Level.INFO, "No index found for {0}.", projectPath);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Discarding the index of " + projectPath,
+                    ex);
+            index.clear();
+        }
+        index.refresh();
+        return index;
+    }
+
+    public Path getProjectPath() {
+        return projectPath;
+    }
+
+    /**
+     * Brings the index up to date with the project sources: new and
+     * modified files are analysed in parallel, deleted ones removed.
+     */
+    public void refresh() {
+        final Map<String, Long> sources = listSources();
+        final List<String> stale = new ArrayList<>();
+        synchronized (this) {
+            for (String path : new ArrayList<>(documentIds.keySet())) {
+                if (!sources.containsKey(path)) {
+                    remove(path);
+                }
+            }
+            sources.forEach((path, lastModified) -> {
+                final Integer id = documentIds.get(path);
+                if (id == null || documents.get(id).modified != lastModified) {
+                    stale.add(path);
+                }
+            });
+        }
+        final List<Document> analysed = stale.parallelStream()
+                .map(path -> analyse(path, sources.get(path)))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        synchronized (this) {
+            analysed.forEach(this::add);
+        }
+        LOGGER.log(Level.INFO, "Indexed {0} of {1} sources in {2}.",
+                new Object[]{analysed.size(), sources.size(), projectPath});
+    }
+
+    /**
+     * Updates the index following a change to a file of the project. Files
+     * other than markdown sources are ignored.
+     *
+     * @param file created, modified or deleted
+     */
+    public void update(final Path file) {
+        if (!isSource(file)) {
+            return;
+        }
+        final String path = relativePath(file);
+        Document document = null;
+        try {
+            if (Files.isRegularFile(file)) {
+                document = analyse(path,
+                        Files.getLastModifiedTime(file).toMillis());
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Could not read " + file, ex);
+        }
+        synchronized (this) {
+            if (document == null) {
+                remove(path);
+            } else {
+                add(document);
+            }
+        }
+    }
+
+    /**
+     * Finds the documents containing all the words of a query, the last one
+     * matching as a prefix. Results are ordered by relevance.
+     *
+     * @param query the words to search
+     * @param limit the maximum number of results
+     * @return the results
+     */
+    public synchronized List<Result> search(final String query, final int limit) {
+        final List<String> words = new ArrayList<>();
+        forEachTerm(query, (term, line) -> words.add(term));
+        if (words.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Integer, Result> hits = null;
+        for (int i = 0; i < words.size(); i++) {
+            final String word = words.get(i);
+            final Map<String, Postings> matches = i == words.size() - 1
+                    ? terms.subMap(word, word + Character.MAX_VALUE)
+                    : terms.subMap(word, true, word, true);
+            final Map<Integer, Result> wordHits = new HashMap<>();
+            for (Postings postings : matches.values()) {
+                final double idf = Math.log(1.0 + (double) documentIds.size()
+                        / postings.size);
+                for (int p = 0; p < postings.size; p++) {
+                    final int id = postings.documents[p];
+                    final Result previous = hits == null ? null : hits.get(id);
+                    if (hits != null && previous == null) {
+                        continue;
+                    }
+                    Result hit = wordHits.get(id);
+                    if (hit == null) {
+                        hit = new Result(projectPath.resolve(
+                                documents.get(id).path),
+                                previous == null ? postings.lines[p]
+                                : previous.line,
+                                previous == null ? 0 : previous.score);
+                        wordHits.put(id, hit);
+                    }
+                    hit.score += postings.frequencies[p] * idf;
+                    hit.line = Math.min(hit.line, postings.lines[p]);
+                }
+            }
+            hits = wordHits;
+        }
+        return hits.values().stream()
+                .sorted((a, b) -> Double.compare(b.score, a.score))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Retrieves the number of documents indexed.
+     *
+     * @return the document count
+     */
+    public synchronized int getDocumentCount() {
+        return documentIds.size();
+    }
+
+    /**
+     * Retrieves the number of distinct terms indexed.
+     *
+     * @return the term count
+     */
+    public synchronized int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * Persists the index, if modified, to the {@link #INDEX_FILE_NAME} file
+     * of the project. The file is written aside and moved in place.
+     *
+     * @throws IOException on failure to write the file
+     */
+    public synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        final Path indexPath = projectPath.resolve(INDEX_FILE_NAME);
+        final Path tempPath = indexPath.resolveSibling(INDEX_FILE_NAME + ".tmp");
+        final Map<Integer, Integer> ids = new HashMap<>();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new DeflaterOutputStream(
+                        Files.newOutputStream(tempPath))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(documentIds.size());
+            for (int id = 0; id < documents.size(); id++) {
+                final Document document = documents.get(id);
+                if (document != null) {
+                    ids.put(id, ids.size());
+                    out.writeUTF(document.path);
+                    out.writeLong(document.modified);
+                }
+            }
+            out.writeInt(terms.size());
+            for (Map.Entry<String, Postings> entry : terms.entrySet()) {
+                final Postings postings = entry.getValue();
+                out.writeUTF(entry.getKey());
+                writeVarInt(out, postings.size);
+                int previous = 0;
+                for (int p = 0; p < postings.size; p++) {
+                    final int id = ids.get(postings.documents[p]);
+                    writeVarInt(out, id - previous);
+                    writeVarInt(out, postings.frequencies[p]);
+                    writeVarInt(out, postings.lines[p]);
+                    previous = id;
+                }
+            }
+        }
+        Files.move(tempPath, indexPath, ATOMIC_MOVE, REPLACE_EXISTING);
+        modified = false;
+        LOGGER.log(Level.INFO, "Saved the index of {0}.", projectPath);
+    }
+
+    /**
+     * Loads the index persisted in the project.
+     *
+     * @throws IOException on failure to read the file or if not an index
+     */
+    synchronized void load() throws IOException {
+        clear();
+        final Path indexPath = projectPath.resolve(INDEX_FILE_NAME);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(Files.newInputStream(indexPath))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Unknown index format.");
+            }
+            final int documentCount = in.readInt();
+            if (documentCount < 0) {
+                throw new IOException("Malformed index.");
+            }
+            final List<List<String>> documentTerms = new ArrayList<>();
+            for (int id = 0; id < documentCount; id++) {
+                final String path = in.readUTF();
+                final long lastModified = in.readLong();
+                documents.add(new Document(path, lastModified, null));
+                documentIds.put(path, id);
+                documentTerms.add(new ArrayList<>());
+            }
+            final int termCount = in.readInt();
+            for (int t = 0; t < termCount; t++) {
+                final String term = in.readUTF();
+                final int size = readVarInt(in);
+                if (size < 0 || size > documentCount) {
+                    throw new IOException("Malformed index.");
+                }
+                final Postings postings = new Postings(size);
+                int id = 0;
+                for (int p = 0; p < size; p++) {
+                    final int delta = readVarInt(in);
+                    id += delta;
+                    if (delta < 0 || (p > 0 && delta == 0)
+                            || id >= documentCount) {
+                        throw new IOException("Malformed index.");
+                    }
+                    postings.add(id, readVarInt(in), readVarInt(in));
+                    documentTerms.get(id).add(term);
+                }
+                terms.put(term, postings);
+            }
+            for (int id = 0; id < documentCount; id++) {
+                final Document document = documents.get(id);
+                documents.set(id, new Document(document.path,
+                        document.modified, documentTerms.get(id)
+                        .toArray(new String[0])));
+            }
+        }
+    }
+
+    private synchronized void clear() {
+        documents.clear();
+        freeIds.clear();
+        documentIds.clear();
+        terms.clear();
+    }
+
+    /**
+     * Adds a document, replacing the previous version if any. The document
+     * takes the id of a removed one, its previous version's if replacing, so
+     * that updating the same files does not grow the index.
+     */
+    private void add(final Document document) {
+        remove(document.path);
+        final int id;
+        if (freeIds.isEmpty()) {
+            id = documents.size();
+            documents.add(document);
+        } else {
+            id = freeIds.pop();
+            documents.set(id, document);
+        }
+        documentIds.put(document.path, id);
+        for (int i = 0; i < document.terms.length; i++) {
+            terms.computeIfAbsent(document.terms[i], term -> new Postings(1))
+                    .add(id, document.frequencies[i], document.lines[i]);
+        }
+        modified = true;
+    }
+
+    private void remove(final String path) {
+        final Integer id = documentIds.remove(path);
+        if (id == null) {
+            return;
+        }
+        for (String term : documents.get(id).terms) {
+            final Postings postings = terms.get(term);
+            if (postings != null && postings.remove(id) && postings.size == 0) {
+                terms.remove(term);
+            }
+        }
+        documents.set(id, null);
+        freeIds.push(id);
+        modified = true;
+    }
+
+    /**
+     * Reads and tokenises a source.
+     *
+     * @return the document or null if it could not be read
+     */
+    private Document analyse(final String path, final long lastModified) {
+        try {
+            final String text = FileUtils.readFileContent(
+                    projectPath.resolve(path));
+            final Map<String, int[]> occurrences = new LinkedHashMap<>();
+            forEachTerm(text, (term, line) -> {
+                final int[] occurrence = occurrences.get(term);
+                if (occurrence == null) {
+                    occurrences.put(term, new int[]{1, line});
+                } else {
+                    occurrence[0]++;
+                }
+            });
+            final Document document = new Document(path, lastModified,
+                    occurrences.keySet().toArray(new String[0]));
+            int i = 0;
+            for (int[] occurrence : occurrences.values()) {
+                document.frequencies[i] = occurrence[0];
+                document.lines[i] = occurrence[1];
+                i++;
+            }
+            return document;
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not index " + path, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Lists the markdown sources of the project with their modification
+     * time.
+     */
+    private Map<String, Long> listSources() {
+        final Map<String, Long> sources = new HashMap<>();
+        try {
+            Files.walkFileTree(projectPath, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(
+                        final Path dir,
+                        final BasicFileAttributes attrs) {
+                    final String name = dir.getFileName().toString();
+                    if (!dir.equals(projectPath)
+                            && (SKIPPED_DIRECTORIES.contains(name)
+                            || name.startsWith("."))) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(
+                        final Path file,
+                        final BasicFileAttributes attrs) {
+                    if (file.getFileName().toString().endsWith(MARKDOWN_EXT)) {
+                        sources.put(relativePath(file),
+                                attrs.lastModifiedTime().toMillis());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(
+                        final Path file,
+                        final IOException ex) {
+                    LOGGER.log(Level.FINE, "Could not visit " + file, ex);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not list the sources of "
+                    + projectPath, ex);
+        }
+        return sources;
+    }
+
+    /**
+     * Whether a file is a markdown source of the project.
+     */
+    private boolean isSource(final Path file) {
+        if (!file.startsWith(projectPath)
+                || !file.getFileName().toString().endsWith(MARKDOWN_EXT)) {
+            return false;
+        }
+        final Path relative = projectPath.relativize(file);
+        for (int i = 0; i < relative.getNameCount() - 1; i++) {
+            final String name = relative.getName(i).toString();
+            if (SKIPPED_DIRECTORIES.contains(name) || name.startsWith(".")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String relativePath(final Path file) {
+        return projectPath.relativize(file).toString();
+    }
+
+    /**
+     * Splits a text in lower case terms: runs of letters and digits.
+     *
+     * @param text to split
+     * @param consumer of each term and the line it is found at, from 1
+     */
+    static void forEachTerm(final String text, final TermConsumer consumer) {
+        int line = 1;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            final char c = i < text.length() ? text.charAt(i) : '\n';
+            if (Character.isLetterOrDigit(c)) {
+                if (start < 0) {
+                    start = i;
+                }
+                continue;
+            }
+            if (start >= 0 && i - start <= MAX_TERM_LENGTH) {
+                consumer.accept(text.substring(start, i)
+                        .toLowerCase(Locale.ROOT), line);
+            }
+            start = -1;
+            if (c == '\n') {
+                line++;
+            }
+        }
+    }
+
+    private static void writeVarInt(final DataOutputStream out, int value)
+            throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(final DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed index.");
+    }
+
+    /**
+     * Receives the terms of a text.
+     */
+    @FunctionalInterface
+    interface TermConsumer {
+
+        void accept(String term, int line);
+    }
+
+    /**
+     * A source as indexed: its distinct terms with their number of
+     * occurrences and the line of the first one.
+     */
+    private static final class Document {
+
+        private final String path;
+        private final long modified;
+        private final String[] terms;
+        private final int[] frequencies;
+        private final int[] lines;
+
+        private Document(
+                final String path,
+                final long modified,
+                final String[] terms) {
+            this.path = path;
+            this.modified = modified;
+            this.terms = terms == null ? new String[0] : terms;
+            this.frequencies = new int[this.terms.length];
+            this.lines = new int[this.terms.length];
+        }
+    }
+
+    /**
+     * The documents containing a term, sorted by id, with the number of
+     * occurrences and the line of the first one.
+     */
+    private static final class Postings {
+
+        private int[] documents;
+        private int[] frequencies;
+        private int[] lines;
+        private int size;
+
+        private Postings(final int capacity) {
+            this.documents = new int[capacity];
+            this.frequencies = new int[capacity];
+            this.lines = new int[capacity];
+        }
+
+        /**
+         * Adds a document keeping the documents sorted. Documents with the
+         * highest id, the common case, are appended.
+         */
+        private void add(final int document, final int frequency, final int line) {
+            if (size == documents.length) {
+                final int capacity = Math.max(4, size * 2);
+                documents = Arrays.copyOf(documents, capacity);
+                frequencies = Arrays.copyOf(frequencies, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+            }
+            int index = size;
+            if (size > 0 && documents[size - 1] > document) {
+                index = -Arrays.binarySearch(documents, 0, size, document) - 1;
+                final int tail = size - index;
+                System.arraycopy(documents, index, documents, index + 1, tail);
+                System.arraycopy(frequencies, index, frequencies, index + 1,
+                        tail);
+                System.arraycopy(lines, index, lines, index + 1, tail);
+            }
+            documents[index] = document;
+            frequencies[index] = frequency;
+            lines[index] = line;
+            size++;
+        }
+
+        private boolean remove(final int document) {
+            final int index = Arrays.binarySearch(documents, 0, size, document);
+            if (index < 0) {
+                return false;
+            }
+            final int tail = size - index - 1;
+            System.arraycopy(documents, index + 1, documents, index, tail);
+            System.arraycopy(frequencies, index + 1, frequencies, index, tail);
+            System.arraycopy(lines, index + 1, lines, index, tail);
+            size--;
+            return true;
+        }
+    }
+
+    /**
+     * A document matching a query.
+     */
+    public static final class Result {
+
+        private final Path path;
+        private int line;
+        private double score;
+
+        private Result(final Path path, final int line, final double score) {
+            this.path = path;
+            this.line = line;
+            this.score = score;
+        }
+
+        /**
+         * Retrieves the absolute path of the document.
+         *
+         * @return the path
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Retrieves the first line, from 1, a word of the query is found at.
+         *
+         * @return the line
+         */
+        public int getLine() {
+            return line;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return path.getFileName() + ":" + line;
+        }
+    }
+}
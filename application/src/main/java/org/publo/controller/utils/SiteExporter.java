@@ -23,23 +23,33 @@
  */
 package org.publo.controller.utils;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javafx.concurrent.Task;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import static org.publo.Launcher.BUNDLE;
 import static org.publo.Launcher.PROJECTS_PATH;
-import static org.publo.Launcher.TARGET_DIR_NAME;
-import static org.publo.Launcher.TEMPLATES_DIR_NAME;
-import org.publo.controller.listener.ActiveProjectListener;
 
 /**
  * Exports the markdown to a site.
@@ -52,87 +62,43 @@ public class SiteExporter {
     private static final Logger LOGGER
             = Logger.getLogger(SiteExporter.class.getName());
 
-    private static final String MARKDOWN_EXT = ".md";
-    private static final String MARKUP_EXT = ".html";
+    /**
+     * The build report file name, in the project root, or in the projects
+     * directory for batch exports.
+     */
+    public static final String BUILD_REPORT_FILE_NAME = ".build-report.json";
+
+    /**
+     * The batch export summary file name, in the projects directory.
+     */
+    public static final String BATCH_REPORT_FILE_NAME = ".batch-export-report";
+
+    private static final String QUEUE_DEPTH = "export.queue.depth";
+    private static final String STAGE_RENDER_NANOS
+            = "export.stage.render.nanos";
 
     /**
      * Compiles the content of a project markdown to markup and bundles in a
      * template.
      *
      * Navigating the file-system the exporter will create a counterpart
-     * directory structure in a root "target" sub-folder. When encountering a
-     * file it will attempt to parse its content as markdown, wrap it in an
-     * template and write a markup file.
+     * directory structure in a root "target" sub-folder. Resources are copied
+     * as they are encountered. Markdown files are then rendered in parallel,
+     * wrapped in a template and written as markup, by as many threads as the
+     * project configuration sets, each page being added to
+     * the site search index on the way. Pages exported after the last change
+     * to their source and templates are left as they are. When the project
+     * declares its site url, the sitemap and feeds are streamed last from the
+     * project pages metadata. The internal links of the site are finally
+     * checked and the broken ones reported in the project root.
+     *
+     * The export runs in the background, its progress shown in a dialog. The
+     * {@link Metrics} gathered on the way are written to the project build
+     * report.
      *
      */
     public static void export() {
-
-        final FileVisitor<Path> projectFileVisitor
-                = new SimpleFileVisitor<Path>() {
-
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
-                    throws IOException {
-                LOGGER.log(Level.INFO, "Visiting directory {0}", dir);
-                final String directoryName = dir.toFile().getName();
-                if (TARGET_DIR_NAME.equals(directoryName)
-                        || TEMPLATES_DIR_NAME.equals(directoryName)) {
-                    LOGGER.log(Level.INFO, "Skipping {0} directory.", dir);
-                    return FileVisitResult.SKIP_SUBTREE;
-                }
-                return FileVisitResult.CONTINUE;
-            }
-
-            @Override
-            public final FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
-                    throws IOException {
-                final Path basePath = PROJECTS_PATH.resolve(file);
-                final Path targetPath
-                        = basePath.resolveSibling(TARGET_DIR_NAME);
-                if (Files.exists(targetPath)) {
-                    LOGGER.log(Level.INFO, "Target path {0} found.",
-                            targetPath);
-                } else {
-                    LOGGER.log(Level.INFO,
-                            "The path {0} does not exist. Creating it.",
-                            targetPath);
-                    Files.createDirectory(targetPath);
-                }
-                final String fileName = file.getFileName().toString();
-                final Path targetFilePath = targetPath.resolve(fileName);
-                final String extension = FileUtils.getExtension(fileName);
-                if (MARKDOWN_EXT.equals(extension)) {
-                    LOGGER.info("Processing markdown resource.");
-                    final String baseName = FileUtils.getBaseName(fileName);
-                    final String pageName = baseName + MARKUP_EXT;
-                    final Path htmlFilePath
-                            = targetFilePath.resolveSibling(pageName);
-                    final String markdown = new String(Files.readAllBytes(file));
-                    final String page = TemplateRenderer.render(
-                            markdown, file, false);
-                    Files.write(htmlFilePath, page.getBytes());
-                } else {
-                    final Path sourceFilePath = PROJECTS_PATH.resolve(file);
-                    LOGGER.log(Level.INFO, "Copying resource {0} to {1}",
-                            new Object[]{sourceFilePath, targetFilePath});
-                    Files.copy(
-                            sourceFilePath,
-                            targetFilePath,
-                            StandardCopyOption.REPLACE_EXISTING
-                    );
-                }
-                return FileVisitResult.CONTINUE;
-            }
-
-            @Override
-            public final FileVisitResult visitFileFailed(Path file, IOException exc)
-                    throws IOException {
-                LOGGER.log(Level.SEVERE, "Failed to export {0}", file);
-                return FileVisitResult.CONTINUE;
-            }
-        };
-        final String activeProject
-                = System.getProperty(ActiveProjectListener.PROJECT_KEY);
+        final ProjectConfig activeProject = ProjectConfig.getActive();
         if (activeProject == null) {
             final Alert alert = new Alert(Alert.AlertType.WARNING);
             alert.setTitle("Unable to upload the site");
@@ -143,22 +109,444 @@ public class SiteExporter {
             LOGGER.severe("No project selected.");
             return;
         }
-        try {
-            Files.walkFileTree(Paths.get(activeProject), projectFileVisitor);
+        final ExportTask task = new ExportTask(activeProject);
+        task.setOnSucceeded((evt) -> {
             final Alert alert = new Alert(AlertType.INFORMATION);
             alert.setTitle("Success");
             alert.setHeaderText("Export completed");
+            final int brokenLinks = task.getValue().getBrokenLinks().size();
             alert.setContentText("Your site has been successfully exported. "
-                    + "Find the output in the project target directory");
+                    + "Find the output in the project target directory"
+                    + (brokenLinks == 0 ? "" : ". " + brokenLinks
+                            + " broken links are listed in the project "
+                            + LinkChecker.REPORT_FILE_NAME + " file."));
             alert.showAndWait();
-        } catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, "An error has occured", ex);
+        });
+        run(task);
+    }
+
+    /**
+     * Exports all the projects in the {@link org.publo.Launcher#PROJECTS_PATH}
+     * concurrently.
+     *
+     * Every project is exported as by {@link #export()}, the resources of all
+     * the projects being copied first. Pages are then rendered by a pool of
+     * threads, sized after the project configuring the most, taking a page
+     * from each project in turn, so that large projects do not hold back the
+     * small ones.
+     * A project failing to export does not stop the others. A summary line
+     * per project is written to the {@value #BATCH_REPORT_FILE_NAME} file of
+     * the projects directory.
+     *
+     * @since 0.4
+     */
+    public static void exportAll() {
+        final BatchExportTask task = new BatchExportTask(PROJECTS_PATH);
+        task.setOnSucceeded((evt) -> {
+            final List<ProjectSummary> summaries = task.getValue();
+            final long failed = summaries.stream()
+                    .filter(summary -> summary.getError() != null).count();
+            final Alert alert = new Alert(failed == 0
+                    ? AlertType.INFORMATION : AlertType.WARNING);
+            alert.setTitle(failed == 0 ? "Success" : "Export incomplete");
+            alert.setHeaderText("Exported " + (summaries.size() - failed)
+                    + " of " + summaries.size() + " projects");
+            final StringBuilder content = new StringBuilder();
+            summaries.forEach(summary -> content.append(summary.describe())
+                    .append('\n'));
+            alert.setContentText(content.toString());
+            alert.showAndWait();
+        });
+        run(task);
+    }
+
+    /**
+     * Runs an export task in the background, showing its progress and
+     * alerting on failure.
+     *
+     * @param task the export
+     */
+    private static void run(final Task<?> task) {
+        task.setOnCancelled((evt) -> LOGGER.info("Export cancelled."));
+        task.setOnFailed((evt) -> {
+            LOGGER.log(Level.SEVERE, "An error has occured",
+                    task.getException());
             final Alert alert = new Alert(AlertType.ERROR);
             alert.setTitle("Unable to export site");
             alert.setHeaderText("Error whilst exporting your site");
             alert.setContentText("Please check that the " + PROJECTS_PATH
                     + "directory exists and that your have write permissions.");
             alert.showAndWait();
+        });
+        Dialogs.showProgress(BUNDLE.getString("publo.export.progress"), task);
+        final Thread thread = new Thread(task, "publo-export");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Exports a project, reporting the progress in pages rendered.
+     */
+    private static final class ExportTask extends Task<LinkChecker.Report> {
+
+        private final ProjectConfig config;
+
+        private ExportTask(final ProjectConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        protected LinkChecker.Report call()
+                throws IOException, InterruptedException {
+            final long start = System.nanoTime();
+            Metrics.reset();
+            final ProjectExport export = new ProjectExport(config);
+            updateMessage("Copying resources");
+            export.prepare();
+
+            final List<Path> pages = export.getPages();
+            updateMessage("Rendering " + pages.size() + " pages");
+            final long stageStart = System.nanoTime();
+            final AtomicInteger pendingCount
+                    = new AtomicInteger(pages.size());
+            Metrics.gauge(QUEUE_DEPTH, pendingCount::get);
+            RenderService.getInstance().setConcurrency(
+                    RenderService.Lane.EXPORT, config.getExportThreads());
+            final ForkJoinPool pool
+                    = new ForkJoinPool(config.getExportThreads());
+            try {
+                pool.submit(() -> pages.parallelStream().forEach(page -> {
+                    if (!isCancelled()) {
+                        export.exportPage(page);
+                    }
+                    final int pending = pendingCount.decrementAndGet();
+                    updateProgress(pages.size() - pending, pages.size());
+                })).get();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) ex.getCause()).getCause();
+                }
+                throw new IOException(ex.getCause());
+            } finally {
+                pool.shutdown();
+            }
+            Metrics.recordSince(STAGE_RENDER_NANOS, stageStart);
+            if (isCancelled()) {
+                return null;
+            }
+
+            updateMessage("Indexing the site and checking links");
+            final LinkChecker.Report linkReport = export.finish();
+            Metrics.writeReport(
+                    config.getProjectPath().resolve(BUILD_REPORT_FILE_NAME),
+                    System.nanoTime() - start);
+            return linkReport;
+        }
+    }
+
+    /**
+     * Exports all the projects of a directory, rendering their pages in a
+     * round robin.
+     */
+    private static final class BatchExportTask
+            extends Task<List<ProjectSummary>> {
+
+        private final Path projectsPath;
+
+        /**
+         * The projects with pages left to render, in turn.
+         */
+        private final Deque<Batch> turns = new ArrayDeque<>();
+
+        private final AtomicInteger pendingCount = new AtomicInteger();
+
+        private int pageCount;
+
+        private BatchExportTask(final Path projectsPath) {
+            this.projectsPath = projectsPath;
+        }
+
+        @Override
+        protected List<ProjectSummary> call()
+                throws IOException, InterruptedException {
+            final long start = System.nanoTime();
+            Metrics.reset();
+            final List<Batch> batches = new ArrayList<>();
+            try (DirectoryStream<Path> projects = Files.newDirectoryStream(
+                    projectsPath, path -> Files.isDirectory(path)
+                    && !path.getFileName().toString().startsWith("."))) {
+                for (Path project : projects) {
+                    batches.add(new Batch(
+                            new ProjectExport(ProjectConfig.of(project))));
+                }
+            }
+            Collections.sort(batches, (a, b) -> a.export.getProjectPath()
+                    .compareTo(b.export.getProjectPath()));
+            final int threads = batches.stream()
+                    .mapToInt(batch -> batch.export.getConfig()
+                            .getExportThreads())
+                    .max().orElse(1);
+            RenderService.getInstance().setConcurrency(
+                    RenderService.Lane.EXPORT, threads);
+            final ExecutorService executor = Executors.newFixedThreadPool(
+                    threads, runnable -> {
+                        final Thread thread
+                                = new Thread(runnable, "publo-batch-export");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            try {
+                updateMessage("Copying the resources of " + batches.size()
+                        + " projects");
+                final List<Callable<Void>> preparations = new ArrayList<>();
+                for (Batch batch : batches) {
+                    preparations.add(() -> {
+                        batch.prepare();
+                        return null;
+                    });
+                }
+                executor.invokeAll(preparations);
+                for (Batch batch : batches) {
+                    if (batch.error == null) {
+                        pageCount += batch.remaining.get();
+                        if (batch.remaining.get() == 0) {
+                            batch.finish();
+                        } else {
+                            turns.add(batch);
+                        }
+                    }
+                }
+                pendingCount.set(pageCount);
+                Metrics.gauge(QUEUE_DEPTH, pendingCount::get);
+
+                updateMessage("Rendering " + pageCount + " pages");
+                final long stageStart = System.nanoTime();
+                final List<Future<?>> workers = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    workers.add(executor.submit(this::work));
+                }
+                for (Future<?> worker : workers) {
+                    try {
+                        worker.get();
+                    } catch (ExecutionException ex) {
+                        LOGGER.log(Level.SEVERE, "Export worker failed.",
+                                ex.getCause());
+                    }
+                }
+                Metrics.recordSince(STAGE_RENDER_NANOS, stageStart);
+            } finally {
+                executor.shutdownNow();
+            }
+            if (isCancelled()) {
+                return null;
+            }
+            final List<ProjectSummary> summaries = new ArrayList<>();
+            for (Batch batch : batches) {
+                summaries.add(batch.summarise());
+            }
+            writeSummaries(summaries);
+            Metrics.writeReport(projectsPath.resolve(BUILD_REPORT_FILE_NAME),
+                    System.nanoTime() - start);
+            return summaries;
+        }
+
+        /**
+         * Renders pages, taking them from each project in turn, until none is
+         * left.
+         */
+        private void work() {
+            Page page;
+            while (!isCancelled() && (page = nextPage()) != null) {
+                final Batch batch = page.batch;
+                if (batch.error == null) {
+                    try {
+                        batch.export.exportPage(page.path);
+                    } catch (RuntimeException ex) {
+                        batch.fail(ex);
+                    }
+                }
+                if (batch.remaining.decrementAndGet() == 0) {
+                    batch.finish();
+                }
+                final int pending = pendingCount.decrementAndGet();
+                updateProgress(pageCount - pending, pageCount);
+            }
+        }
+
+        /**
+         * Takes the next page of the next project in turn.
+         *
+         * @return the page or null if none is left
+         */
+        private synchronized Page nextPage() {
+            final Batch batch = turns.pollFirst();
+            if (batch == null) {
+                return null;
+            }
+            final Path path = batch.pages.next();
+            if (batch.pages.hasNext()) {
+                turns.addLast(batch);
+            }
+            return new Page(batch, path);
+        }
+
+        private void writeSummaries(final List<ProjectSummary> summaries)
+                throws IOException {
+            try (BufferedWriter writer = Files.newBufferedWriter(
+                    projectsPath.resolve(BATCH_REPORT_FILE_NAME),
+                    StandardCharsets.UTF_8)) {
+                writer.write("# project\tpages\trendered\tbroken links"
+                        + "\tmilliseconds\terror");
+                writer.newLine();
+                for (ProjectSummary summary : summaries) {
+                    writer.write(summary.toString());
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    /**
+     * The state of a project export within a batch.
+     */
+    private static final class Batch {
+
+        private final ProjectExport export;
+        private final AtomicInteger remaining = new AtomicInteger();
+        private Iterator<Path> pages;
+        private volatile LinkChecker.Report report;
+        private volatile Exception error;
+        private volatile long millis;
+
+        private Batch(final ProjectExport export) {
+            this.export = export;
+        }
+
+        private void prepare() {
+            try {
+                export.prepare();
+                pages = export.getPages().iterator();
+                remaining.set(export.getPages().size());
+            } catch (IOException | RuntimeException ex) {
+                fail(ex);
+            }
+        }
+
+        private void finish() {
+            if (error == null) {
+                try {
+                    report = export.finish();
+                } catch (IOException | RuntimeException ex) {
+                    fail(ex);
+                }
+            }
+            millis = export.getElapsedMillis();
+        }
+
+        private void fail(final Exception ex) {
+            LOGGER.log(Level.SEVERE, "Unable to export "
+                    + export.getProjectPath(), ex);
+            if (error == null) {
+                error = ex;
+            }
+        }
+
+        private ProjectSummary summarise() {
+            return new ProjectSummary(
+                    export.getProjectPath().getFileName().toString(),
+                    export.getPages().size(), export.getRenderedCount(),
+                    report == null ? 0 : report.getBrokenLinks().size(),
+                    millis == 0 ? export.getElapsedMillis() : millis,
+                    error == null ? null : String.valueOf(error.getMessage()));
+        }
+    }
+
+    /**
+     * A page of a project in a batch.
+     */
+    private static final class Page {
+
+        private final Batch batch;
+        private final Path path;
+
+        private Page(final Batch batch, final Path path) {
+            this.batch = batch;
+            this.path = path;
+        }
+    }
+
+    /**
+     * The outcome of a project export within a batch.
+     */
+    public static final class ProjectSummary {
+
+        private final String project;
+        private final int pageCount;
+        private final int renderedCount;
+        private final int brokenLinkCount;
+        private final long millis;
+        private final String error;
+
+        ProjectSummary(
+                final String project,
+                final int pageCount,
+                final int renderedCount,
+                final int brokenLinkCount,
+                final long millis,
+                final String error) {
+            this.project = project;
+            this.pageCount = pageCount;
+            this.renderedCount = renderedCount;
+            this.brokenLinkCount = brokenLinkCount;
+            this.millis = millis;
+            this.error = error;
+        }
+
+        public String getProject() {
+            return project;
+        }
+
+        public int getPageCount() {
+            return pageCount;
+        }
+
+        public int getRenderedCount() {
+            return renderedCount;
+        }
+
+        public int getBrokenLinkCount() {
+            return brokenLinkCount;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Retrieves the reason the project failed to export.
+         *
+         * @return the error message or null if exported
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Describes the outcome for display.
+         *
+         * @return the description
+         */
+        String describe() {
+            return error != null ? project + ": failed, " + error
+                    : project + ": " + pageCount + " pages, " + renderedCount
+                    + " rendered, " + brokenLinkCount + " broken links";
+        }
+
+        @Override
+        public String toString() {
+            return project + "\t" + pageCount + "\t" + renderedCount + "\t"
+                    + brokenLinkCount + "\t" + millis + "\t"
+                    + (error == null ? "" : error);
         }
     }
 }
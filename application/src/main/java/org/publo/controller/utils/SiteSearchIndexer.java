@@ -0,0 +1,402 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.commonmark.ext.front.matter.YamlFrontMatterExtension;
+import org.commonmark.ext.front.matter.YamlFrontMatterVisitor;
+import org.commonmark.node.AbstractVisitor;
+import org.commonmark.node.Code;
+import org.commonmark.node.Heading;
+import org.commonmark.node.HardLineBreak;
+import org.commonmark.node.Node;
+import org.commonmark.node.Paragraph;
+import org.commonmark.node.SoftLineBreak;
+import org.commonmark.node.Text;
+import org.commonmark.parser.Parser;
+
+/**
+ * Builds the client-side search index of an exported site.
+ *
+ * Pages are added as they are rendered, from any thread. On {@link #write}
+ * the index is laid out in a {@value #SEARCH_DIR_NAME} directory as JSON:
+ * <ul>
+ * <li>{@code pages.json}: an array of the pages url, title and summary, the
+ * position being the page id;</li>
+ * <li>{@code <shard>.json}: for the terms starting with the shard character,
+ * an object mapping each term to a flat array of page id and weight
+ * pairs.</li>
+ * </ul>
+ * A browser only downloads the shards of the words searched. The
+ * {@code search.js} script shipped alongside performs the lookups.
+ *
+ * Terms found in the title weigh {@value #TITLE_WEIGHT}, in the front matter
+ * {@value #FRONT_MATTER_WEIGHT}, in the body one per occurrence.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class SiteSearchIndexer {
+
+    /**
+     * The name of the directory the index is written to, in the target.
+     */
+    public static final String SEARCH_DIR_NAME = "search";
+
+    private static final String PAGES_FILE_NAME = "pages.json";
+    private static final String SCRIPT_NAME = "search.js";
+    private static final String JSON_EXT = ".json";
+
+    /**
+     * The shard of the terms not starting with a latin letter or a digit.
+     */
+    private static final char OTHER_SHARD = '_';
+
+    private static final String TITLE_KEY = "title";
+    private static final int TITLE_WEIGHT = 10;
+    private static final int FRONT_MATTER_WEIGHT = 3;
+    private static final int SUMMARY_LENGTH = 160;
+
+    private final List<Page> pages = new ArrayList<>();
+
+    /**
+     * The postings of each term.
+     */
+    private final Map<String, Postings> terms = new HashMap<>();
+
+    /**
+     * Adds a page to the index parsing its markdown. Pages rendered are
+     * rather added as parsed by the render, see {@link #add(String, Node)}.
+     *
+     * @param url of the page relative to the site root
+     * @param markdown source of the page
+     */
+    public void add(final String url, final String markdown) {
+        final Parser parser = Parser.builder()
+                .extensions(Arrays.asList(YamlFrontMatterExtension.create()))
+                .build();
+        add(url, parser.parse(markdown));
+    }
+
+    /**
+     * Adds a page to the index. Safe to invoke concurrently: the analysis
+     * happens on the calling thread, only the merge is serialised.
+     *
+     * @param url of the page relative to the site root
+     * @param document of the page, parsed with the
+     * {@link YamlFrontMatterExtension}
+     */
+    public void add(final String url, final Node document) {
+        final YamlFrontMatterVisitor frontMatterVisitor
+                = new YamlFrontMatterVisitor();
+        document.accept(frontMatterVisitor);
+        final TextVisitor textVisitor = new TextVisitor();
+        document.accept(textVisitor);
+
+        final Map<String, Integer> weights = new LinkedHashMap<>();
+        final SearchIndex.TermConsumer body = (term, line)
+                -> weights.merge(term, 1, Integer::sum);
+        SearchIndex.forEachTerm(textVisitor.text.toString(), body);
+        String title = textVisitor.heading;
+        for (Map.Entry<String, List<String>> field
+                : frontMatterVisitor.getData().entrySet()) {
+            final String value = String.join(" ", field.getValue());
+            if (TITLE_KEY.equals(field.getKey())) {
+                title = value;
+            } else {
+                SearchIndex.forEachTerm(value, (term, line)
+                        -> weights.merge(term, FRONT_MATTER_WEIGHT,
+                                Integer::sum));
+            }
+        }
+        if (title == null) {
+            title = url;
+        }
+        SearchIndex.forEachTerm(title, (term, line)
+                -> weights.merge(term, TITLE_WEIGHT, Integer::sum));
+        final String summary = summarise(textVisitor.text);
+
+        synchronized (this) {
+            final int id = pages.size();
+            pages.add(new Page(url, title, summary));
+            weights.forEach((term, weight) -> terms
+                    .computeIfAbsent(term, key -> new Postings())
+                    .add(id, weight));
+        }
+    }
+
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    public synchronized int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * Writes the index and the lookup script to a directory, replacing the
+     * previous shards. Pages are numbered in url order so that unchanged
+     * sites produce identical files.
+     *
+     * @param searchPath the directory to write to
+     * @throws IOException on failure to write
+     */
+    public synchronized void write(final Path searchPath) throws IOException {
+        Files.createDirectories(searchPath);
+        try (Stream<Path> previous = Files.list(searchPath)) {
+            for (Path file : (Iterable<Path>) previous::iterator) {
+                if (file.getFileName().toString().endsWith(JSON_EXT)) {
+                    Files.delete(file);
+                }
+            }
+        }
+        final Integer[] order = new Integer[pages.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> pages.get(i).url));
+        final int[] ids = new int[order.length];
+        try (Writer writer = Files.newBufferedWriter(
+                searchPath.resolve(PAGES_FILE_NAME), StandardCharsets.UTF_8)) {
+            writer.write('[');
+            for (int i = 0; i < order.length; i++) {
+                final Page page = pages.get(order[i]);
+                ids[order[i]] = i;
+                writer.write(i == 0 ? "\n" : ",\n");
+                writer.write("{\"u\":");
+                writeString(writer, page.url);
+                writer.write(",\"t\":");
+                writeString(writer, page.title);
+                writer.write(",\"s\":");
+                writeString(writer, page.summary);
+                writer.write('}');
+            }
+            writer.write("\n]\n");
+        }
+        final Map<Character, TreeMap<String, Postings>> shards
+                = new TreeMap<>();
+        terms.forEach((term, postings) -> shards
+                .computeIfAbsent(shardOf(term), shard -> new TreeMap<>())
+                .put(term, postings));
+        for (Map.Entry<Character, TreeMap<String, Postings>> shard
+                : shards.entrySet()) {
+            try (Writer writer = Files.newBufferedWriter(
+                    searchPath.resolve(shard.getKey() + JSON_EXT),
+                    StandardCharsets.UTF_8)) {
+                writer.write('{');
+                boolean first = true;
+                for (Map.Entry<String, Postings> term
+                        : shard.getValue().entrySet()) {
+                    writer.write(first ? "\n" : ",\n");
+                    first = false;
+                    writeString(writer, term.getKey());
+                    writer.write(":[");
+                    writePostings(writer, term.getValue(), ids);
+                    writer.write(']');
+                }
+                writer.write("\n}\n");
+            }
+        }
+        try (InputStream script = SiteSearchIndexer.class
+                .getResourceAsStream("/" + SEARCH_DIR_NAME + "/" + SCRIPT_NAME)) {
+            Files.copy(script, searchPath.resolve(SCRIPT_NAME),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Retrieves the shard a term belongs to.
+     *
+     * @param term to look up
+     * @return the shard character
+     */
+    static char shardOf(final String term) {
+        final char c = term.charAt(0);
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                ? c : OTHER_SHARD;
+    }
+
+    /**
+     * Writes the postings renumbered and sorted by page id.
+     */
+    private static void writePostings(
+            final Writer writer,
+            final Postings postings,
+            final int[] ids) throws IOException {
+        final long[] sorted = new long[postings.size];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = ((long) ids[postings.pairs[2 * i]] << 32)
+                    | postings.pairs[2 * i + 1];
+        }
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(Long.toString(sorted[i] >>> 32));
+            writer.write(',');
+            writer.write(Integer.toString((int) sorted[i]));
+        }
+    }
+
+    private static String summarise(final StringBuilder text) {
+        final String summary = text.toString().replaceAll("\\s+", " ").trim();
+        if (summary.length() <= SUMMARY_LENGTH) {
+            return summary;
+        }
+        final int end = summary.lastIndexOf(' ', SUMMARY_LENGTH);
+        return summary.substring(0, end > 0 ? end : SUMMARY_LENGTH) + "\u2026";
+    }
+
+    private static void writeString(final Writer writer, final String value)
+            throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Collects the text of a document and its first heading.
+     */
+    private static final class TextVisitor extends AbstractVisitor {
+
+        private final StringBuilder text = new StringBuilder();
+        private String heading;
+
+        @Override
+        public void visit(final Heading node) {
+            final int start = text.length();
+            visitChildren(node);
+            if (heading == null) {
+                heading = text.substring(start).trim();
+            }
+            text.append('\n');
+        }
+
+        @Override
+        public void visit(final Paragraph node) {
+            visitChildren(node);
+            text.append('\n');
+        }
+
+        @Override
+        public void visit(final Text node) {
+            text.append(node.getLiteral());
+        }
+
+        @Override
+        public void visit(final Code node) {
+            text.append(node.getLiteral());
+        }
+
+        @Override
+        public void visit(final SoftLineBreak node) {
+            text.append(' ');
+        }
+
+        @Override
+        public void visit(final HardLineBreak node) {
+            text.append(' ');
+        }
+    }
+
+    /**
+     * The pages containing a term: page id and weight pairs, in the order
+     * added.
+     */
+    private static final class Postings {
+
+        private int[] pairs = new int[2];
+        private int size;
+
+        /**
+         * Appends a page, growing the pairs geometrically so that adding the
+         * pages of a common term takes linear time.
+         */
+        private void add(final int page, final int weight) {
+            if (2 * size == pairs.length) {
+                pairs = Arrays.copyOf(pairs, pairs.length * 2);
+            }
+            pairs[2 * size] = page;
+            pairs[2 * size + 1] = weight;
+            size++;
+        }
+    }
+
+    /**
+     * An indexed page.
+     */
+    private static final class Page {
+
+        private final String url;
+        private final String title;
+        private final String summary;
+
+        private Page(final String url, final String title, final String summary) {
+            this.url = url;
+            this.title = title;
+            this.summary = summary;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Streams the sitemap of an exported site.
+ *
+ * Entries are written as the pages are iterated, so that memory stays flat
+ * regardless of the site size. Past {@value #MAX_URLS} pages or
+ * {@value #MAX_BYTES} bytes the sitemap is split in parts listed by a sitemap
+ * index, as required by the sitemaps protocol.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class SitemapWriter {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(SitemapWriter.class.getName());
+
+    /**
+     * The name of the sitemap, or of the sitemap index once split.
+     */
+    public static final String SITEMAP_FILE_NAME = "sitemap.xml";
+
+    /**
+     * The maximum number of urls in a sitemap.
+     */
+    static final int MAX_URLS = 50_000;
+
+    /**
+     * The maximum size of a sitemap: 50 MiB.
+     */
+    static final long MAX_BYTES = 50L * 1024 * 1024;
+
+    private static final String NAMESPACE
+            = "http://www.sitemaps.org/schemas/sitemap/0.9";
+    private static final String PART_PREFIX = "sitemap-";
+    private static final String XML_EXT = ".xml";
+    private static final String INDEX_PAGE = "index.html";
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * The size of an entry on top of its url, and of the closing tags.
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final String siteUrl;
+    private final int maxUrls;
+    private final long maxBytes;
+
+    /**
+     * Creates a writer for a site.
+     *
+     * @param siteUrl the site root url, such as https://example.com
+     */
+    public SitemapWriter(final String siteUrl) {
+        this(siteUrl, MAX_URLS, MAX_BYTES);
+    }
+
+    SitemapWriter(final String siteUrl, final int maxUrls, final long maxBytes) {
+        this.siteUrl = siteUrl;
+        this.maxUrls = maxUrls;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Writes the sitemap of the pages to the site target directory, deleting
+     * the parts of the previous sitemap first so that none outlives a site
+     * shrinking.
+     *
+     * @param pages of the site
+     * @param targetPath the site target directory
+     * @return the files written, the sitemap or index first
+     * @throws IOException on failure to write
+     */
+    public List<Path> write(
+            final Iterable<PageMetadata> pages,
+            final Path targetPath) throws IOException {
+        deleteParts(targetPath);
+        final List<Path> parts = new ArrayList<>();
+        try {
+            Part part = null;
+            for (PageMetadata page : pages) {
+                final String location = absoluteUrl(siteUrl, page.getUrl());
+                if (location == null) {
+                    continue;
+                }
+                if (part == null || !part.fits(location)) {
+                    if (part != null) {
+                        part.close();
+                    }
+                    final Path partPath = targetPath.resolve(
+                            PART_PREFIX + (parts.size() + 1) + XML_EXT);
+                    parts.add(partPath);
+                    part = new Part(partPath);
+                }
+                part.add(location, page.getLastModified());
+            }
+            if (part == null) {
+                final Path partPath = targetPath.resolve(PART_PREFIX + 1 + XML_EXT);
+                parts.add(partPath);
+                part = new Part(partPath);
+            }
+            part.close();
+            final Path sitemapPath = targetPath.resolve(SITEMAP_FILE_NAME);
+            if (parts.size() == 1) {
+                Files.move(parts.get(0), sitemapPath,
+                        StandardCopyOption.REPLACE_EXISTING);
+                parts.set(0, sitemapPath);
+            } else {
+                writeIndex(sitemapPath, parts);
+                parts.add(0, sitemapPath);
+            }
+            LOGGER.log(Level.INFO, "Sitemap written in {0} files.",
+                    parts.size());
+            return parts;
+        } catch (XMLStreamException ex) {
+            throw new IOException("Could not write the sitemap.", ex);
+        }
+    }
+
+    /**
+     * Deletes the sitemap parts found in the site target directory.
+     *
+     * @param targetPath the site target directory
+     * @throws IOException on failure to delete
+     */
+    private static void deleteParts(final Path targetPath) throws IOException {
+        if (!Files.isDirectory(targetPath)) {
+            return;
+        }
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(
+                targetPath, PART_PREFIX + "*" + XML_EXT)) {
+            for (Path part : parts) {
+                Files.delete(part);
+            }
+        }
+    }
+
+    private void writeIndex(final Path indexPath, final List<Path> parts)
+            throws IOException, XMLStreamException {
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(indexPath))) {
+            final XMLStreamWriter xml = XMLOutputFactory.newInstance()
+                    .createXMLStreamWriter(out, ENCODING);
+            xml.writeStartDocument(ENCODING, "1.0");
+            xml.writeStartElement("sitemapindex");
+            xml.writeDefaultNamespace(NAMESPACE);
+            for (Path part : parts) {
+                xml.writeStartElement("sitemap");
+                writeElement(xml, "loc", absoluteUrl(siteUrl,
+                        part.getFileName().toString()));
+                writeElement(xml, "lastmod", Instant.now()
+                        .atOffset(ZoneOffset.UTC).toLocalDate().toString());
+                xml.writeEndElement();
+            }
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.close();
+        }
+    }
+
+    /**
+     * Resolves a page url against the site url. Index pages resolve to their
+     * directory.
+     *
+     * @param siteUrl the site root url
+     * @param pageUrl the page url relative to the site root
+     * @return the encoded absolute url or null if not a valid url
+     */
+    static String absoluteUrl(final String siteUrl, final String pageUrl) {
+        String path = pageUrl;
+        if (path.equals(INDEX_PAGE) || path.endsWith("/" + INDEX_PAGE)) {
+            path = path.substring(0, path.length() - INDEX_PAGE.length());
+        }
+        try {
+            final String root = siteUrl.endsWith("/")
+                    ? siteUrl.substring(0, siteUrl.length() - 1) : siteUrl;
+            return root + new URI(null, null, "/" + path, null)
+                    .toASCIIString();
+        } catch (URISyntaxException ex) {
+            LOGGER.log(Level.WARNING, "Skipping " + pageUrl, ex);
+            return null;
+        }
+    }
+
+    private static void writeElement(
+            final XMLStreamWriter xml,
+            final String name,
+            final String value) throws XMLStreamException {
+        xml.writeStartElement(name);
+        xml.writeCharacters(value);
+        xml.writeEndElement();
+    }
+
+    /**
+     * A sitemap file being written.
+     */
+    private final class Part {
+
+        private final CountingOutputStream out;
+        private final XMLStreamWriter xml;
+        private int urls;
+
+        private Part(final Path partPath)
+                throws IOException, XMLStreamException {
+            this.out = new CountingOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(partPath)));
+            this.xml = XMLOutputFactory.newInstance()
+                    .createXMLStreamWriter(out, ENCODING);
+            xml.writeStartDocument(ENCODING, "1.0");
+            xml.writeStartElement("urlset");
+            xml.writeDefaultNamespace(NAMESPACE);
+        }
+
+        /**
+         * Whether an entry is sure to fit: each character of the url may
+         * take up to six bytes once encoded or escaped.
+         */
+        private boolean fits(final String location) throws XMLStreamException {
+            xml.flush();
+            return urls < maxUrls && out.count + ENTRY_OVERHEAD
+                    + 6L * location.length() <= maxBytes;
+        }
+
+        private void add(final String location, final long lastModified)
+                throws XMLStreamException {
+            xml.writeStartElement("url");
+            writeElement(xml, "loc", location);
+            writeElement(xml, "lastmod", Instant.ofEpochMilli(lastModified)
+                    .atOffset(ZoneOffset.UTC).toLocalDate().toString());
+            xml.writeEndElement();
+            urls++;
+        }
+
+        private void close() throws IOException, XMLStreamException {
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.close();
+            out.close();
+        }
+    }
+
+    /**
+     * Counts the bytes written. Flushes are not propagated so that the
+     * count can be brought up to date cheaply.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+                throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import org.commonmark.parser.Parser;
+import org.commonmark.renderer.html.HtmlRenderer;
+import org.publo.filebrowser.utils.PathTreeItem;
+import org.thymeleaf.TemplateEngine;
+
+/**
+ * Startup profile of the application.
+ *
+ * Only what the first frame needs runs before the window is shown. The Tika
+ * detector, Thymeleaf and commonmark are loaded on a background thread
+ * meanwhile, and the work not needed to show the window is deferred until
+ * the first frame is rendered. The time to first frame, from the start of the
+ * JVM, is logged against {@value #FIRST_FRAME_TARGET_MILLIS} ms and exposed
+ * by the {@link Metrics}.
+ *
+ * Setting the {@value #EXIT_KEY} system property exits once started and warmed
+ * up, which serves as the training run of the class data sharing archive.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class Startup {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(Startup.class.getName());
+
+    /**
+     * The system property requesting to exit once started.
+     */
+    public static final String EXIT_KEY = "publo.startup.exit";
+
+    /**
+     * The time to first frame aimed for, in milliseconds.
+     */
+    public static final long FIRST_FRAME_TARGET_MILLIS = 1500;
+
+    private static final String FIRST_FRAME_MILLIS = "startup.firstframe.millis";
+
+    private static Thread warmUpThread;
+
+    private Startup() {
+    }
+
+    /**
+     * Loads the libraries not needed by the first frame on a background
+     * thread.
+     */
+    public static synchronized void warmUp() {
+        if (warmUpThread != null) {
+            return;
+        }
+        warmUpThread = new Thread(() -> {
+            final long start = System.nanoTime();
+            PathTreeItem.warmUp();
+            new TemplateEngine();
+            Parser.builder().build();
+            HtmlRenderer.builder().build();
+            LOGGER.log(Level.INFO, "Warmed up in {0} ms.",
+                    (System.nanoTime() - start) / 1_000_000);
+        }, "publo-warmup");
+        warmUpThread.setDaemon(true);
+        warmUpThread.setPriority(Thread.MIN_PRIORITY);
+        warmUpThread.start();
+    }
+
+    /**
+     * Runs work once the first frame is rendered. To be called on showing the
+     * window.
+     *
+     * @param deferred the work not needed to show the window
+     */
+    public static void onFirstFrame(final Runnable deferred) {
+        new AnimationTimer() {
+
+            @Override
+            public void handle(final long now) {
+                stop();
+                final long millis = System.currentTimeMillis()
+                        - ManagementFactory.getRuntimeMXBean().getStartTime();
+                Metrics.gauge(FIRST_FRAME_MILLIS, () -> millis);
+                LOGGER.log(millis > FIRST_FRAME_TARGET_MILLIS
+                        ? Level.WARNING : Level.INFO,
+                        "First frame after {0} ms, target {1} ms.",
+                        new Object[]{millis, FIRST_FRAME_TARGET_MILLIS});
+                deferred.run();
+                if (Boolean.getBoolean(EXIT_KEY)) {
+                    exitWhenWarm();
+                }
+            }
+        }.start();
+    }
+
+    private static void exitWhenWarm() {
+        final Thread exitThread = new Thread(() -> {
+            try {
+                synchronized (Startup.class) {
+                    if (warmUpThread != null) {
+                        warmUpThread.join();
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            Platform.runLater(Platform::exit);
+        }, "publo-exit");
+        exitThread.setDaemon(true);
+        exitThread.start();
+    }
+}
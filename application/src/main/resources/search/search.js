@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/*
+ * Client-side lookups on the search index generated on export.
+ *
+ * Usage: PubloSearch.search('words to find').then(function (pages) { ... });
+ * Each page has the url, relative to the site root, title and summary. All the
+ * words must match, the last one as a prefix. Shards are fetched once.
+ */
+var PubloSearch = (function () {
+    var base = document.currentScript.src.replace(/[^\/]*$/, '');
+    var cache = {};
+
+    function load(name) {
+        if (!cache[name]) {
+            cache[name] = fetch(base + name + '.json').then(function (response) {
+                return response.ok ? response.json() : {};
+            });
+        }
+        return cache[name];
+    }
+
+    function shardOf(term) {
+        return /^[a-z0-9]/.test(term) ? term.charAt(0) : '_';
+    }
+
+    function lookup(word, isPrefix) {
+        return load(shardOf(word)).then(function (shard) {
+            var scores = {};
+            Object.keys(shard).forEach(function (term) {
+                if (term === word || (isPrefix && term.indexOf(word) === 0)) {
+                    var postings = shard[term];
+                    for (var i = 0; i < postings.length; i += 2) {
+                        scores[postings[i]] = (scores[postings[i]] || 0)
+                                + postings[i + 1];
+                    }
+                }
+            });
+            return scores;
+        });
+    }
+
+    function search(query) {
+        var words = query.toLowerCase().split(/[^\p{L}\p{N}]+/u)
+                .filter(function (word) { return word.length > 0; });
+        if (words.length === 0) {
+            return Promise.resolve([]);
+        }
+        return Promise.all(words.map(function (word, i) {
+            return lookup(word, i === words.length - 1);
+        }).concat([load('pages')])).then(function (results) {
+            var pages = results.pop();
+            var scores = results.reduce(function (all, scores) {
+                var both = {};
+                Object.keys(scores).forEach(function (id) {
+                    if (id in all) {
+                        both[id] = all[id] + scores[id];
+                    }
+                });
+                return both;
+            });
+            return Object.keys(scores).sort(function (a, b) {
+                return scores[b] - scores[a];
+            }).map(function (id) {
+                return pages[id];
+            });
+        });
+    }
+
+    return {search: search};
+})();
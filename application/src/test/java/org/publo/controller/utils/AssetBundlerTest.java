@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class AssetBundlerTest {
+
+    private static final String PAGE = "<html><head>"
+            + "<link rel=\"stylesheet\" href=\"%1$scss/a.css\">"
+            + "<link rel=\"stylesheet\" href=\"%1$scss/b.css\">"
+            + "<script src=\"%1$sjs/a.js\"></script>"
+            + "<script src=\"%1$sjs/b.js\"></script>"
+            + "</head><body><img src=\"%1$simg/small.png\">"
+            + "<img src=\"%1$simg/big.png\"></body></html>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void write(Path path, byte[] content) throws Exception {
+        Files.createDirectories(path.getParent());
+        Files.write(path, content);
+    }
+
+    private static void write(Path path, String content) throws Exception {
+        write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Path createSite() throws Exception {
+        final Path target = folder.getRoot().toPath().resolve("target");
+        write(target.resolve("css/a.css"), "body { background: "
+                + "url('../img/small.png'); }");
+        write(target.resolve("css/b.css"), "h1 { background: "
+                + "url(../img/big.png#x); }");
+        write(target.resolve("js/a.js"), "var a = 1");
+        write(target.resolve("js/b.js"), "var b = a");
+        write(target.resolve("img/small.png"), new byte[]{1, 2, 3});
+        write(target.resolve("img/big.png"), new byte[100]);
+        return target;
+    }
+
+    @Test
+    public void testBundleAndInline() throws Exception {
+        final Path target = createSite();
+        final AssetBundler bundler = new AssetBundler(target, true, 10);
+        final Document post = Jsoup.parse(bundler.process(
+                String.format(PAGE, "../"), "blog/post.html"));
+        assertEquals(1, post.select("link").size());
+        assertEquals(1, post.select("script").size());
+        final String cssLink = post.select("link").attr("href");
+        assertTrue(cssLink, cssLink.matches("\\.\\./bundles/[0-9a-f]{16}\\.css"));
+        assertTrue(post.select("img").first().attr("src")
+                .startsWith("data:image/png;base64,"));
+        assertEquals("../img/big.png", post.select("img").last().attr("src"));
+
+        final String css = new String(Files.readAllBytes(target.resolve(
+                cssLink.substring(3))), StandardCharsets.UTF_8);
+        assertTrue(css, css.contains("url(\"data:image/png;base64,AQID\")"));
+        assertTrue(css, css.contains("url(../img/big.png#x)"));
+        final String js = new String(Files.readAllBytes(target.resolve(
+                post.select("script").attr("src").substring(3))),
+                StandardCharsets.UTF_8);
+        assertTrue(js, js.indexOf("var a = 1") < js.indexOf("var b = a"));
+
+        final Document index = Jsoup.parse(bundler.process(
+                String.format(PAGE, ""), "index.html"));
+        assertEquals(cssLink.substring(3), index.select("link").attr("href"));
+        try (Stream<Path> bundles = Files.list(
+                target.resolve(AssetBundler.BUNDLES_DIR_NAME))) {
+            assertEquals(2, bundles.count());
+        }
+    }
+
+    @Test
+    public void testStyleBetweenStylesheetsIsKept() throws Exception {
+        final Path target = createSite();
+        final AssetBundler bundler = new AssetBundler(target, true, 0);
+        final String page = "<html><head>"
+                + "<link rel=\"stylesheet\" href=\"css/a.css\">"
+                + "<style>p { color: red; }</style>"
+                + "<link rel=\"stylesheet\" href=\"css/b.css\">"
+                + "<script async src=\"js/a.js\"></script>"
+                + "<script src=\"js/b.js\"></script>"
+                + "</head><body><img src=\"img/small.png\"></body></html>";
+        assertSame(page, bundler.process(page, "index.html"));
+    }
+
+    @Test
+    public void testScriptsOfHeadAndBodyAreNotBundled() throws Exception {
+        final Path target = createSite();
+        final AssetBundler bundler = new AssetBundler(target, true, 0);
+        final String page = "<html><head>"
+                + "<script src=\"js/a.js\"></script>"
+                + "</head><body><p>Text</p>"
+                + "<script src=\"js/b.js\"></script></body></html>";
+        assertSame(page, bundler.process(page, "index.html"));
+    }
+
+    @Test
+    public void testOnlyAdjacentScriptsAreBundled() throws Exception {
+        final Path target = createSite();
+        write(target.resolve("js/c.js"), "var c = b");
+        final AssetBundler bundler = new AssetBundler(target, true, 0);
+        final Document page = Jsoup.parse(bundler.process("<html><head>"
+                + "<script src=\"js/a.js\"></script>\n"
+                + "<!-- comment -->\n"
+                + "<script src=\"js/b.js\"></script>"
+                + "<meta name=\"x\" content=\"y\">"
+                + "<script src=\"js/c.js\"></script>"
+                + "</head><body></body></html>", "index.html"));
+        assertEquals(2, page.select("script").size());
+        assertTrue(page.select("script").first().attr("src")
+                .startsWith(AssetBundler.BUNDLES_DIR_NAME + "/"));
+        assertEquals("js/c.js", page.select("script").last().attr("src"));
+    }
+
+    @Test
+    public void testRelativize() throws Exception {
+        assertEquals("bundles/a.css",
+                AssetBundler.relativize("index.html", "bundles/a.css"));
+        assertEquals("../../bundles/a.css",
+                AssetBundler.relativize("a/b/page.html", "bundles/a.css"));
+        assertEquals("../img/my%20image.png",
+                AssetBundler.relativize("bundles/", "img/my image.png"));
+    }
+}
@@ -23,11 +23,26 @@
  */
 package org.publo.controller.utils;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 
 public class FileUtilsTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(final byte[] bytes) throws Exception {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, bytes);
+        return path;
+    }
+
     @Test
     public void testGetBasename() throws Exception {
         final String basename = "abc";
@@ -57,4 +72,89 @@ public class FileUtilsTest {
         final String result = FileUtils.getExtension(basename);
         assertEquals("", result);
     }
+
+    @Test
+    public void testReadFileContentPreservesLineEndings() throws Exception {
+        final String text = "# Title\r\n\r\nText\nmore\r\n";
+        final Path path = write(text.getBytes(StandardCharsets.UTF_8));
+        assertEquals(text, FileUtils.readFileContent(path));
+    }
+
+    @Test
+    public void testReadFileDetectsByteOrderMark() throws Exception {
+        final byte[] text = "caf\u00e9\r\n".getBytes(StandardCharsets.UTF_16LE);
+        final byte[] bytes = new byte[text.length + 2];
+        bytes[0] = (byte) 0xFF;
+        bytes[1] = (byte) 0xFE;
+        System.arraycopy(text, 0, bytes, 2, text.length);
+        final FileContent content = FileUtils.readFile(write(bytes));
+        assertEquals("caf\u00e9\r\n", content.getText());
+        assertEquals(StandardCharsets.UTF_16LE, content.getCharset());
+        assertTrue(content.hasByteOrderMark());
+        assertEquals("\r\n", content.getLineSeparator());
+        assertArrayEquals(bytes, content.encode(content.getNormalisedText()));
+    }
+
+    @Test
+    public void testReadFileFallsBackOnInvalidUtf8() throws Exception {
+        final byte[] bytes = "caf\u00e9".getBytes(StandardCharsets.ISO_8859_1);
+        final FileContent content = FileUtils.readFile(write(bytes));
+        assertNotEquals(StandardCharsets.UTF_8, content.getCharset());
+        assertEquals(4, content.getText().length());
+    }
+
+    @Test
+    public void testReadLargeFile() throws Exception {
+        final char[] line = new char[99];
+        Arrays.fill(line, '\u00e9');
+        final StringBuilder text = new StringBuilder();
+        while (text.length() < 2 * 1024 * 1024) {
+            text.append(line).append('\n');
+        }
+        final Path path = write(text.toString()
+                .getBytes(StandardCharsets.UTF_8));
+        assertEquals(text.toString(), FileUtils.readFileContent(path));
+    }
+
+    @Test
+    public void testIsBinary() throws Exception {
+        assertTrue(FileUtils.isBinary(write(new byte[]{(byte) 0x89, 'P', 'N',
+            'G', 0, 0, 0, 13})));
+        assertFalse(FileUtils.isBinary(write("# Title\n"
+                .getBytes(StandardCharsets.UTF_8))));
+        assertFalse(FileUtils.isBinary(folder.getRoot().toPath()));
+    }
+
+    @Test
+    public void testReadHeadCutsAtLineEnd() throws Exception {
+        final Path path = write("first\nsecond\nthird"
+                .getBytes(StandardCharsets.UTF_8));
+        assertEquals("first\nsecond\n",
+                FileUtils.readHead(path, 16).getText());
+        assertEquals("first\nsecond\nthird",
+                FileUtils.readHead(path, 100).getText());
+    }
+
+    @Test
+    public void testReadHeadKeepsWholeCharacters() throws Exception {
+        final Path path = write("ab\u00e9\u00e9"
+                .getBytes(StandardCharsets.UTF_8));
+        final FileContent head = FileUtils.readHead(path, 5);
+        assertEquals(StandardCharsets.UTF_8, head.getCharset());
+        assertEquals("ab\u00e9", head.getText());
+    }
+
+    @Test
+    public void testEncodeKeepsMixedLineEndingsOfLinesNotEdited()
+            throws Exception {
+        final FileContent content = FileUtils.readFile(write(
+                "one\r\ntwo\nthree\r\nfour\n"
+                        .getBytes(StandardCharsets.UTF_8)));
+        assertArrayEquals("one\r\ntwo\nthree\r\nfour\n"
+                .getBytes(StandardCharsets.UTF_8),
+                content.encode(content.getNormalisedText()));
+        assertArrayEquals("one\r\ntwo\nTHREE\r\nnew\r\nfour\n"
+                .getBytes(StandardCharsets.UTF_8),
+                content.encode("one\ntwo\nTHREE\nnew\nfour\n"));
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class LinkCheckerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void write(final Path path, final String content)
+            throws Exception {
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testResolve() throws Exception {
+        assertEquals("blog/img/a.png",
+                LinkChecker.resolve("blog/post.html", "img/a.png"));
+        assertEquals("css/site.css",
+                LinkChecker.resolve("blog/post.html", "../css/site.css?v=1"));
+        assertEquals("css/site.css",
+                LinkChecker.resolve("blog/post.html", "/css/site.css"));
+        assertEquals("my page.html",
+                LinkChecker.resolve("index.html", "./my%20page.html#top"));
+        assertEquals("blog/", LinkChecker.resolve("index.html", "blog/"));
+        assertNull(LinkChecker.resolve("index.html", "../outside.html"));
+    }
+
+    @Test
+    public void testBrokenLinksAreReported() throws Exception {
+        final Path target = folder.newFolder("target").toPath();
+        write(target.resolve("index.html"), "<a href=\"blog/\">Blog</a>"
+                + "<a href=\"http://example.com/missing.html\">Out</a>"
+                + "<a href=\"#top\">Top</a>"
+                + "<a href=\"missing.html\">Missing</a>");
+        write(target.resolve("blog/index.html"), "<a href=\"../\">Home</a>"
+                + "<img src=\"../img/logo.png\">"
+                + "<script src=\"app.js\"></script>");
+        write(target.resolve("img/logo.png"), "png");
+
+        final Set<String> emitted = new HashSet<>(Arrays.asList(
+                "index.html", "blog/index.html", "img/logo.png"));
+
+        final LinkChecker.Report report = LinkChecker.check(target, emitted);
+        assertEquals(2, report.getPageCount());
+        final List<String> broken = report.getBrokenLinks().stream()
+                .map(Object::toString).collect(Collectors.toList());
+        assertEquals(2, broken.size());
+        assertEquals("blog/index.html\tapp.js", broken.get(0));
+        assertEquals("index.html\tmissing.html", broken.get(1));
+
+        final Path reportPath = folder.getRoot().toPath()
+                .resolve(LinkChecker.REPORT_FILE_NAME);
+        report.write(reportPath);
+        assertEquals(3, Files.readAllLines(reportPath).size());
+    }
+
+    @Test
+    public void testFilesNotEmittedAreBroken() throws Exception {
+        final Path target = folder.newFolder("target").toPath();
+        write(target.resolve("index.html"), "<a href=\"old.html\">Old</a>");
+        write(target.resolve("old.html"), "<a href=\"gone.html\">Gone</a>");
+
+        final LinkChecker.Report report = LinkChecker.check(target,
+                new HashSet<>(Arrays.asList("index.html")));
+        assertEquals(1, report.getPageCount());
+        assertEquals(1, report.getBrokenLinks().size());
+        assertEquals("index.html\told.html",
+                report.getBrokenLinks().get(0).toString());
+    }
+}
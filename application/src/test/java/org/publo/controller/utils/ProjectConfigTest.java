@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ProjectConfigTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDefaults() throws Exception {
+        final Path project = folder.newFolder("site").toPath();
+        final ProjectConfig config = ProjectConfig.load(project);
+        assertNull(config.getFtpUrl());
+        assertNull(config.getSiteUrl());
+        assertEquals("site", config.getSiteTitle());
+        assertEquals(Runtime.getRuntime().availableProcessors(),
+                config.getExportThreads());
+        assertEquals(ProjectConfig.DEFAULT_UPLOAD_CONNECTIONS,
+                config.getUploadConnections());
+        assertEquals(RenderCache.DEFAULT_BUDGET, config.getRenderCacheBytes());
+        assertTrue(config.isExportBundle());
+        assertEquals(ProjectConfig.DEFAULT_INLINE_BYTES,
+                config.getExportInlineBytes());
+    }
+
+    @Test
+    public void testLoadAndReload() throws Exception {
+        final Path project = folder.newFolder("site").toPath();
+        final Path configPath = project.resolve("config.properties");
+        Files.write(configPath, ("ftp.url=ftp.example.com\n"
+                + "site.url= https://example.com/ \n"
+                + "export.threads=3\n"
+                + "upload.connections=nope\n"
+                + "render.cache.bytes=4096\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+        final ProjectConfig config = ProjectConfig.of(project);
+        assertSame(config, ProjectConfig.of(project));
+        assertEquals("ftp.example.com", config.getFtpUrl());
+        assertEquals("https://example.com/", config.getSiteUrl());
+        assertEquals(3, config.getExportThreads());
+        assertEquals(ProjectConfig.DEFAULT_UPLOAD_CONNECTIONS,
+                config.getUploadConnections());
+
+        ProjectConfig.setActive(project);
+        assertSame(config, ProjectConfig.getActive());
+        assertEquals(4096, TemplateRenderer.getCache().getBudget());
+
+        Files.write(configPath, "render.cache.bytes=8192\n"
+                .getBytes(StandardCharsets.ISO_8859_1));
+        ProjectConfig.invalidate(StandardWatchEventKinds.ENTRY_MODIFY,
+                configPath);
+        final ProjectConfig reloaded = ProjectConfig.getActive();
+        assertNotSame(config, reloaded);
+        assertNull(reloaded.getFtpUrl());
+        assertEquals(3, config.getExportThreads());
+        assertEquals(8192, TemplateRenderer.getCache().getBudget());
+
+        ProjectConfig.setActive(folder.newFolder("other").toPath());
+        assertEquals(RenderCache.DEFAULT_BUDGET,
+                TemplateRenderer.getCache().getBudget());
+    }
+}
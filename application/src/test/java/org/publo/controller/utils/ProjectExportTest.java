@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ProjectExportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void write(final Path path, final String content)
+            throws Exception {
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStages() throws Exception {
+        final Path project = folder.getRoot().toPath().resolve("site");
+        write(project.resolve("index.md"), "# Home\n\n[Post](blog/post.html)"
+                + " [Gone](gone.html)\n");
+        write(project.resolve("blog/post.md"), "# Post\n\n![](../img/a.png)\n");
+        write(project.resolve("img/a.png"), "png");
+        write(project.resolve(".well-known/security.txt"), "Contact: me\n");
+        write(project.resolve(".index.md.autosave"), "# Draft\n");
+
+        final ProjectExport export = new ProjectExport(ProjectConfig.load(project));
+        export.prepare();
+        assertEquals(2, export.getPages().size());
+        assertTrue(Files.exists(project.resolve("target/img/a.png")));
+        assertTrue(Files.exists(
+                project.resolve("target/.well-known/security.txt")));
+        assertFalse(Files.exists(
+                project.resolve("target/.index.md.autosave")));
+
+        export.getPages().forEach(export::exportPage);
+        assertEquals(2, export.getRenderedCount());
+        assertTrue(Files.exists(project.resolve("target/blog/post.html")));
+
+        final LinkChecker.Report report = export.finish();
+        assertEquals(1, report.getBrokenLinks().size());
+        assertEquals("gone.html", report.getBrokenLinks().get(0).getLink());
+        assertTrue(Files.exists(project.resolve("target/search/pages.json")));
+        assertTrue(Files.exists(project.resolve(LinkChecker.REPORT_FILE_NAME)));
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path project;
+
+    private Path write(final String name, final String content)
+            throws Exception {
+        final Path path = project.resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        project = folder.newFolder("project").toPath();
+        write("index.md", "# Welcome\n\nPublo renders markdown.\n");
+        write("blog/first.md", "# First post\n\nWriting markdown,\n"
+                + "markdown everywhere.\n");
+        write("templates/page.md", "markdown template\n");
+        write("notes.txt", "markdown notes\n");
+    }
+
+    @Test
+    public void testSearchRanksByFrequency() throws Exception {
+        final SearchIndex index = SearchIndex.open(project);
+        assertEquals(2, index.getDocumentCount());
+        final List<SearchIndex.Result> results = index.search("Markdown", 10);
+        assertEquals(2, results.size());
+        assertEquals(project.resolve("blog/first.md"),
+                results.get(0).getPath());
+        assertEquals(3, results.get(0).getLine());
+    }
+
+    @Test
+    public void testAllWordsMatchLastAsPrefix() throws Exception {
+        final SearchIndex index = SearchIndex.open(project);
+        assertEquals(1, index.search("markdown wel", 10).size());
+        assertEquals(project.resolve("index.md"),
+                index.search("markdown wel", 10).get(0).getPath());
+        assertEquals(2, index.search("mark", 10).size());
+        assertTrue(index.search("welcome first", 10).isEmpty());
+        assertTrue(index.search("  ", 10).isEmpty());
+    }
+
+    @Test
+    public void testUpdateAndRemove() throws Exception {
+        final SearchIndex index = SearchIndex.open(project);
+        final Path page = write("index.md", "# Farewell\n");
+        index.update(page);
+        assertTrue(index.search("welcome", 10).isEmpty());
+        assertEquals(1, index.search("farewell", 10).size());
+        Files.delete(page);
+        index.update(page);
+        assertTrue(index.search("farewell", 10).isEmpty());
+        assertEquals(1, index.getDocumentCount());
+        index.update(project.resolve("notes.txt"));
+        assertEquals(1, index.getDocumentCount());
+    }
+
+    @Test
+    public void testUpdatesTakeTheIdsOfRemovedDocuments() throws Exception {
+        final SearchIndex index = SearchIndex.open(project);
+        for (int i = 0; i < 3; i++) {
+            index.update(write("index.md", "# Welcome " + i
+                    + "\n\nmarkdown\n"));
+        }
+        final Path first = project.resolve("blog/first.md");
+        Files.delete(first);
+        index.update(first);
+        index.update(write("about.md", "About markdown\n"));
+        assertEquals(2, index.getDocumentCount());
+        assertEquals(2, index.search("markdown", 10).size());
+        assertEquals(1, index.search("welcome 2", 10).size());
+        assertTrue(index.search("post", 10).isEmpty());
+        index.save();
+        final SearchIndex loaded = new SearchIndex(project);
+        loaded.load();
+        assertEquals(2, loaded.search("markdown", 10).size());
+    }
+
+    @Test
+    public void testPersistedIndexIsRefreshed() throws Exception {
+        final SearchIndex index = SearchIndex.open(project);
+        index.save();
+        assertTrue(Files.exists(project.resolve(SearchIndex.INDEX_FILE_NAME)));
+
+        final SearchIndex loaded = new SearchIndex(project);
+        loaded.load();
+        assertEquals(index.getDocumentCount(), loaded.getDocumentCount());
+        assertEquals(index.getTermCount(), loaded.getTermCount());
+        assertEquals(2, loaded.search("markdown", 10).size());
+
+        final Path page = write("index.md", "# Farewell\n");
+        Files.setLastModifiedTime(page, FileTime.fromMillis(
+                Files.getLastModifiedTime(page).toMillis() + 2000));
+        write("about.md", "About Publo\n");
+        final SearchIndex reopened = SearchIndex.open(project);
+        assertEquals(3, reopened.getDocumentCount());
+        assertEquals(1, reopened.search("farewell", 10).size());
+        assertTrue(reopened.search("welcome", 10).isEmpty());
+        assertEquals(1, reopened.search("markdown", 10).size());
+    }
+
+    @Test
+    public void testCorruptIndexIsRebuilt() throws Exception {
+        Files.write(project.resolve(SearchIndex.INDEX_FILE_NAME),
+                new byte[]{1, 2, 3});
+        final SearchIndex index = SearchIndex.open(project);
+        assertEquals(2, index.getDocumentCount());
+    }
+
+    @Test
+    public void testIndexReferringToMissingDocumentsIsRebuilt()
+            throws Exception {
+        try (DataOutputStream out = new DataOutputStream(
+                new DeflaterOutputStream(Files.newOutputStream(
+                        project.resolve(SearchIndex.INDEX_FILE_NAME))))) {
+            out.writeInt(0x50534901);
+            out.writeInt(1);
+            out.writeUTF("index.md");
+            out.writeLong(0);
+            out.writeInt(1);
+            out.writeUTF("markdown");
+            out.writeByte(1);
+            out.writeByte(5);
+            out.writeByte(1);
+            out.writeByte(1);
+        }
+        final SearchIndex index = SearchIndex.open(project);
+        assertEquals(2, index.getDocumentCount());
+        assertEquals(2, index.search("markdown", 10).size());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class SiteSearchIndexerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String read(final Path path) throws Exception {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testTitleFrontMatterAndBodyAreIndexed() throws Exception {
+        final SiteSearchIndexer indexer = new SiteSearchIndexer();
+        indexer.add("blog/post.html", "---\n"
+                + "title: Hello \"World\"\n"
+                + "tags: java\n"
+                + "---\n"
+                + "\n"
+                + "# Heading\n"
+                + "\n"
+                + "Some `code` and Text.\n");
+        indexer.add("index.html", "# Welcome\n\nHello again.\n");
+        final Path searchPath = folder.getRoot().toPath().resolve("search");
+        indexer.write(searchPath);
+
+        final String pages = read(searchPath.resolve("pages.json"));
+        assertTrue(pages.contains("{\"u\":\"blog/post.html\","
+                + "\"t\":\"Hello \\\"World\\\"\","
+                + "\"s\":\"Heading Some code and Text.\"}"));
+        assertTrue(pages.contains("{\"u\":\"index.html\",\"t\":\"Welcome\""));
+
+        final String h = read(searchPath.resolve("h.json"));
+        assertTrue(h.contains("\"hello\":[0,10,1,1]"));
+        assertTrue(h.contains("\"heading\":[0,1]"));
+        assertTrue(read(searchPath.resolve("j.json")).contains("\"java\":[0,3]"));
+        assertTrue(read(searchPath.resolve("c.json")).contains("\"code\":[0,1]"));
+        assertTrue(Files.exists(searchPath.resolve("search.js")));
+    }
+
+    @Test
+    public void testConcurrentPagesAreNumberedByUrl() throws Exception {
+        final SiteSearchIndexer indexer = new SiteSearchIndexer();
+        IntStream.range(0, 200).parallel().forEach(i -> indexer.add(
+                String.format("page%03d.html", i), "# Page\n\ncommon " + i));
+        assertEquals(200, indexer.getPageCount());
+        final Path searchPath = folder.getRoot().toPath().resolve("search");
+        indexer.write(searchPath);
+        final String c = read(searchPath.resolve("c.json"));
+        final StringBuilder expected = new StringBuilder("\"common\":[");
+        for (int i = 0; i < 200; i++) {
+            expected.append(i == 0 ? "" : ",").append(i).append(",1");
+        }
+        assertTrue(c.contains(expected.append(']')));
+        assertTrue(read(searchPath.resolve("1.json"))
+                .contains("\"199\":[199,1]"));
+    }
+
+    @Test
+    public void testDocumentParsedByTheRenderIsIndexed() throws Exception {
+        final Path page = folder.newFile("page.md").toPath();
+        final SiteSearchIndexer indexer = new SiteSearchIndexer();
+        TemplateRenderer.renderForExport("---\ntitle: Rendered\n---\n\n"
+                + "Parsed once.\n", page,
+                document -> indexer.add("page.html", document));
+        final Path searchPath = folder.getRoot().toPath().resolve("search");
+        indexer.write(searchPath);
+        assertTrue(read(searchPath.resolve("pages.json")).contains(
+                "{\"u\":\"page.html\",\"t\":\"Rendered\","
+                + "\"s\":\"Parsed once.\"}"));
+        assertTrue(read(searchPath.resolve("o.json"))
+                .contains("\"once\":[0,1]"));
+    }
+
+    @Test
+    public void testShards() throws Exception {
+        assertEquals('a', SiteSearchIndexer.shardOf("alpha"));
+        assertEquals('7', SiteSearchIndexer.shardOf("7up"));
+        assertEquals('_', SiteSearchIndexer.shardOf("\u00e9lan"));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class SitemapWriterTest {
+
+    private static final String SITE_URL = "https://example.com/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String read(final Path path) throws Exception {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    private static PageMetadata page(final String path, final String date) {
+        final Map<String, List<String>> values = new HashMap<>();
+        if (date != null) {
+            values.put("date", Collections.singletonList(date));
+            values.put("title", Collections.singletonList("Post <" + path
+                    + ">"));
+        }
+        return new PageMetadata(path, 0, values);
+    }
+
+    @Test
+    public void testAbsoluteUrl() throws Exception {
+        assertEquals("https://example.com/",
+                SitemapWriter.absoluteUrl(SITE_URL, "index.html"));
+        assertEquals("https://example.com/blog/",
+                SitemapWriter.absoluteUrl("https://example.com",
+                        "blog/index.html"));
+        assertEquals("https://example.com/my%20post.html",
+                SitemapWriter.absoluteUrl(SITE_URL, "my post.html"));
+    }
+
+    @Test
+    public void testSingleSitemap() throws Exception {
+        final Path target = folder.getRoot().toPath();
+        final List<Path> files = new SitemapWriter(SITE_URL).write(
+                Collections.singletonList(page("a&b.md", null)), target);
+        assertEquals(1, files.size());
+        final String sitemap = read(target.resolve("sitemap.xml"));
+        assertTrue(sitemap.contains("<loc>https://example.com/a&amp;b.html"
+                + "</loc><lastmod>1970-01-01</lastmod>"));
+        assertFalse(Files.exists(target.resolve("sitemap-1.xml")));
+    }
+
+    @Test
+    public void testLargeSitemapIsSplit() throws Exception {
+        final Path target = folder.getRoot().toPath();
+        final List<PageMetadata> pages = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            pages.add(page("page" + i + ".md", null));
+        }
+        final List<Path> files
+                = new SitemapWriter(SITE_URL, 10, 1 << 20).write(pages, target);
+        assertEquals(4, files.size());
+        final String index = read(target.resolve("sitemap.xml"));
+        assertTrue(index.contains("<sitemapindex"));
+        assertTrue(index.contains("https://example.com/sitemap-3.xml"));
+        assertTrue(read(target.resolve("sitemap-3.xml"))
+                .contains("page24.html"));
+
+        final List<Path> bounded
+                = new SitemapWriter(SITE_URL, 100, 1024).write(pages, target);
+        for (Path file : bounded) {
+            assertTrue(Files.size(file) <= 1024);
+        }
+    }
+
+    @Test
+    public void testPartsOfThePreviousSitemapAreDeleted() throws Exception {
+        final Path target = folder.getRoot().toPath();
+        final List<PageMetadata> pages = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            pages.add(page("page" + i + ".md", null));
+        }
+        new SitemapWriter(SITE_URL, 10, 1 << 20).write(pages, target);
+        assertTrue(Files.exists(target.resolve("sitemap-3.xml")));
+        new SitemapWriter(SITE_URL, 10, 1 << 20).write(pages.subList(0, 5),
+                target);
+        assertFalse(Files.exists(target.resolve("sitemap-1.xml")));
+        assertFalse(Files.exists(target.resolve("sitemap-3.xml")));
+        assertTrue(read(target.resolve("sitemap.xml")).contains("<urlset"));
+    }
+
+    @Test
+    public void testFeedsListLatestDatedPages() throws Exception {
+        final Path target = folder.getRoot().toPath();
+        final List<PageMetadata> pages = new ArrayList<>();
+        pages.add(page("about.md", null));
+        pages.add(page("old.md", "2016-01-01"));
+        pages.add(page("new.md", "2017-03-01T10:00:00Z"));
+        pages.add(page("mid.md", "2017-01-01T10:00"));
+        final int entries = new FeedWriter(SITE_URL, "Site", "Me", 2)
+                .write(pages, target);
+        assertEquals(2, entries);
+        final String atom = read(target.resolve("atom.xml"));
+        assertTrue(atom.indexOf("new.html") < atom.indexOf("mid.html"));
+        assertFalse(atom.contains("old.html"));
+        assertTrue(atom.contains("<title>Post &lt;new.md&gt;</title>"));
+        final String rss = read(target.resolve("rss.xml"));
+        assertTrue(rss.contains("<pubDate>Wed, 1 Mar 2017 10:00:00 GMT"
+                + "</pubDate>"));
+        assertNull(FeedWriter.parseDate("soon"));
+    }
+}
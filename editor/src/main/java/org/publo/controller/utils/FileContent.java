@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.nio.charset.Charset;
+
+/**
+ * The content of a text file along with the details needed to write it back
+ * as it was read: its charset, byte order mark and line separators.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class FileContent {
+
+    /**
+     * The byte order mark character.
+     */
+    static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private static final String NEW_LINE = "\n";
+    private static final String CARRIAGE_RETURN_NEW_LINE = "\r\n";
+
+    private final String text;
+    private final Charset charset;
+    private final boolean byteOrderMark;
+    private final String lineSeparator;
+
+    FileContent(
+            final String text,
+            final Charset charset,
+            final boolean byteOrderMark,
+            final String lineSeparator) {
+        this.text = text;
+        this.charset = charset;
+        this.byteOrderMark = byteOrderMark;
+        this.lineSeparator = lineSeparator;
+    }
+
+    /**
+     * Retrieves the text as read, line endings included. The byte order mark
+     * is not part of it.
+     *
+     * @return the text
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Retrieves the text with the line endings normalised to {@code \n}, as
+     * edited by the {@code TextArea}.
+     *
+     * @return the text
+     */
+    public String getNormalisedText() {
+        return text.indexOf('\r') < 0
+                ? text
+                : text.replace(CARRIAGE_RETURN_NEW_LINE, NEW_LINE);
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public boolean hasByteOrderMark() {
+        return byteOrderMark;
+    }
+
+    /**
+     * Retrieves the separator of the first line of the file or, for single
+     * line files, the platform one.
+     *
+     * @return the line separator
+     */
+    public String getLineSeparator() {
+        return lineSeparator;
+    }
+
+    /**
+     * Encodes a normalised text in the format of the file: the line endings
+     * are restored and the byte order mark written if present originally.
+     *
+     * @param normalisedText to encode
+     * @return the file bytes
+     */
+    public byte[] encode(final String normalisedText) {
+        String fileText = restoreLineSeparators(normalisedText);
+        if (byteOrderMark) {
+            fileText = BYTE_ORDER_MARK + fileText;
+        }
+        return fileText.getBytes(charset);
+    }
+
+    /**
+     * Restores the line separators of a normalised text. Files mixing line
+     * separators keep the original ones before and after the region edited,
+     * the lines of the region taking the separator of the first line.
+     *
+     * @param normalisedText to restore
+     * @return the text with its line separators
+     */
+    private String restoreLineSeparators(final String normalisedText) {
+        if (!hasMixedLineSeparators()) {
+            return NEW_LINE.equals(lineSeparator)
+                    ? normalisedText
+                    : normalisedText.replace(NEW_LINE, lineSeparator);
+        }
+        final String original = getNormalisedText();
+        final int limit = Math.min(original.length(), normalisedText.length());
+        int prefix = 0;
+        while (prefix < limit
+                && original.charAt(prefix) == normalisedText.charAt(prefix)) {
+            prefix++;
+        }
+        int originalEnd = original.length();
+        int end = normalisedText.length();
+        while (end > prefix && originalEnd > prefix && original.charAt(
+                originalEnd - 1) == normalisedText.charAt(end - 1)) {
+            originalEnd--;
+            end--;
+        }
+        final String edited = normalisedText.substring(prefix, end);
+        return text.substring(0, textIndex(prefix))
+                + edited.replace(NEW_LINE, lineSeparator)
+                + text.substring(textIndex(originalEnd));
+    }
+
+    /**
+     * Whether the text ends lines with both {@code \r\n} and {@code \n}.
+     */
+    private boolean hasMixedLineSeparators() {
+        if (!text.contains(CARRIAGE_RETURN_NEW_LINE)) {
+            return false;
+        }
+        for (int newLine = text.indexOf('\n'); newLine >= 0;
+                newLine = text.indexOf('\n', newLine + 1)) {
+            if (newLine == 0 || text.charAt(newLine - 1) != '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Maps an index of the normalised text to the text as read.
+     *
+     * @param normalisedIndex in the normalised text
+     * @return the index in the text
+     */
+    private int textIndex(final int normalisedIndex) {
+        int index = 0;
+        for (int i = 0; i < normalisedIndex; i++) {
+            index += text.startsWith(CARRIAGE_RETURN_NEW_LINE, index) ? 2 : 1;
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return text.length() + " characters, " + charset
+                + (byteOrderMark ? " with BOM" : "");
+    }
+}
@@ -24,11 +24,18 @@
 package org.publo.controller.utils;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 /**
  * Holds File utilities.
@@ -50,6 +57,21 @@ public class FileUtils {
     private static final String LINE_SEP
             = System.getProperty("line.separator");
 
+    /**
+     * The size from which files are memory mapped rather than read: 1 MiB.
+     */
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    /**
+     * The character substituted to malformed input.
+     */
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+    /**
+     * The number of bytes sniffed to tell binary files apart.
+     */
+    private static final int SNIFF_BYTES = 8000;
+
     /**
      * Retrieves the base name of a file given its full name.
      *
@@ -83,22 +105,236 @@ public class FileUtils {
     /**
      * Read a file content {@code String} based on {@code Path}
      *
+     * The line endings are preserved.
+     *
      * @param filePath
      * @return the file content
      * @throws IOException for failures to read the file
+     * @see #readFile(Path)
      */
     public static String readFileContent(Path filePath) throws IOException {
-        if (Files.isRegularFile(filePath)) {
-            try {
-                return Files
-                        .readAllLines(filePath)
-                        .stream()
-                        .collect(Collectors.joining(LINE_SEP));
-            } catch (IOException ex) {
-                LOGGER.log(Level.SEVERE, "Could not read file.", ex);
-                throw ex;
+        return readFile(filePath).getText();
+    }
+
+    /**
+     * Reads a file in a single array, straight from its channel, and decodes
+     * it in one pass. Files of 1 MiB and more are memory mapped.
+     *
+     * The charset is detected from the byte order mark, if any, otherwise
+     * UTF-8 is assumed, falling back to the platform charset or ISO-8859-1
+     * if the content is not valid UTF-8.
+     *
+     * @param filePath to read
+     * @return the file content, empty if not a regular file
+     * @throws IOException for failures to read the file
+     */
+    public static FileContent readFile(Path filePath) throws IOException {
+        if (!Files.isRegularFile(filePath)) {
+            return new FileContent("", StandardCharsets.UTF_8, false,
+                    LINE_SEP);
+        }
+        try (FileChannel channel
+                = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + filePath);
             }
+            final byte[] bytes = new byte[(int) size];
+            if (size >= MAP_THRESHOLD) {
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, size).get(bytes);
+            } else {
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    LOGGER.finest("Reading until the buffer is full.");
+                }
+            }
+            return decode(bytes);
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Could not read file.", ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads the beginning of a file, up to a number of bytes. When the file is
+     * longer, the text is cut at the end of the last complete line or, in the
+     * absence of line ends, of the last complete character.
+     *
+     * @param filePath to read
+     * @param maxBytes the number of bytes to read at most
+     * @return the content read, empty if not a regular file
+     * @throws IOException for failures to read the file
+     */
+    public static FileContent readHead(Path filePath, int maxBytes)
+            throws IOException {
+        if (!Files.isRegularFile(filePath)) {
+            return new FileContent("", StandardCharsets.UTF_8, false,
+                    LINE_SEP);
+        }
+        final byte[] bytes = readBytes(filePath, maxBytes);
+        int length = bytes.length;
+        if (length == maxBytes) {
+            final Charset bomCharset = readByteOrderMark(bytes);
+            if (bomCharset != null
+                    && !StandardCharsets.UTF_8.equals(bomCharset)) {
+                length &= ~1;
+            } else {
+                int newLine = length - 1;
+                while (newLine >= 0 && bytes[newLine] != '\n') {
+                    newLine--;
+                }
+                length = newLine >= 0 ? newLine + 1
+                        : completeUtf8Length(bytes, length);
+            }
+        }
+        return decode(Arrays.copyOf(bytes, length));
+    }
+
+    /**
+     * Retrieves the length of the bytes up to the end of the last complete
+     * UTF-8 sequence, so that a character cut short is left out.
+     *
+     * @param bytes to inspect
+     * @param length of the bytes
+     * @return the length of the complete sequences
+     */
+    private static int completeUtf8Length(
+            final byte[] bytes,
+            final int length) {
+        int lead = length - 1;
+        while (lead > 0 && length - lead < 4 && (bytes[lead] & 0xC0) == 0x80) {
+            lead--;
+        }
+        final int first = bytes[lead] & 0xFF;
+        final int sequenceLength = first >= 0xF0 ? 4
+                : first >= 0xE0 ? 3
+                : first >= 0xC0 ? 2
+                : 1;
+        return length - lead < sequenceLength ? lead : length;
+    }
+
+    /**
+     * Sniffs the beginning of a file for the NUL bytes denoting binary
+     * content. Files starting with a byte order mark are text.
+     *
+     * @param filePath to sniff
+     * @return true if the file is not text
+     * @throws IOException for failures to read the file
+     */
+    public static boolean isBinary(Path filePath) throws IOException {
+        if (!Files.isRegularFile(filePath)) {
+            return false;
+        }
+        final byte[] bytes = readBytes(filePath, SNIFF_BYTES);
+        if (readByteOrderMark(bytes) != null) {
+            return false;
+        }
+        for (byte b : bytes) {
+            if (b == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads up to a number of bytes from the beginning of a file.
+     */
+    private static byte[] readBytes(final Path filePath, final int maxBytes)
+            throws IOException {
+        try (FileChannel channel
+                = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(
+                    (int) Math.min(maxBytes, channel.size()));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                LOGGER.finest("Reading until the buffer is full.");
+            }
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+    }
+
+    /**
+     * Decodes the bytes of a file detecting their charset.
+     *
+     * The bytes are decoded as UTF-8 replacing malformed input. Only if
+     * replacement characters turn up is the input validated, so that valid
+     * files are decoded once.
+     *
+     * @param bytes to decode
+     * @return the decoded content
+     */
+    static FileContent decode(final byte[] bytes) {
+        final Charset bomCharset = readByteOrderMark(bytes);
+        if (bomCharset != null) {
+            final int bomLength = StandardCharsets.UTF_8.equals(bomCharset)
+                    ? 3 : 2;
+            final String text = new String(bytes, bomLength,
+                    bytes.length - bomLength, bomCharset);
+            return new FileContent(text, bomCharset, true,
+                    detectLineSeparator(text));
+        }
+        final String text = new String(bytes, StandardCharsets.UTF_8);
+        if (text.indexOf(REPLACEMENT_CHARACTER) >= 0 && !isUtf8(bytes)) {
+            final Charset fallback = StandardCharsets.UTF_8.equals(
+                    Charset.defaultCharset())
+                    ? StandardCharsets.ISO_8859_1
+                    : Charset.defaultCharset();
+            LOGGER.log(Level.INFO, "Not UTF-8, decoding as {0}.", fallback);
+            final String fallbackText = new String(bytes, fallback);
+            return new FileContent(fallbackText, fallback, false,
+                    detectLineSeparator(fallbackText));
+        }
+        return new FileContent(text, StandardCharsets.UTF_8, false,
+                detectLineSeparator(text));
+    }
+
+    /**
+     * Detects the byte order mark, if any.
+     *
+     * @return the charset it denotes or null if not present
+     */
+    private static Charset readByteOrderMark(final byte[] bytes) {
+        if (bytes.length >= 3 && (bytes[0] & 0xFF) == 0xEF
+                && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (bytes.length >= 2) {
+            final int first = bytes[0] & 0xFF;
+            final int second = bytes[1] & 0xFF;
+            if (first == 0xFE && second == 0xFF) {
+                return StandardCharsets.UTF_16BE;
+            }
+            if (first == 0xFF && second == 0xFE) {
+                return StandardCharsets.UTF_16LE;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Verifies the bytes are well-formed UTF-8.
+     */
+    private static boolean isUtf8(final byte[] bytes) {
+        try {
+            StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes));
+            return true;
+        } catch (CharacterCodingException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Detects the separator ending the first line.
+     */
+    private static String detectLineSeparator(final String text) {
+        final int newLine = text.indexOf('\n');
+        if (newLine < 0) {
+            return LINE_SEP;
         }
-        return "";
+        return newLine > 0 && text.charAt(newLine - 1) == '\r' ? "\r\n"
+                : "\n";
     }
 }
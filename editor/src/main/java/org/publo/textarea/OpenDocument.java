@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.textarea;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.beans.binding.Bindings;
+import javafx.beans.binding.DoubleBinding;
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.control.TextArea;
+import javafx.scene.text.Text;
+import org.publo.controller.utils.FileContent;
+import org.publo.textarea.model.LineOffsets;
+import org.publo.textarea.model.TextEdit;
+
+/**
+ * A document open in the editor: its {@code TextArea}, holding the text, the
+ * undo history and the scroll position, along with the format of the file
+ * and its modification time when last read or written.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+final class OpenDocument {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(OpenDocument.class.getName());
+
+    private final TextArea textArea;
+
+    /**
+     * The start of the lines of the TextArea, updated as it is edited.
+     */
+    private final LineOffsets lines = new LineOffsets();
+
+    /**
+     * The line at the top of the TextArea.
+     */
+    private final DoubleBinding scrollLine;
+
+    /**
+     * The line last found at the top of the TextArea.
+     */
+    private double lastScrollLine;
+
+    private FileContent fileContent;
+
+    private FileTime lastModified;
+
+    OpenDocument(final TextArea textArea) {
+        this.textArea = textArea;
+        this.scrollLine = Bindings.createDoubleBinding(this::findScrollLine,
+                textArea.scrollTopProperty(), textArea.widthProperty(),
+                textArea.fontProperty());
+    }
+
+    TextArea getTextArea() {
+        return textArea;
+    }
+
+    /**
+     * Retrieves the line at the top of the TextArea, as laid out.
+     *
+     * @return the line, its fractional part being the part scrolled past
+     */
+    DoubleBinding scrollLineBinding() {
+        return scrollLine;
+    }
+
+    /**
+     * Updates the lines with an edit of the TextArea.
+     *
+     * @param edit of the TextArea text
+     */
+    void edited(final TextEdit edit) {
+        lines.apply(edit);
+    }
+
+    /**
+     * Recomputes the lines from the whole TextArea text, when replaced
+     * without a matching edit.
+     *
+     * @param text of the TextArea
+     */
+    void replaced(final String text) {
+        lines.reset(text);
+    }
+
+    /**
+     * Finds the line at the top of the viewport among the paragraphs the
+     * TextArea skin lays out, one per line. The paragraphs stack up in line
+     * order, so that the one crossing the top is found by a binary search on
+     * their bounds. Until they match the lines, while the skin catches up
+     * with an edit, the line last found is kept.
+     */
+    private double findScrollLine() {
+        final List<Node> paragraphs = paragraphs();
+        if (paragraphs == null
+                || paragraphs.size() != lines.getLineCount()) {
+            return lastScrollLine;
+        }
+        final double top = textArea.getScrollTop();
+        int low = 0;
+        int high = paragraphs.size() - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (paragraphs.get(middle).getBoundsInParent().getMaxY() <= top) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        final Bounds bounds = paragraphs.get(low).getBoundsInParent();
+        final double part = bounds.getHeight() <= 0 ? 0.0
+                : (top - bounds.getMinY()) / bounds.getHeight();
+        lastScrollLine = low + Math.min(Math.max(part, 0.0), 1.0);
+        LOGGER.log(Level.FINEST, "Line scrolled {0}", lastScrollLine);
+        return lastScrollLine;
+    }
+
+    /**
+     * Looks the paragraph texts of the TextArea content up.
+     *
+     * @return the paragraphs or null if not laid out
+     */
+    private List<Node> paragraphs() {
+        final Node content = textArea.lookup(".content");
+        if (!(content instanceof Parent)) {
+            return null;
+        }
+        for (Node child : ((Parent) content).getChildrenUnmodifiable()) {
+            if (child instanceof Parent) {
+                final List<Node> nodes
+                        = ((Parent) child).getChildrenUnmodifiable();
+                if (!nodes.isEmpty() && nodes.get(0) instanceof Text) {
+                    return nodes;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the file as loaded, defining its encoding.
+     *
+     * @return the file content
+     */
+    FileContent getFileContent() {
+        return fileContent;
+    }
+
+    /**
+     * Records the file the document was loaded from.
+     *
+     * @param fileContent loaded
+     * @param lastModified the file modification time before loading
+     */
+    void setFileContent(
+            final FileContent fileContent,
+            final FileTime lastModified) {
+        this.fileContent = fileContent;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Records the modification time of the file the document was saved to.
+     *
+     * @param lastModified of the file written
+     */
+    void setLastModified(final FileTime lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Verifies the file has not been modified since read or written.
+     *
+     * @param filePath of the document
+     * @return true if the document reflects the file
+     */
+    boolean isCurrent(final Path filePath) {
+        try {
+            return lastModified != null
+                    && lastModified.equals(Files.getLastModifiedTime(filePath));
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Could not read the modification time.",
+                    ex);
+            return false;
+        }
+    }
+}
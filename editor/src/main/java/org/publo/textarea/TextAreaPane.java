@@ -24,32 +24,60 @@
 package org.publo.textarea;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javafx.animation.Animation;
-import javafx.animation.Animation.Status;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
-import javafx.beans.binding.Bindings;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
-import javafx.scene.Node;
+import javafx.concurrent.Task;
 import javafx.scene.control.Alert;
-import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.TextFormatter;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.text.Font;
 import javafx.util.Duration;
+import org.publo.controller.utils.FileContent;
 import org.publo.controller.utils.FileUtils;
+import org.publo.textarea.listener.TextEditListener;
+import org.publo.textarea.model.PieceTable;
+import org.publo.textarea.model.TextEdit;
 
 /**
  * A {@code BorderPane} {@code TextArea}.
  *
+ * Files larger than the threshold defined by the {@link #VIRTUALIZE_KEY}
+ * system property are edited in a {@link VirtualizedTextArea} instead.
+ *
+ * The documents recently open are kept, up to the number defined by the
+ * {@link #OPEN_DOCUMENTS_KEY} system property, so that switching back to one
+ * of them is instant and preserves its undo history and scroll position.
+ *
  * @author Antonio Cucchiara
  * @since 0.3
  */
@@ -59,57 +87,344 @@ public class TextAreaPane extends BorderPane
     private static final Logger LOGGER
             = Logger.getLogger(TextAreaPane.class.getName());
 
-    private final TextArea textArea;
+    /**
+     * The system property key of the size, in characters, from which files
+     * are edited in the {@link VirtualizedTextArea}.
+     */
+    public static final String VIRTUALIZE_KEY = "publo.editor.virtualize.chars";
+
+    /**
+     * The default virtualization threshold: one million characters.
+     */
+    public static final int DEFAULT_VIRTUALIZE_THRESHOLD = 1_000_000;
+
+    /**
+     * The system property key of the number of documents kept open.
+     */
+    public static final String OPEN_DOCUMENTS_KEY = "publo.editor.documents";
+
+    /**
+     * The default number of documents kept open.
+     */
+    public static final int DEFAULT_OPEN_DOCUMENTS = 8;
+
+    /**
+     * The file size from which the beginning of a file is displayed while
+     * the rest is loaded: 1 MiB.
+     */
+    private static final long PROGRESSIVE_THRESHOLD = 1024 * 1024;
+
+    /**
+     * The number of bytes displayed while loading large files.
+     */
+    private static final int HEAD_BYTES = 16 * 1024;
+
+    /**
+     * The quiet period after an edit of the {@link VirtualizedTextArea}
+     * before its text is published, so that a burst of edits builds the text
+     * once.
+     */
+    private static final long PUBLISH_DELAY_MILLIS = 300;
 
     /**
-     * Property holding the TextArea scroll position in percentage of the page
-     * scrolled.
+     * The thread loading the files.
      */
-    private final DoubleProperty scrollPercentageProperty;
+    private static final ExecutorService LOADER
+            = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "publo-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * The document displayed, or last displayed if the
+     * {@link #virtualizedTextArea} is in use.
+     */
+    private OpenDocument activeDocument;
+
+    /**
+     * The {@code TextArea} of the {@link #activeDocument}.
+     */
+    private TextArea textArea;
+
+    /**
+     * The documents recently open by path, least recently used first.
+     * Documents edited in the {@link #virtualizedTextArea} are not kept.
+     */
+    private final Map<Path, OpenDocument> openDocuments;
+
+    /**
+     * The editor of large files, created on first use.
+     */
+    private VirtualizedTextArea virtualizedTextArea;
+
+    /**
+     * Whether the {@link #virtualizedTextArea} is the one in use.
+     */
+    private boolean virtualized;
+
+    /**
+     * The text of the editor in use. The text of the
+     * {@link VirtualizedTextArea} is published once its edits pause.
+     */
+    private final StringProperty content;
+
+    /**
+     * Property holding the source line at the top of the editor.
+     */
+    private final DoubleProperty scrollLineProperty;
 
     private final FileAutoSave autoSave;
 
+    /**
+     * The delay between the first unpublished edit of the
+     * {@link VirtualizedTextArea} and the publication of its text.
+     */
+    private final PauseTransition publishDelay;
+
+    /**
+     * The file load in progress or last completed.
+     */
+    private FileLoadTask loadTask;
+
+    /**
+     * The document model mirroring the {@code TextArea} content.
+     */
+    private final PieceTable document;
+
+    private final List<TextEditListener> editListeners
+            = new CopyOnWriteArrayList<>();
+
+    /**
+     * The range and replacement of the content change being committed.
+     */
+    private int pendingStart;
+    private int pendingEnd;
+    private String pendingText;
+
     public TextAreaPane() {
-        this.textArea = new TextArea();
-        this.textArea.setWrapText(true);
-        this.textArea.setFont(Font.font("monospaced", 16));
-        this.scrollPercentageProperty = new SimpleDoubleProperty(0.0);
-        this.scrollPercentageProperty.bind(Bindings.createDoubleBinding(() -> {
-            final Node text = textArea.lookup(".content");
-            final Node scrollPane = textArea.lookup(".scroll-pane");
-            if (text == null || scrollPane == null) {
-                return 0.0;
-            }
-            final double textHeight = text.getLayoutBounds().getHeight();
-            final double textAreaHeight = ((ScrollPane) scrollPane)
-                    .getViewportBounds().getHeight();
-            if (textHeight <= textAreaHeight) {
-                return 100.0;
-            }
-            final double percentage
-                    = textArea.getScrollTop() / (textHeight - textAreaHeight);
-            LOGGER.log(Level.FINEST, "Percent scrolled {0}", percentage);
-            return percentage;
-        }, textArea.scrollTopProperty()));
+        this.document = new PieceTable();
+        this.content = new SimpleStringProperty("");
+        this.scrollLineProperty = new SimpleDoubleProperty(0.0);
+        final int capacity = Integer.getInteger(OPEN_DOCUMENTS_KEY,
+                DEFAULT_OPEN_DOCUMENTS);
+        this.openDocuments = new LinkedHashMap<Path, OpenDocument>(
+                16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<Path, OpenDocument> eldest) {
+                return size() > capacity;
+            }
+        };
         this.autoSave = new FileAutoSave();
-        this.setCenter(this.textArea);
+        this.publishDelay = new PauseTransition(
+                Duration.millis(PUBLISH_DELAY_MILLIS));
+        this.publishDelay.setOnFinished(event -> publishVirtualizedText());
+        this.editListeners.add(edit -> autoSave.markDirty());
+        showDocument(createDocument());
+    }
+
+    /**
+     * Creates a document with an empty {@code TextArea} recording its content
+     * changes for the document model.
+     *
+     * @return the document
+     */
+    private OpenDocument createDocument() {
+        final TextArea newTextArea = new TextArea();
+        newTextArea.setTextFormatter(new TextFormatter<>(change -> {
+            if (newTextArea == textArea && change.isContentChange()) {
+                pendingStart = change.getRangeStart();
+                pendingEnd = change.getRangeEnd();
+                pendingText = change.getText();
+            }
+            return change;
+        }));
+        newTextArea.textProperty().addListener(
+                (observable, oldValue, newValue) -> {
+                    if (newTextArea == textArea) {
+                        applyPendingChange(newValue);
+                    }
+                });
+        newTextArea.setWrapText(true);
+        newTextArea.setFont(Font.font("monospaced", 16));
+        return new OpenDocument(newTextArea);
     }
 
     public void addTextChangeListener(ChangeListener<String> listener) {
-        this.textArea.textProperty().addListener(listener);
+        this.content.addListener(listener);
     }
 
     public String getText() {
-        return this.textArea.textProperty().getValue();
+        return virtualized ? document.toString() : content.getValue();
+    }
+
+    /**
+     * Registers a listener to be notified of every edit to the document.
+     * Listeners receive the range replaced rather than the whole text.
+     *
+     * @param listener to register
+     */
+    public void addEditListener(final TextEditListener listener) {
+        this.editListeners.add(listener);
+    }
+
+    public void removeEditListener(final TextEditListener listener) {
+        this.editListeners.remove(listener);
+    }
+
+    /**
+     * Retrieves a read-only view of the document model.
+     *
+     * @return the document
+     */
+    public CharSequence getDocument() {
+        return this.document;
+    }
+
+    /**
+     * Applies the change recorded by the {@code TextFormatter} filter to the
+     * document model and notifies the edit listeners.
+     *
+     * Should the recorded change not account for the new text, for instance
+     * if the content was altered bypassing the filter, the whole document is
+     * replaced.
+     *
+     * @param text the new {@code TextArea} content
+     */
+    private void applyPendingChange(final String text) {
+        if (virtualized) {
+            pendingText = null;
+            return;
+        }
+        final TextEdit edit;
+        if (pendingText != null && document.length()
+                - (pendingEnd - pendingStart) + pendingText.length()
+                == text.length()) {
+            edit = document.replace(pendingStart, pendingEnd - pendingStart,
+                    pendingText);
+            activeDocument.edited(edit);
+        } else {
+            LOGGER.fine("Resynchronising the document model.");
+            edit = document.replace(0, document.length(), text);
+            activeDocument.replaced(text);
+        }
+        pendingText = null;
+        notifyEditListeners(edit);
+    }
+
+    /**
+     * Applies an edit of the {@link VirtualizedTextArea} to the document
+     * model and notifies the edit listeners. The resulting text is only
+     * built and published once no further edit arrives for
+     * {@link #PUBLISH_DELAY_MILLIS}.
+     *
+     * @param edit applied to the lines
+     */
+    private void applyVirtualizedEdit(final TextEdit edit) {
+        notifyEditListeners(document.replace(edit.getOffset(),
+                edit.getRemoved().length(), edit.getInserted()));
+        publishDelay.playFromStart();
+    }
+
+    private void publishVirtualizedText() {
+        if (virtualized) {
+            content.set(document.toString());
+        }
+    }
+
+    private void notifyEditListeners(final TextEdit edit) {
+        for (TextEditListener listener : editListeners) {
+            listener.edited(edit);
+        }
     }
 
     /**
-     * Retrieves a reference to the scroll percentage property.
+     * Displays a document, the document model taking its text.
+     *
+     * @param openDocument to display
+     */
+    private void showDocument(final OpenDocument openDocument) {
+        if (virtualized) {
+            virtualized = false;
+            publishDelay.stop();
+            virtualizedTextArea.setText("");
+        }
+        activeDocument = openDocument;
+        textArea = openDocument.getTextArea();
+        textArea.setEditable(true);
+        scrollLineProperty.unbind();
+        scrollLineProperty.bind(openDocument.scrollLineBinding());
+        setCenter(textArea);
+        content.unbind();
+        content.bind(textArea.textProperty());
+        pendingText = null;
+        notifyEditListeners(document.replace(0, document.length(),
+                textArea.getText()));
+    }
+
+    /**
+     * Whether the document is kept among the ones recently open.
+     */
+    private boolean isOpenDocument(final OpenDocument openDocument) {
+        return openDocuments.containsValue(openDocument);
+    }
+
+    /**
+     * Displays the text in the {@code TextArea}. The {@code TextArea} of a
+     * document recently open is never reused.
+     *
+     * @param text to display
+     */
+    private void showInTextArea(final String text) {
+        if (isOpenDocument(activeDocument)) {
+            showDocument(createDocument());
+        } else if (virtualized) {
+            showDocument(activeDocument);
+        }
+        textArea.textProperty().setValue(text);
+    }
+
+    /**
+     * Displays the text in the {@link VirtualizedTextArea}, emptying the
+     * {@code TextArea} so that it does not hold a layout of the text.
+     *
+     * @param text to display
+     */
+    private void showInVirtualizedTextArea(final String text) {
+        LOGGER.log(Level.INFO, "Editing {0} characters in the virtualized"
+                + " editor.", text.length());
+        if (virtualizedTextArea == null) {
+            virtualizedTextArea = new VirtualizedTextArea(textArea.getFont());
+            virtualizedTextArea.addEditListener(this::applyVirtualizedEdit);
+        }
+        if (!virtualized) {
+            virtualized = true;
+            content.unbind();
+            if (!isOpenDocument(activeDocument)) {
+                textArea.clear();
+            }
+            scrollLineProperty.unbind();
+            scrollLineProperty.bind(
+                    virtualizedTextArea.scrollLineProperty());
+            setCenter(virtualizedTextArea);
+        }
+        publishDelay.stop();
+        virtualizedTextArea.setEditable(true);
+        virtualizedTextArea.setText(text);
+        notifyEditListeners(document.replace(0, document.length(), text));
+        content.set(text);
+    }
+
+    /**
+     * Retrieves a reference to the scroll line property: the line of the
+     * document at the top of the editor, zero based, its fractional part
+     * being the part of the line scrolled past.
      *
      * @return the property
      */
-    public DoubleProperty scrollPercentageProperty() {
-        return this.scrollPercentageProperty;
+    public DoubleProperty scrollLineProperty() {
+        return this.scrollLineProperty;
     }
 
     /**
@@ -127,12 +442,52 @@ public class TextAreaPane extends BorderPane
             final Path newValue) {
         if (oldValue == null || !oldValue.equals(newValue)) {
             LOGGER.info("Updating the TextArea.");
-            try {
-                final String fileContent
-                        = FileUtils.readFileContent(newValue);
-                textArea.textProperty().setValue(fileContent);
-                autoSave.start(textArea.textProperty(), newValue);
-            } catch (IOException ex) {
+            autoSave.flush();
+            autoSave.suspend();
+            load(newValue);
+        }
+    }
+
+    /**
+     * Displays a file, switching to its document if recently open and not
+     * modified since. Otherwise the file is loaded in the background,
+     * cancelling the load in progress if any.
+     *
+     * Binary files are detected upfront and not loaded. Of files larger than
+     * {@link #PROGRESSIVE_THRESHOLD} the first {@link #HEAD_BYTES} are
+     * displayed, read-only, while the rest is read. Auto saving resumes once
+     * the whole file is loaded, the document displayed until then being
+     * read-only.
+     *
+     * @param filePath to load
+     */
+    private void load(final Path filePath) {
+        if (loadTask != null) {
+            loadTask.cancel();
+            loadTask = null;
+        }
+        final OpenDocument openDocument = openDocuments.get(filePath);
+        if (openDocument != null) {
+            if (openDocument.isCurrent(filePath)) {
+                LOGGER.log(Level.INFO, "Switching to {0}.", filePath);
+                showDocument(openDocument);
+                autoSave.start(this::getText, openDocument.getFileContent(),
+                        filePath);
+                return;
+            }
+            openDocuments.remove(filePath);
+        }
+        lockEditor();
+        final FileLoadTask task = new FileLoadTask(filePath);
+        task.setOnSucceeded(event -> {
+            if (loadTask == task) {
+                loaded(filePath, task.getValue(), task.lastModified);
+            }
+        });
+        task.setOnFailed(event -> {
+            if (loadTask == task) {
+                LOGGER.log(Level.SEVERE, "Could not load the file.",
+                        task.getException());
                 final Alert alert = new Alert(Alert.AlertType.ERROR);
                 alert.setTitle("Error prompt");
                 alert.setHeaderText("Failed to load the file");
@@ -140,11 +495,145 @@ public class TextAreaPane extends BorderPane
                         + " as text.");
                 alert.showAndWait();
             }
+        });
+        loadTask = task;
+        LOADER.execute(task);
+    }
+
+    /**
+     * Makes the editor in use read-only. Auto saving being suspended while a
+     * file loads, the edits made in the meantime would be lost.
+     */
+    private void lockEditor() {
+        textArea.setEditable(false);
+        if (virtualized) {
+            virtualizedTextArea.edit(-1);
+            virtualizedTextArea.setEditable(false);
+        }
+    }
+
+    /**
+     * Displays a loaded file, keeps its document among the ones recently
+     * open and resumes auto saving.
+     *
+     * @param filePath loaded
+     * @param fileContent loaded, null for binary files
+     * @param lastModified the file modification time before loading
+     */
+    private void loaded(
+            final Path filePath,
+            final FileContent fileContent,
+            final FileTime lastModified) {
+        if (fileContent == null) {
+            LOGGER.log(Level.INFO, "Not loading binary file {0}.", filePath);
+            showInTextArea("");
+            textArea.setEditable(false);
+            textArea.setPromptText("Binary file: "
+                    + filePath.getFileName());
+            return;
+        }
+        final String text = fileContent.getNormalisedText();
+        if (text.length() >= Integer.getInteger(VIRTUALIZE_KEY,
+                DEFAULT_VIRTUALIZE_THRESHOLD)) {
+            showInVirtualizedTextArea(text);
+        } else {
+            showInTextArea(text);
+            textArea.setEditable(true);
+            textArea.setPromptText(null);
+            if (Files.isRegularFile(filePath)) {
+                activeDocument.setFileContent(fileContent, lastModified);
+                openDocuments.put(filePath, activeDocument);
+            }
+        }
+        autoSave.start(this::getText, fileContent, filePath);
+    }
+
+    /**
+     * Drops the recently open document of a file if the file was modified or
+     * deleted since read or written by the editor. The document displayed is
+     * left as is but read again the next time the file is selected.
+     *
+     * @param filePath of the file changed
+     */
+    public void invalidate(final Path filePath) {
+        final OpenDocument openDocument = peekOpenDocument(filePath);
+        if (openDocument != null && !openDocument.isCurrent(filePath)) {
+            LOGGER.log(Level.INFO, "Discarding {0}, changed on disk.",
+                    filePath);
+            openDocuments.remove(filePath);
+        }
+    }
+
+    /**
+     * Retrieves a recently open document without affecting the eviction
+     * order.
+     */
+    private OpenDocument peekOpenDocument(final Path filePath) {
+        for (Map.Entry<Path, OpenDocument> entry : openDocuments.entrySet()) {
+            if (entry.getKey().equals(filePath)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Saves the pending changes and waits for them to be written. Meant to be
+     * invoked on application exit.
+     */
+    public void shutdown() {
+        if (loadTask != null) {
+            loadTask.cancel();
+        }
+        autoSave.shutdown();
+    }
+
+    /**
+     * Reads a file in the background, displaying its beginning if large.
+     */
+    private final class FileLoadTask extends Task<FileContent> {
+
+        private final Path filePath;
+
+        /**
+         * The file modification time before reading it.
+         */
+        private volatile FileTime lastModified;
+
+        private FileLoadTask(final Path filePath) {
+            this.filePath = filePath;
+        }
+
+        @Override
+        protected FileContent call() throws IOException {
+            if (FileUtils.isBinary(filePath)) {
+                return null;
+            }
+            if (Files.isRegularFile(filePath)) {
+                lastModified = Files.getLastModifiedTime(filePath);
+                if (Files.size(filePath) >= PROGRESSIVE_THRESHOLD) {
+                    final FileContent head
+                            = FileUtils.readHead(filePath, HEAD_BYTES);
+                    Platform.runLater(() -> {
+                        if (loadTask == this && !isCancelled()) {
+                            showInTextArea(head.getNormalisedText());
+                            textArea.setEditable(false);
+                        }
+                    });
+                }
+            }
+            return FileUtils.readFile(filePath);
         }
     }
 
     /**
-     * File auto save facility. Auto saving occurs every 2500 milliseconds.
+     * File auto save facility.
+     *
+     * Changes mark the file dirty and schedule a save 2500 milliseconds after
+     * the first of them: no timer runs and nothing is written while the file
+     * is unchanged. The content is written on a background thread to a
+     * temporary file then moved over the original, so that an interrupted
+     * write never leaves the file truncated.
      */
     private class FileAutoSave {
 
@@ -157,7 +646,7 @@ public class TextAreaPane extends BorderPane
         /**
          * The file content in its most up-to-date form.
          */
-        private StringProperty fileContent;
+        private Supplier<String> fileContent;
 
         /**
          * The current file {@code Path}.
@@ -165,54 +654,203 @@ public class TextAreaPane extends BorderPane
         private Path filePath;
 
         /**
-         * The internal {@code Timeline}.
+         * The charset, byte order mark and line separator of the current
+         * file.
+         */
+        private FileContent fileFormat;
+
+        /**
+         * Whether the content changed since the last save.
          */
-        private final Timeline autoSaveTimer;
+        private boolean dirty;
+
+        /**
+         * The delay between the first unsaved change and the save.
+         */
+        private final PauseTransition saveDelay;
+
+        /**
+         * The single thread writing the files, in submission order.
+         */
+        private final ExecutorService writer;
 
         public FileAutoSave() {
-            this.autoSaveTimer = new Timeline(new KeyFrame(
-                    Duration.millis(2500),
-                    ae -> save()));
-            this.autoSaveTimer.setCycleCount(Animation.INDEFINITE);
+            this.saveDelay = new PauseTransition(Duration.millis(2500));
+            this.saveDelay.setOnFinished(ae -> save());
+            this.writer = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "publo-autosave");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
 
         /**
-         * Sets the paths and starts the {@code TimeLine}.
-         *
-         * Based on the {@code Animation} documentation the states can only be
-         * {@link Status#STOPPED}, {@link Status#PAUSED} or
-         * {@link Status#RUNNING}.
-         *
-         * If already started, it will trustingly check if
-         * {@link Status#RUNNING} and, if so, temporarily pause.
+         * Sets the content and path to auto save. Any change made beforehand
+         * is expected to have been flushed.
          *
          * @param fileContent to auto save
+         * @param fileFormat the file as loaded, defining its encoding
          * @param filePath to auto save to
          */
         private void start(
-                final StringProperty fileContent,
+                final Supplier<String> fileContent,
+                final FileContent fileFormat,
                 final Path filePath) {
-            if (Status.RUNNING == autoSaveTimer.getStatus()) {
-                autoSaveTimer.pause();
+            saveDelay.stop();
+            dirty = false;
+            this.fileContent = fileContent;
+            this.fileFormat = fileFormat;
+            this.filePath = Files.isRegularFile(filePath) ? filePath : null;
+        }
+
+        /**
+         * Stops auto saving until the next {@link #start}, discarding the
+         * pending changes. Expected to follow a {@link #flush()}.
+         */
+        private void suspend() {
+            saveDelay.stop();
+            dirty = false;
+            this.filePath = null;
+        }
+
+        /**
+         * Marks the content dirty, scheduling a save if none is pending.
+         */
+        private void markDirty() {
+            if (filePath != null && !dirty) {
+                dirty = true;
+                saveDelay.playFromStart();
             }
-            if (Files.isRegularFile(filePath)) {
-                this.fileContent = fileContent;
-                this.filePath = filePath;
-                this.autoSaveTimer.play();
+        }
+
+        /**
+         * Saves the content straight away if dirty.
+         */
+        private void flush() {
+            if (dirty) {
+                save();
             }
         }
 
         /**
-         * Saves the {@link fileContent} to the {@link filePath}.
+         * Takes a snapshot of the {@link fileContent} and hands it over to
+         * the writer thread, where it is encoded.
          */
         private void save() {
-            LOGGER.log(Level.INFO, "Saving {0}", filePath);
-            if (Files.isRegularFile(filePath)) {
+            saveDelay.stop();
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            final Path path = filePath;
+            final FileContent format = fileFormat;
+            final String text = fileContent.get();
+            writer.execute(() -> write(path, format.encode(text)));
+        }
+
+        /**
+         * Writes the content to a temporary sibling of the
+         * {@link filePath}, forces it to the storage device then atomically
+         * replaces the file with it. Forcing the content first ensures a
+         * crash right after the move does not leave the file empty or partly
+         * written.
+         *
+         * Symbolic links are resolved so that the file linked to is replaced
+         * rather than the link, and the permissions of the file are carried
+         * over to its replacement.
+         *
+         * @param path to write to
+         * @param bytes to write
+         */
+        private void write(final Path path, final byte[] bytes) {
+            LOGGER.log(Level.INFO, "Saving {0}", path);
+            if (!Files.isRegularFile(path)) {
+                return;
+            }
+            final Path realPath;
+            try {
+                realPath = path.toRealPath();
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "Could not save the file.", ex);
+                return;
+            }
+            final Path tempPath = realPath.resolveSibling(
+                    "." + realPath.getFileName() + ".autosave");
+            try {
+                try (FileChannel channel = FileChannel.open(tempPath, CREATE,
+                        TRUNCATE_EXISTING, WRITE)) {
+                    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(true);
+                }
+                copyPermissions(realPath, tempPath);
+                final FileTime lastModified
+                        = Files.getLastModifiedTime(tempPath);
+                Platform.runLater(() -> {
+                    final OpenDocument openDocument = peekOpenDocument(path);
+                    if (openDocument != null) {
+                        openDocument.setLastModified(lastModified);
+                    }
+                });
+                try {
+                    Files.move(tempPath, realPath, ATOMIC_MOVE,
+                            REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(tempPath, realPath, REPLACE_EXISTING);
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "Could not save the file.", ex);
                 try {
-                    Files.write(filePath, fileContent.getValue().getBytes());
-                } catch (IOException ex) {
-                    LOGGER.log(Level.SEVERE, "Could not save the file.", ex);
+                    Files.deleteIfExists(tempPath);
+                } catch (IOException deleteEx) {
+                    LOGGER.log(Level.WARNING, "Could not delete the temporary"
+                            + " file.", deleteEx);
+                }
+            }
+        }
+
+        /**
+         * Copies the POSIX permissions, or the access control list, of a
+         * file to another, as far as the file system supports them.
+         *
+         * @param source to copy the permissions of
+         * @param target to apply the permissions to
+         * @throws IOException on failure to read or apply the permissions
+         */
+        private void copyPermissions(final Path source, final Path target)
+                throws IOException {
+            final PosixFileAttributeView posixSource = Files
+                    .getFileAttributeView(source, PosixFileAttributeView.class);
+            final PosixFileAttributeView posixTarget = Files
+                    .getFileAttributeView(target, PosixFileAttributeView.class);
+            if (posixSource != null && posixTarget != null) {
+                posixTarget.setPermissions(
+                        posixSource.readAttributes().permissions());
+            }
+            final AclFileAttributeView aclSource = Files
+                    .getFileAttributeView(source, AclFileAttributeView.class);
+            final AclFileAttributeView aclTarget = Files
+                    .getFileAttributeView(target, AclFileAttributeView.class);
+            if (aclSource != null && aclTarget != null) {
+                aclTarget.setAcl(aclSource.getAcl());
+            }
+        }
+
+        /**
+         * Flushes the pending changes and waits for the writer thread to
+         * complete.
+         */
+        private void shutdown() {
+            flush();
+            writer.shutdown();
+            try {
+                if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                    LOGGER.warning("Auto save did not complete.");
                 }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
             }
         }
     }
@@ -0,0 +1,360 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.textarea;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import org.publo.textarea.listener.TextEditListener;
+import org.publo.textarea.model.TextEdit;
+
+/**
+ * A text editor laying out only the visible lines.
+ *
+ * Meant for documents too large for a {@code TextArea}, the text is held as a
+ * list of lines displayed by a {@code ListView}: only the cells in the
+ * viewport exist and, all lines sharing a fixed height, no line is measured
+ * to position the others. Lines are not wrapped.
+ *
+ * A line is edited in place on selection, {@code Enter} splitting it and
+ * {@code Backspace} at its start joining it to the previous one. Each change
+ * is notified as a {@link TextEdit} on the text the lines are joined into.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public class VirtualizedTextArea extends ListView<String> {
+
+    private static final String LINE_SEPARATOR = "\n";
+
+    /**
+     * The vertical padding of a line cell.
+     */
+    private static final double CELL_PADDING = 8.0;
+
+    private final ObservableList<String> lines
+            = FXCollections.observableArrayList();
+
+    /**
+     * The document offset of the start of each line. Only the first
+     * {@link #validLineStarts} entries are up to date: a change of a line
+     * invalidates the ones of the lines after it, computed again on demand
+     * from the closest valid one.
+     */
+    private int[] lineStarts = new int[1];
+    private int validLineStarts = 1;
+
+    private final List<TextEditListener> editListeners
+            = new CopyOnWriteArrayList<>();
+
+    /**
+     * Property holding the line at the top of the viewport, see
+     * {@link TextAreaPane#scrollLineProperty()}.
+     */
+    private final ReadOnlyDoubleWrapper scrollLine
+            = new ReadOnlyDoubleWrapper(0.0);
+
+    /**
+     * The caret position to apply to the next line edited.
+     */
+    private int pendingCaret = Integer.MAX_VALUE;
+
+    public VirtualizedTextArea(final Font font) {
+        super();
+        setItems(lines);
+        lines.addListener((ListChangeListener<String>) change -> {
+            while (change.next()) {
+                validLineStarts = Math.min(validLineStarts,
+                        change.getFrom() + 1);
+            }
+        });
+        setEditable(true);
+        setFont(font);
+        setCellFactory(listView -> new LineCell());
+        setOnKeyPressed(event -> {
+            final int selected = getSelectionModel().getSelectedIndex();
+            if (event.getCode() == KeyCode.ENTER && selected >= 0
+                    && getEditingIndex() < 0) {
+                editLine(selected, lines.get(selected).length());
+                event.consume();
+            }
+        });
+        skinProperty().addListener((observable, oldSkin, newSkin) -> {
+            for (Node node : lookupAll(".scroll-bar")) {
+                if (node instanceof ScrollBar && ((ScrollBar) node)
+                        .getOrientation() == Orientation.VERTICAL) {
+                    final ScrollBar scrollBar = (ScrollBar) node;
+                    scrollBar.valueProperty().addListener(
+                            (value, oldValue, newValue)
+                            -> updateScrollLine(scrollBar));
+                    scrollBar.visibleProperty().addListener(
+                            (value, oldValue, newValue)
+                            -> updateScrollLine(scrollBar));
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the font of the lines and their fixed height.
+     *
+     * @param font to display the lines with
+     */
+    public final void setFont(final Font font) {
+        setStyle("-fx-font-family: \"" + font.getFamily()
+                + "\"; -fx-font-size: " + font.getSize() + "px;");
+        final Text probe = new Text("Xy");
+        probe.setFont(font);
+        setFixedCellSize(Math.ceil(probe.getLayoutBounds().getHeight())
+                + CELL_PADDING);
+    }
+
+    /**
+     * Replaces the whole document. No edit is notified.
+     *
+     * @param text of the document
+     */
+    public void setText(final String text) {
+        lines.setAll(Arrays.asList(text.split(LINE_SEPARATOR, -1)));
+        scrollTo(0);
+    }
+
+    /**
+     * Retrieves the whole document.
+     *
+     * @return the lines joined
+     */
+    public String getText() {
+        return String.join(LINE_SEPARATOR, lines);
+    }
+
+    public void addEditListener(final TextEditListener listener) {
+        this.editListeners.add(listener);
+    }
+
+    public void removeEditListener(final TextEditListener listener) {
+        this.editListeners.remove(listener);
+    }
+
+    /**
+     * Retrieves the scroll line property.
+     *
+     * @return the property
+     */
+    public ReadOnlyDoubleProperty scrollLineProperty() {
+        return scrollLine.getReadOnlyProperty();
+    }
+
+    /**
+     * Replaces a run of lines notifying the corresponding edit.
+     *
+     * @param from the first line replaced
+     * @param count the number of lines replaced, at least one
+     * @param replacement the lines to replace them with, at least one
+     */
+    void replaceLines(
+            final int from,
+            final int count,
+            final String... replacement) {
+        final List<String> replaced = lines.subList(from, from + count);
+        final String removed = String.join(LINE_SEPARATOR, replaced);
+        final String inserted = String.join(LINE_SEPARATOR, replacement);
+        if (removed.equals(inserted)) {
+            return;
+        }
+        final TextEdit edit = new TextEdit(offsetOf(from), removed, inserted);
+        replaced.clear();
+        lines.addAll(from, Arrays.asList(replacement));
+        for (TextEditListener listener : editListeners) {
+            listener.edited(edit);
+        }
+    }
+
+    /**
+     * Starts editing a line.
+     *
+     * @param index of the line
+     * @param caret position within the line
+     */
+    void editLine(final int index, final int caret) {
+        pendingCaret = caret;
+        getSelectionModel().select(index);
+        scrollTo(Math.max(0, index - 1));
+        edit(index);
+    }
+
+    /**
+     * Retrieves the offset in the document of the start of a line. Only the
+     * lengths of the lines since the last valid start are summed, so that
+     * edits close to each other do not walk the whole document.
+     */
+    private int offsetOf(final int index) {
+        if (index >= lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts,
+                    Math.max(index + 1, lineStarts.length * 2));
+        }
+        for (int i = validLineStarts; i <= index; i++) {
+            lineStarts[i] = lineStarts[i - 1] + lines.get(i - 1).length()
+                    + LINE_SEPARATOR.length();
+        }
+        validLineStarts = Math.max(validLineStarts, index + 1);
+        return lineStarts[index];
+    }
+
+    private void updateScrollLine(final ScrollBar scrollBar) {
+        if (!scrollBar.isVisible()) {
+            scrollLine.set(0.0);
+        } else {
+            final double range = scrollBar.getMax() - scrollBar.getMin();
+            final double position = range <= 0 ? 0.0
+                    : (scrollBar.getValue() - scrollBar.getMin()) / range;
+            final double visibleLines = getHeight() / getFixedCellSize();
+            scrollLine.set(position
+                    * Math.max(0, lines.size() - visibleLines));
+        }
+    }
+
+    /**
+     * A line, displayed as text and edited in a {@code TextField}.
+     */
+    private final class LineCell extends ListCell<String> {
+
+        private TextField field;
+
+        @Override
+        public void startEdit() {
+            super.startEdit();
+            if (!isEditing()) {
+                return;
+            }
+            if (field == null) {
+                field = createField();
+            }
+            field.setText(getItem());
+            setText(null);
+            setGraphic(field);
+            field.requestFocus();
+            field.positionCaret(Math.min(pendingCaret, getItem().length()));
+            pendingCaret = Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void cancelEdit() {
+            super.cancelEdit();
+            setText(getItem());
+            setGraphic(null);
+        }
+
+        @Override
+        protected void updateItem(final String item, final boolean empty) {
+            super.updateItem(item, empty);
+            if (empty || item == null) {
+                setText(null);
+                setGraphic(null);
+            } else if (isEditing() && field != null) {
+                field.setText(item);
+                setText(null);
+                setGraphic(field);
+            } else {
+                setText(item);
+                setGraphic(null);
+            }
+        }
+
+        private TextField createField() {
+            final TextField textField = new TextField();
+            textField.setOnKeyPressed(event -> {
+                final int index = getIndex();
+                final String text = textField.getText();
+                final int caret = textField.getCaretPosition();
+                switch (event.getCode()) {
+                    case ENTER:
+                        cancelEdit();
+                        replaceLines(index, 1, text.substring(0, caret),
+                                text.substring(caret));
+                        editLine(index + 1, 0);
+                        event.consume();
+                        break;
+                    case BACK_SPACE:
+                        if (caret == 0 && index > 0
+                                && textField.getSelection().getLength() == 0) {
+                            final String previous = lines.get(index - 1);
+                            cancelEdit();
+                            replaceLines(index - 1, 2, previous + text);
+                            editLine(index - 1, previous.length());
+                            event.consume();
+                        }
+                        break;
+                    case UP:
+                    case DOWN:
+                        final int target = index
+                                + (event.getCode() == KeyCode.UP ? -1 : 1);
+                        if (target >= 0 && target < lines.size()) {
+                            commit();
+                            editLine(target, caret);
+                            event.consume();
+                        }
+                        break;
+                    case ESCAPE:
+                        cancelEdit();
+                        event.consume();
+                        break;
+                    default:
+                        break;
+                }
+            });
+            textField.focusedProperty().addListener(
+                    (observable, oldValue, newValue) -> {
+                        if (!newValue && isEditing()) {
+                            commit();
+                        }
+                    });
+            return textField;
+        }
+
+        /**
+         * Applies the text of the field to the line and stops editing.
+         */
+        private void commit() {
+            final int index = getIndex();
+            final String text = field.getText();
+            cancelEdit();
+            replaceLines(index, 1, text);
+        }
+    }
+}
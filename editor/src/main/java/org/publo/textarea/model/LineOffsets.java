@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.textarea.model;
+
+import java.util.Arrays;
+
+/**
+ * The offsets at which the lines of a document start, kept up to date from
+ * its {@link TextEdit}s rather than by scanning the text again.
+ *
+ * An edit drops the starts of the lines it removes, shifts the ones after it
+ * and adds the ones of the lines it inserts, so its cost does not depend on
+ * the text length. Looking a line up is a binary search.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class LineOffsets {
+
+    private int[] starts = new int[16];
+    private int count = 1;
+
+    /**
+     * Creates the offsets of an empty document.
+     */
+    public LineOffsets() {
+    }
+
+    /**
+     * Recomputes the offsets from a whole text.
+     *
+     * @param text of the document
+     */
+    public void reset(final CharSequence text) {
+        count = 1;
+        addStarts(text, 0);
+    }
+
+    /**
+     * Updates the offsets with an edit of the document.
+     *
+     * @param edit applied to the document
+     */
+    public void apply(final TextEdit edit) {
+        final int offset = edit.getOffset();
+        final int from = upperBound(offset);
+        final int to = upperBound(offset + edit.getRemoved().length());
+        final int[] tail = Arrays.copyOfRange(starts, to, count);
+        count = from;
+        addStarts(edit.getInserted(), offset);
+        ensureCapacity(count + tail.length);
+        for (int start : tail) {
+            starts[count++] = start + edit.getDelta();
+        }
+    }
+
+    /**
+     * Retrieves the number of lines, a text without line separator being
+     * one line.
+     *
+     * @return the line count
+     */
+    public int getLineCount() {
+        return count;
+    }
+
+    /**
+     * Retrieves the offset of the start of a line.
+     *
+     * @param line the line, zero based
+     * @return the offset
+     */
+    public int getLineStart(final int line) {
+        return starts[line];
+    }
+
+    /**
+     * Finds the line holding an offset.
+     *
+     * @param offset in the document
+     * @return the line, zero based
+     */
+    public int lineOf(final int offset) {
+        return upperBound(offset) - 1;
+    }
+
+    /**
+     * Appends the starts of the lines following the separators of a text.
+     */
+    private void addStarts(final CharSequence text, final int offset) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                ensureCapacity(count + 1);
+                starts[count++] = offset + i + 1;
+            }
+        }
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > starts.length) {
+            starts = Arrays.copyOf(starts,
+                    Math.max(capacity, starts.length * 2));
+        }
+    }
+
+    /**
+     * Finds the index of the first line starting after an offset.
+     */
+    private int upperBound(final int offset) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (starts[middle] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
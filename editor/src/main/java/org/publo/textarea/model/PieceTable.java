@@ -0,0 +1,281 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.textarea.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Piece table document model.
+ *
+ * The document is described by a sequence of pieces, each referring to a span
+ * of either the original text or of an append-only buffer collecting all the
+ * text inserted since. Edits only split, drop and add pieces: the text itself
+ * is never copied around. Consecutive insertions, as produced by typing, are
+ * coalesced in a single piece.
+ *
+ * Lookups start from the piece last visited, so that edits and reads close to
+ * each other do not walk the whole table.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class PieceTable implements CharSequence {
+
+    private String original;
+
+    /**
+     * The append-only buffer of the inserted text.
+     */
+    private final StringBuilder buffer = new StringBuilder();
+
+    private final List<Piece> pieces = new ArrayList<>();
+
+    private int length;
+
+    /**
+     * The index of the piece last visited and the document offset it starts
+     * at.
+     */
+    private int cursorIndex;
+    private int cursorOffset;
+
+    public PieceTable() {
+        this("");
+    }
+
+    public PieceTable(final String text) {
+        reset(text);
+    }
+
+    /**
+     * Replaces a range of the document.
+     *
+     * @param offset of the range
+     * @param removedLength the length of the range
+     * @param inserted text to replace the range with
+     * @return the edit applied
+     */
+    public TextEdit replace(
+            final int offset,
+            final int removedLength,
+            final String inserted) {
+        if (offset < 0 || removedLength < 0 || offset + removedLength > length) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+"
+                    + removedLength + " out of document length " + length);
+        }
+        final String removed = subSequence(offset, offset + removedLength)
+                .toString();
+        final TextEdit edit = new TextEdit(offset, removed, inserted);
+        if (offset == 0 && removedLength == length) {
+            reset(inserted);
+            return edit;
+        }
+        final int first = split(offset);
+        final int last = split(offset + removedLength);
+        pieces.subList(first, last).clear();
+        cursorIndex = first;
+        cursorOffset = offset;
+        if (!inserted.isEmpty()) {
+            final Piece previous = first > 0 ? pieces.get(first - 1) : null;
+            final boolean coalesced = previous != null && previous.added
+                    && previous.start + previous.length == buffer.length();
+            if (coalesced) {
+                previous.length += inserted.length();
+            } else {
+                pieces.add(first, new Piece(true, buffer.length(),
+                        inserted.length()));
+            }
+            cursorIndex = coalesced ? first : first + 1;
+            cursorOffset = offset + inserted.length();
+            buffer.append(inserted);
+        }
+        length += edit.getDelta();
+        return edit;
+    }
+
+    /**
+     * Inserts text at an offset.
+     *
+     * @param offset to insert at
+     * @param inserted text
+     * @return the edit applied
+     */
+    public TextEdit insert(final int offset, final String inserted) {
+        return replace(offset, 0, inserted);
+    }
+
+    /**
+     * Deletes a range of the document.
+     *
+     * @param offset of the range
+     * @param removedLength the length of the range
+     * @return the edit applied
+     */
+    public TextEdit delete(final int offset, final int removedLength) {
+        return replace(offset, removedLength, "");
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index
+                    + " out of document length " + length);
+        }
+        seek(index);
+        final Piece piece = pieces.get(cursorIndex);
+        return piece.charAt(index - cursorOffset);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range " + start + "-" + end
+                    + " out of document length " + length);
+        }
+        final StringBuilder text = new StringBuilder(end - start);
+        if (start == end) {
+            return text;
+        }
+        seek(start);
+        int index = cursorIndex;
+        int pieceOffset = cursorOffset;
+        while (pieceOffset < end) {
+            final Piece piece = pieces.get(index);
+            final int from = Math.max(start, pieceOffset) - pieceOffset;
+            final int to = Math.min(end, pieceOffset + piece.length)
+                    - pieceOffset;
+            piece.appendTo(text, from, to);
+            pieceOffset += piece.length;
+            index++;
+        }
+        return text;
+    }
+
+    /**
+     * Retrieves the number of pieces describing the document.
+     *
+     * @return the piece count
+     */
+    int getPieceCount() {
+        return pieces.size();
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+    /**
+     * Discards the edit history, the text becoming the new original.
+     */
+    private void reset(final String text) {
+        original = text;
+        buffer.setLength(0);
+        pieces.clear();
+        if (!text.isEmpty()) {
+            pieces.add(new Piece(false, 0, text.length()));
+        }
+        length = text.length();
+        cursorIndex = 0;
+        cursorOffset = 0;
+    }
+
+    /**
+     * Moves the cursor to the piece containing the offset, or past the last
+     * piece if the offset is the document length.
+     */
+    private void seek(final int offset) {
+        while (cursorOffset > offset) {
+            cursorIndex--;
+            cursorOffset -= pieces.get(cursorIndex).length;
+        }
+        while (cursorIndex < pieces.size()
+                && cursorOffset + pieces.get(cursorIndex).length <= offset) {
+            cursorOffset += pieces.get(cursorIndex).length;
+            cursorIndex++;
+        }
+    }
+
+    /**
+     * Ensures a piece starts at the offset.
+     *
+     * @return the index of the piece starting at the offset
+     */
+    private int split(final int offset) {
+        seek(offset);
+        if (cursorOffset == offset) {
+            return cursorIndex;
+        }
+        final Piece piece = pieces.get(cursorIndex);
+        final int head = offset - cursorOffset;
+        pieces.add(cursorIndex + 1, new Piece(piece.added,
+                piece.start + head, piece.length - head));
+        piece.length = head;
+        cursorIndex++;
+        cursorOffset = offset;
+        return cursorIndex;
+    }
+
+    /**
+     * A span of either the original or the added buffer.
+     */
+    private final class Piece {
+
+        /**
+         * Whether the piece refers to the added buffer.
+         */
+        private final boolean added;
+        private final int start;
+        private int length;
+
+        private Piece(final boolean added, final int start, final int length) {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+        }
+
+        private char charAt(final int index) {
+            return added
+                    ? buffer.charAt(start + index)
+                    : original.charAt(start + index);
+        }
+
+        private void appendTo(
+                final StringBuilder text,
+                final int from,
+                final int to) {
+            if (added) {
+                text.append(buffer, start + from, start + to);
+            } else {
+                text.append(original, start + from, start + to);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.textarea.model;
+
+/**
+ * A fine-grained change to a document: the text removed at an offset and the
+ * text inserted in its place.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class TextEdit {
+
+    private final int offset;
+    private final String removed;
+    private final String inserted;
+
+    public TextEdit(
+            final int offset,
+            final String removed,
+            final String inserted) {
+        this.offset = offset;
+        this.removed = removed;
+        this.inserted = inserted;
+    }
+
+    /**
+     * Retrieves the offset of the edit in the document before the change.
+     *
+     * @return the offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public String getRemoved() {
+        return removed;
+    }
+
+    public String getInserted() {
+        return inserted;
+    }
+
+    /**
+     * Retrieves the change in length of the document.
+     *
+     * @return inserted minus removed characters
+     */
+    public int getDelta() {
+        return inserted.length() - removed.length();
+    }
+
+    @Override
+    public String toString() {
+        return "Edit at " + offset + ": -" + removed.length() + " +"
+                + inserted.length();
+    }
+}
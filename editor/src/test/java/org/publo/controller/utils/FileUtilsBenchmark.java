@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+
+/**
+ * Compares {@link FileUtils#readFileContent(Path)} against the former
+ * {@code Files.readAllLines} based implementation for files from 1 KB to
+ * 100 MB, reporting the time taken and the memory allocated per read.
+ *
+ * Run with {@code java -Xmx2g -cp <test classpath>
+ * org.publo.controller.utils.FileUtilsBenchmark}.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class FileUtilsBenchmark {
+
+    private static final int[] SIZES = {
+        1024, 1024 * 1024, 10 * 1024 * 1024, 100 * 1024 * 1024};
+
+    private static final String LINE
+            = "Some markdown with *emphasis* and a [link](http://x.org).\r\n";
+
+    private FileUtilsBenchmark() {
+    }
+
+    /**
+     * The implementation preceding the channel based one.
+     */
+    private static String readAllLines(final Path filePath)
+            throws IOException {
+        return Files.readAllLines(filePath).stream()
+                .collect(Collectors.joining(System.lineSeparator()));
+    }
+
+    private interface Reader {
+
+        String read(Path path) throws IOException;
+    }
+
+    private static void measure(
+            final String name,
+            final Reader reader,
+            final Path path) throws IOException {
+        final int runs = Files.size(path) > 10 * 1024 * 1024 ? 5 : 20;
+        for (int i = 0; i < runs; i++) {
+            reader.read(path);
+        }
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        long allocated = allocatedBytes(threads, threadId);
+        final long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            reader.read(path);
+        }
+        final long nanos = System.nanoTime() - start;
+        allocated = allocatedBytes(threads, threadId) - allocated;
+        System.out.printf("  %-14s %10.3f ms %10.1f MB allocated%n", name,
+                nanos / 1e6 / runs, allocated / 1e6 / runs);
+    }
+
+    private static long allocatedBytes(
+            final ThreadMXBean threads,
+            final long threadId) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(threadId);
+        }
+        return 0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        for (int size : SIZES) {
+            final StringBuilder text = new StringBuilder(size);
+            while (text.length() < size) {
+                text.append(LINE);
+            }
+            final Path path = Files.createTempFile("publo-benchmark", ".md");
+            try {
+                Files.write(path, text.toString().substring(0, size)
+                        .getBytes(StandardCharsets.UTF_8));
+                System.out.printf("%,d bytes%n", size);
+                measure("readAllLines", FileUtilsBenchmark::readAllLines, path);
+                measure("readFileContent", FileUtils::readFileContent, path);
+            } finally {
+                Files.delete(path);
+            }
+        }
+    }
+}
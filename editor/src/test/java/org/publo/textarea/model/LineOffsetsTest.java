@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.textarea.model;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LineOffsetsTest {
+
+    @Test
+    public void testLineOf() throws Exception {
+        final LineOffsets lines = new LineOffsets();
+        lines.reset("one\ntwo\n\nfour");
+        assertEquals(4, lines.getLineCount());
+        assertEquals(0, lines.lineOf(0));
+        assertEquals(0, lines.lineOf(3));
+        assertEquals(1, lines.lineOf(4));
+        assertEquals(2, lines.lineOf(8));
+        assertEquals(3, lines.lineOf(9));
+        assertEquals(9, lines.getLineStart(3));
+    }
+
+    @Test
+    public void testEditsMatchTheText() throws Exception {
+        final PieceTable document = new PieceTable();
+        final LineOffsets lines = new LineOffsets();
+        final Random random = new Random(7);
+        final String[] insertions = {"a", "\n", "bc\nd", "\n\n", "efg"};
+        for (int i = 0; i < 500; i++) {
+            final int offset = random.nextInt(document.length() + 1);
+            final int removed = Math.min(random.nextInt(4),
+                    document.length() - offset);
+            lines.apply(document.replace(offset, removed,
+                    insertions[random.nextInt(insertions.length)]));
+
+            final LineOffsets expected = new LineOffsets();
+            expected.reset(document);
+            assertEquals(expected.getLineCount(), lines.getLineCount());
+            for (int line = 0; line < lines.getLineCount(); line++) {
+                assertEquals(expected.getLineStart(line),
+                        lines.getLineStart(line));
+            }
+        }
+    }
+}
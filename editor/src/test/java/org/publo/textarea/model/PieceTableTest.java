@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.textarea.model;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PieceTableTest {
+
+    @Test
+    public void testEdits() throws Exception {
+        final PieceTable document = new PieceTable("Hello world");
+        document.insert(5, ",");
+        document.replace(7, 5, "there");
+        document.insert(document.length(), "!");
+        assertEquals("Hello, there!", document.toString());
+        assertEquals("there", document.subSequence(7, 12).toString());
+        assertEquals('!', document.charAt(12));
+    }
+
+    @Test
+    public void testEditDelta() throws Exception {
+        final PieceTable document = new PieceTable("abcdef");
+        final TextEdit edit = document.replace(2, 3, "XY");
+        assertEquals(2, edit.getOffset());
+        assertEquals("cde", edit.getRemoved());
+        assertEquals("XY", edit.getInserted());
+        assertEquals(-1, edit.getDelta());
+    }
+
+    @Test
+    public void testTypingIsCoalesced() throws Exception {
+        final PieceTable document = new PieceTable("<>");
+        for (char c : "typing".toCharArray()) {
+            document.insert(document.length() - 1, String.valueOf(c));
+        }
+        assertEquals("<typing>", document.toString());
+        assertEquals(3, document.getPieceCount());
+    }
+
+    @Test
+    public void testReplacingEverythingResets() throws Exception {
+        final PieceTable document = new PieceTable("abc");
+        document.insert(1, "x");
+        document.replace(0, document.length(), "new");
+        assertEquals("new", document.toString());
+        assertEquals(1, document.getPieceCount());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() throws Exception {
+        new PieceTable("abc").delete(2, 2);
+    }
+
+    @Test
+    public void testRandomEditsMatchStringBuilder() throws Exception {
+        final Random random = new Random(42);
+        final PieceTable document = new PieceTable("The quick brown fox");
+        final StringBuilder expected = new StringBuilder(document);
+        for (int i = 0; i < 2000; i++) {
+            final int offset = random.nextInt(expected.length() + 1);
+            final int removed = Math.min(random.nextInt(4),
+                    expected.length() - offset);
+            final String inserted = random.nextBoolean() ? ""
+                    : Integer.toString(random.nextInt(100));
+            document.replace(offset, removed, inserted);
+            expected.replace(offset, offset + removed, inserted);
+            assertEquals(expected.length(), document.length());
+            if (expected.length() > 0) {
+                final int index = random.nextInt(expected.length());
+                assertEquals(expected.charAt(index), document.charAt(index));
+            }
+        }
+        assertEquals(expected.toString(), document.toString());
+    }
+}
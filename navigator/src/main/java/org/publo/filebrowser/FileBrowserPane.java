@@ -139,6 +139,38 @@ public final class FileBrowserPane extends BorderPane {
                 .addListener(listener);
     }
 
+    /**
+     * Selects the item of a path, expanding its ancestors. Paths outside the
+     * browser root are ignored.
+     *
+     * @param path to select
+     * @since 0.4
+     */
+    public final void select(final Path path) {
+        TreeItem<String> item = this.treeView.getRoot();
+        final Path rootPath = ((PathTreeItem) item).getPath();
+        if (!path.startsWith(rootPath)) {
+            return;
+        }
+        for (Path name : rootPath.relativize(path)) {
+            item.setExpanded(true);
+            final Path childPath = ((PathTreeItem) item).getPath().resolve(name);
+            TreeItem<String> match = null;
+            for (TreeItem<String> child : item.getChildren()) {
+                if (childPath.equals(((PathTreeItem) child).getPath())) {
+                    match = child;
+                    break;
+                }
+            }
+            if (match == null) {
+                return;
+            }
+            item = match;
+        }
+        this.treeView.getSelectionModel().select(item);
+        this.treeView.scrollTo(this.treeView.getRow(item));
+    }
+
     /**
      * Listeners aimed at encapsulating the {@code PathTreeItem} API to the
      * navigator package and exposing a dry {@code Path}.
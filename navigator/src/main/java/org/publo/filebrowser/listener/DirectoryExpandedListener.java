@@ -33,11 +33,12 @@ import javafx.beans.property.BooleanProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import org.publo.filebrowser.utils.PathTreeItem;
+import org.publo.filebrowser.utils.ProjectFiles;
 
 /**
  * Listener concerning the expansion of directory-representing TreeItems. On
  * expansion of such nodes it will clear the "holding" value and populate the
- * sub-tree.
+ * sub-tree. Publo's own files, such as the search index, are not listed.
  *
  * On selection of a file it is loaded in the editor.
  *
@@ -59,12 +60,15 @@ public class DirectoryExpandedListener implements ChangeListener<Boolean> {
             final Boolean newValue) {
         final BooleanProperty bb = (BooleanProperty) observable;
         final PathTreeItem expandedItem = (PathTreeItem) bb.getBean();
-        LOGGER.log(Level.INFO, "Expanded: {0}", expandedItem);
+        LOGGER.log(Level.FINE, "Expanded: {0}", expandedItem);
         final List<PathTreeItem> children = expandedItem.getChildren();
         children.clear();
         try {
             Files.list(expandedItem.getPath()).forEach((Path path) -> {
                 final String label = path.getFileName().toString();
+                if (ProjectFiles.isPubloFile(label)) {
+                    return;
+                }
                 final PathTreeItem treeItem = new PathTreeItem(label, path);
                 children.add(treeItem);
                 if (Files.isDirectory(path)) {
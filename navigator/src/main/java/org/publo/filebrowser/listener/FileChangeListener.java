@@ -0,0 +1,49 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.filebrowser.listener;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent.Kind;
+
+/**
+ * Listener concerning changes to resources watched by the
+ * {@code FileSystemWatcher}.
+ *
+ * Notifications are delivered on the watcher thread. Implementations touching
+ * JavaFX components are expected to hand over to the application thread.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+@FunctionalInterface
+public interface FileChangeListener {
+
+    /**
+     * Invoked on creation, modification or deletion of a watched resource.
+     *
+     * @param kind of the event
+     * @param path absolute path of the resource affected
+     */
+    void changed(Kind<?> kind, Path path);
+}
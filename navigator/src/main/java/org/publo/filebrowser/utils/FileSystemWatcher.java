@@ -28,6 +28,7 @@ import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchEvent.Kind;
 import java.nio.file.WatchKey;
@@ -36,9 +37,11 @@ import java.nio.file.Watchable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.application.Platform;
+import org.publo.filebrowser.listener.FileChangeListener;
 
 /**
  * Thread watching the registered paths.
@@ -51,13 +54,21 @@ public final class FileSystemWatcher extends Thread {
     private static final Logger LOGGER
             = Logger.getLogger(FileSystemWatcher.class.getName());
 
-    private static final FileSystemWatcher WATCHER = new FileSystemWatcher();
+    private static final Map<Watchable, PathTreeItem> CACHE = new HashMap<>();
 
-    static {
-        WATCHER.start();
-    }
+    /**
+     * The listeners notified of every event received.
+     */
+    private final List<FileChangeListener> listeners
+            = new CopyOnWriteArrayList<>();
 
-    private static final Map<Watchable, PathTreeItem> CACHE = new HashMap<>();
+    /**
+     * The keys of the registered directories and how many times each was
+     * registered, so that a directory stays watched until all its users
+     * unregistered it.
+     */
+    private final Map<Path, WatchKey> keys = new HashMap<>();
+    private final Map<Path, Integer> registrations = new HashMap<>();
 
     private WatchService watchService;
 
@@ -77,8 +88,9 @@ public final class FileSystemWatcher extends Thread {
     /**
      * Register a {@code PathTreeItem} on the watch service for a set of events.
      *
-     * As of 0.2 the only supported events are {@code ENTRY_CREATE} and
-     * {@code ENTRY_DELETE}. All other event kinds are silently ignored.
+     * As of 0.2 the only events reflected on the tree are {@code ENTRY_CREATE}
+     * and {@code ENTRY_DELETE}. All other event kinds are only forwarded to the
+     * {@link FileChangeListener}s.
      *
      * The {@code register} method caches a reference on registering a
      * {@code PathTreeItem}.
@@ -87,31 +99,123 @@ public final class FileSystemWatcher extends Thread {
      * @param events to register for
      */
     public void register(final PathTreeItem pathTreeItem, final Kind<?>... events) {
-        LOGGER.log(Level.INFO, "Registering {0}", pathTreeItem);
+        LOGGER.log(Level.FINE, "Registering {0}", pathTreeItem);
         try {
             final Path path = pathTreeItem.getPath();
             CACHE.put(path, pathTreeItem);
-            path.register(this.watchService, events);
+            track(path, path.register(this.watchService, events));
         } catch (IOException ex) {
             LOGGER.log(Level.SEVERE, null, ex);
         }
     }
 
+    /**
+     * Register a directory {@code Path} on the watch service for a set of
+     * events. Unlike {@link #register(PathTreeItem, Kind...)} no tree item is
+     * maintained, events are only forwarded to the {@link FileChangeListener}s.
+     * Each registration is to be released through {@link #unregister(Path)}
+     * once the events are no longer of interest.
+     *
+     * @param directory to register
+     * @param events to register for
+     */
+    public void register(final Path directory, final Kind<?>... events) {
+        LOGGER.log(Level.FINE, "Registering {0}", directory);
+        try {
+            track(directory, directory.register(this.watchService, events));
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Releases a registration of a directory. The directory is no longer
+     * watched once all its registrations are released.
+     *
+     * @param directory to unregister
+     */
+    public synchronized void unregister(final Path directory) {
+        final Path key = directory.toAbsolutePath().normalize();
+        final Integer count = registrations.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            registrations.put(key, count - 1);
+            return;
+        }
+        LOGGER.log(Level.FINE, "Unregistering {0}", directory);
+        registrations.remove(key);
+        keys.remove(key).cancel();
+    }
+
+    /**
+     * Counts a registration of a directory. Registering a directory again
+     * returns its existing key unless the directory was deleted meanwhile,
+     * in which case the count starts over.
+     *
+     * @param directory registered
+     * @param watchKey of the registration
+     */
+    private synchronized void track(
+            final Path directory,
+            final WatchKey watchKey) {
+        final Path key = directory.toAbsolutePath().normalize();
+        final WatchKey previous = keys.put(key, watchKey);
+        final Integer count = registrations.get(key);
+        registrations.put(key, count == null || previous != watchKey
+                ? 1 : count + 1);
+    }
+
+    /**
+     * Adds a {@link FileChangeListener} notified of all the watched events.
+     *
+     * @param listener to add
+     */
+    public void addFileChangeListener(final FileChangeListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Removes a previously added {@link FileChangeListener}.
+     *
+     * @param listener to remove
+     */
+    public void removeFileChangeListener(final FileChangeListener listener) {
+        this.listeners.remove(listener);
+    }
+
     @Override
     public void run() {
         try {
             WatchKey key = this.watchService.take();
             while (key != null) {
                 final Watchable path = key.watchable();
-                LOGGER.log(Level.INFO, "Watchable item: {0}", path);
+                LOGGER.log(Level.FINE, "Watchable item: {0}", path);
                 final PathTreeItem parentItem = CACHE.get(path);
                 for (WatchEvent event : key.pollEvents()) {
+                    final Kind kind = event.kind();
+                    if (OVERFLOW.equals(kind)) {
+                        continue;
+                    }
                     final Path relPath = (Path) event.context();
-                    LOGGER.log(Level.INFO, "Resource {0}", relPath);
                     final String label = relPath.getFileName().toString();
-                    final Kind kind = event.kind();
-                    LOGGER.log(Level.INFO, "Event {0} ", kind.name());
-                    final Path absPath = parentItem.getPath().resolve(relPath);
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.log(Level.FINE, "Event {0} on {1}",
+                                new Object[]{kind.name(), relPath});
+                    }
+                    final Path absPath = ((Path) path).resolve(relPath);
+                    for (FileChangeListener listener : listeners) {
+                        try {
+                            listener.changed(kind, absPath);
+                        } catch (RuntimeException ex) {
+                            LOGGER.log(Level.SEVERE, "Listener failure.", ex);
+                        }
+                    }
+                    if (parentItem == null
+                            || ProjectFiles.isPubloFile(label)) {
+                        continue;
+                    }
                     final List<PathTreeItem> children = parentItem.getChildren();
                     if (ENTRY_CREATE.equals(kind)) {
                         final PathTreeItem newItem
@@ -144,7 +248,21 @@ public final class FileSystemWatcher extends Thread {
      *
      * @return the application wide instance
      */
-    static FileSystemWatcher getInstance() {
-        return WATCHER;
+    public static FileSystemWatcher getInstance() {
+        return Holder.WATCHER;
+    }
+
+    /**
+     * Holds the watcher so that its thread is only started on first use
+     * rather than on loading the class.
+     */
+    private static final class Holder {
+
+        private static final FileSystemWatcher WATCHER
+                = new FileSystemWatcher();
+
+        static {
+            WATCHER.start();
+        }
     }
 }
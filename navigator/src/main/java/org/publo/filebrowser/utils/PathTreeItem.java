@@ -34,19 +34,28 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javafx.application.Platform;
 import javafx.scene.control.TreeItem;
 import org.apache.tika.detect.DefaultDetector;
 import org.apache.tika.detect.Detector;
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.mime.MediaType;
 import org.publo.filebrowser.FileBrowserPane;
 
 /**
  * Defines a TreeItem representing a path in the file-system.
  *
+ * File icons reflect the media type detected by Tika. Detection runs in the
+ * background with a shared detector, files showing a plain icon meanwhile, so
+ * that listing a directory never waits on reading its files.
+ *
  * @author Antonio Cucchiara
  * @since 0.2
  */
@@ -58,6 +67,8 @@ public class PathTreeItem extends TreeItem {
     private static final Logger LOGGER
             = Logger.getLogger(PathTreeItem.class.getName());
 
+    private static final String DEFAULT_ICON = "/media/page_white.png";
+
     private static final PathTreeItem DEFAULT_TREE_ITEM
             = new PathTreeItem("...", Paths.get(FileBrowserPane.BROWSER_ROOT));
 
@@ -77,44 +88,68 @@ public class PathTreeItem extends TreeItem {
                     = new DirectoryExpandedListener();
             expandedProperty().addListener(listener);
             FileSystemWatcher.getInstance()
-                    .register(this, ENTRY_CREATE, ENTRY_DELETE);
+                    .register(this, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
         } else {
-            final File f = path.toFile();
-            try (InputStream inputStream
-                    = new BufferedInputStream(new FileInputStream(f))) {
-                final Metadata metadata = new Metadata();
-                metadata.set(Metadata.RESOURCE_NAME_KEY, f.getName());
-                final Detector detector = new DefaultDetector();
-                final MediaType mime = detector.detect(inputStream, metadata);
-                switch (mime.toString()) {
-                    case "text/x-web-markdown":
-                        setGraphic(ResourceFactory.buildImageView("/media/markdown.png"));
-                        break;
-                    case "text/plain":
-                        setGraphic(ResourceFactory.buildImageView("/media/page_white.png"));
-                        break;
-                    case "text/html":
-                        setGraphic(ResourceFactory.buildImageView("/media/xhtml.png"));
-                        break;
-                    case "text/css":
-                        setGraphic(ResourceFactory.buildImageView("/media/css.png"));
-                        break;
-                    case "image/png":
-                    case "image/gif":
-                    case "image/jpeg":
-                        setGraphic(ResourceFactory.buildImageView("/media/image.png"));
-                        break;
-                    case "text/x-java-properties":
-                        setGraphic(ResourceFactory.buildImageView("/media/page_white_wrench.png"));
-                        break;
-                    default:
-                        LOGGER.log(Level.INFO, "Default icon for {0}", mime);
-                        setGraphic(ResourceFactory.buildImageView("/media/page_white.png"));
-                        break;
+            setGraphic(ResourceFactory.buildImageView(DEFAULT_ICON));
+            Detection.EXECUTOR.execute(() -> {
+                final String icon = iconOf(detect(path.toFile()));
+                if (!DEFAULT_ICON.equals(icon)) {
+                    Platform.runLater(() -> setGraphic(
+                            ResourceFactory.buildImageView(icon)));
                 }
-            } catch (final IOException ex) {
-                LOGGER.log(Level.SEVERE, "Could not detect mediatype", ex);
-            }
+            });
+        }
+    }
+
+    /**
+     * Loads the media type detector in the background, ahead of the first
+     * file listed.
+     */
+    public static void warmUp() {
+        Detection.EXECUTOR.execute(() -> LOGGER.log(Level.FINE,
+                "Detector ready: {0}", Detection.DETECTOR));
+    }
+
+    /**
+     * Detects the media type of a file.
+     *
+     * @param f the file
+     * @return the media type or null if the file could not be read
+     */
+    private static MediaType detect(final File f) {
+        try (InputStream inputStream
+                = new BufferedInputStream(new FileInputStream(f))) {
+            final Metadata metadata = new Metadata();
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, f.getName());
+            return Detection.DETECTOR.detect(inputStream, metadata);
+        } catch (final IOException ex) {
+            LOGGER.log(Level.SEVERE, "Could not detect mediatype", ex);
+            return null;
+        }
+    }
+
+    private static String iconOf(final MediaType mime) {
+        if (mime == null) {
+            return DEFAULT_ICON;
+        }
+        switch (mime.toString()) {
+            case "text/x-web-markdown":
+                return "/media/markdown.png";
+            case "text/html":
+                return "/media/xhtml.png";
+            case "text/css":
+                return "/media/css.png";
+            case "image/png":
+            case "image/gif":
+            case "image/jpeg":
+                return "/media/image.png";
+            case "text/x-java-properties":
+                return "/media/page_white_wrench.png";
+            case "text/plain":
+                return DEFAULT_ICON;
+            default:
+                LOGGER.log(Level.FINE, "Default icon for {0}", mime);
+                return DEFAULT_ICON;
         }
     }
 
@@ -147,4 +182,21 @@ public class PathTreeItem extends TreeItem {
                 && !Objects.equals(super.getValue(), other.getValue()));
     }
 
+    /**
+     * Holds the detector, costly to create, and the thread running the
+     * detections. Both are only created on first use.
+     */
+    private static final class Detection {
+
+        private static final Detector DETECTOR = new DefaultDetector();
+
+        private static final ExecutorService EXECUTOR
+                = Executors.newSingleThreadExecutor(runnable -> {
+                    final Thread thread
+                            = new Thread(runnable, "publo-detect");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
 }
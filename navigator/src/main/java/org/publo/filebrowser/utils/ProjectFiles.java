@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.filebrowser.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The files kept in the projects for Publo's own use: the search index, the
+ * template dependencies, the export reports and the auto save copies of the
+ * editor, along with the temporary files they are written to. They are
+ * neither listed in the browser nor exported.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class ProjectFiles {
+
+    private static final List<String> FILE_NAMES = Arrays.asList(
+            ".template-dependencies",
+            ".build-report.json",
+            ".batch-export-report",
+            ".link-report");
+
+    private static final String SEARCH_INDEX_PREFIX = ".search-index";
+    private static final String AUTOSAVE_SUFFIX = ".autosave";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private ProjectFiles() {
+    }
+
+    /**
+     * Whether a file is one of Publo's own.
+     *
+     * @param fileName of the file
+     * @return true if written by Publo for its own use
+     */
+    public static boolean isPubloFile(final String fileName) {
+        final String name = fileName.endsWith(TEMP_SUFFIX)
+                ? fileName.substring(0,
+                        fileName.length() - TEMP_SUFFIX.length())
+                : fileName;
+        return FILE_NAMES.contains(name)
+                || name.startsWith(SEARCH_INDEX_PREFIX)
+                || name.startsWith(".") && name.endsWith(AUTOSAVE_SUFFIX);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the YAML front matter of a page and stops there.
+ *
+ * The page is read a line at a time up to the closing delimiter, so that the
+ * cost is proportional to the size of the front matter rather than of the
+ * page. The rules are the ones of the commonmark
+ * {@code YamlFrontMatterExtension}, the values read being the same as the
+ * {@code YamlFrontMatterVisitor} ones after a full parse.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class FrontMatterScanner {
+
+    private static final Pattern BEGIN = Pattern.compile("^-{3}(\\s.*)?");
+    private static final Pattern END = Pattern.compile("^(-{3}|\\.{3})(\\s.*)?");
+    private static final Pattern METADATA
+            = Pattern.compile("^[ ]{0,3}([A-Za-z0-9_-]+):\\s*(.*)");
+    private static final Pattern LIST_ITEM = Pattern.compile("^[ ]+-\\s*(.*)");
+
+    private static final String LITERAL_MARKER = "|";
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /**
+     * The buffer size of the readers, small as most front matters are.
+     */
+    private static final int BUFFER_SIZE = 1024;
+
+    private FrontMatterScanner() {
+    }
+
+    /**
+     * Reads the front matter of a UTF-8 page file.
+     *
+     * @param file of the page
+     * @return the values by key, empty if there is no front matter
+     * @throws IOException on failure to read the file
+     */
+    public static Map<String, List<String>> scan(final Path file)
+            throws IOException {
+        try (Reader reader = new InputStreamReader(Files.newInputStream(file),
+                StandardCharsets.UTF_8)) {
+            return scan(reader);
+        }
+    }
+
+    /**
+     * Reads the front matter of a page content.
+     *
+     * @param markdown of the page
+     * @return the values by key, empty if there is no front matter
+     */
+    public static Map<String, List<String>> scan(final String markdown) {
+        try {
+            return scan(new StringReader(markdown));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Reads the front matter from a reader, consuming no further than the
+     * closing delimiter line and the reader buffer. The reader is not closed.
+     *
+     * @param source of the page
+     * @return the values by key, empty if there is no front matter
+     * @throws IOException on failure to read
+     */
+    public static Map<String, List<String>> scan(final Reader source)
+            throws IOException {
+        final BufferedReader reader = new BufferedReader(source, BUFFER_SIZE);
+        final Map<String, List<String>> data = new LinkedHashMap<>();
+        String line = reader.readLine();
+        if (line != null && !line.isEmpty()
+                && line.charAt(0) == BYTE_ORDER_MARK) {
+            line = line.substring(1);
+        }
+        while (line != null && line.trim().isEmpty()) {
+            line = reader.readLine();
+        }
+        if (line == null || !BEGIN.matcher(line).matches()) {
+            return data;
+        }
+        String key = null;
+        List<String> values = new ArrayList<>();
+        boolean isLiteral = false;
+        while ((line = reader.readLine()) != null) {
+            if (END.matcher(line).matches()) {
+                if (key != null) {
+                    data.put(key, values);
+                }
+                return data;
+            }
+            final Matcher metadata = METADATA.matcher(line);
+            if (metadata.matches()) {
+                if (key != null) {
+                    data.put(key, values);
+                }
+                key = metadata.group(1);
+                values = new ArrayList<>();
+                isLiteral = LITERAL_MARKER.equals(metadata.group(2));
+                if (!isLiteral && !metadata.group(2).isEmpty()) {
+                    values.add(metadata.group(2));
+                }
+            } else if (isLiteral) {
+                if (values.size() == 1) {
+                    values.set(0, values.get(0) + "\n" + line.trim());
+                } else {
+                    values.add(line.trim());
+                }
+            } else {
+                final Matcher listItem = LIST_ITEM.matcher(line);
+                if (listItem.matches()) {
+                    values.add(listItem.group(1));
+                }
+            }
+        }
+        return data;
+    }
+}
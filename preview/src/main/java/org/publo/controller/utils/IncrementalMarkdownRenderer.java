@@ -0,0 +1,512 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.commonmark.ext.front.matter.YamlFrontMatterExtension;
+import org.commonmark.ext.front.matter.YamlFrontMatterVisitor;
+import org.commonmark.node.Node;
+import org.commonmark.parser.Parser;
+import org.commonmark.renderer.html.HtmlRenderer;
+
+/**
+ * Block-level incremental markdown renderer.
+ *
+ * The source is split in top-level blocks: runs of lines separated by blank
+ * lines, keeping together fenced code, the HTML blocks that may contain blank
+ * lines and the items of loose lists. On every render the region of the
+ * source that differs from the previous one is located and only the blocks
+ * overlapping it are split and parsed again. The other blocks keep their
+ * rendered markup which is stitched back together.
+ *
+ * Link reference definitions are collected across the document and made
+ * available to every block referring to them.
+ *
+ * On request, the first element of each block is tagged with the line of the
+ * source it starts at, in a {@value #SOURCE_LINE_ATTRIBUTE} attribute, so
+ * that a preview can be scrolled in step with the source.
+ *
+ * An instance holds the state of one document at a time and is meant to be
+ * reused across edits of that document.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class IncrementalMarkdownRenderer {
+
+    /**
+     * The attribute holding the source line, zero based, of a block element.
+     */
+    public static final String SOURCE_LINE_ATTRIBUTE = "data-source-line";
+
+    private static final Pattern FENCE
+            = Pattern.compile("^ {0,3}(`{3,}|~{3,}).*", Pattern.DOTALL);
+
+    private static final Pattern LIST_ITEM
+            = Pattern.compile("^ {0,3}([-+*]|\\d{1,9}[.)])(\\s.*)?",
+                    Pattern.DOTALL);
+
+    private static final Pattern REFERENCE_DEFINITION
+            = Pattern.compile("^ {0,3}\\[[^\\]]+\\]:.*");
+
+    private static final String[][] HTML_BLOCKS = {
+        {"<!--", "-->"},
+        {"<pre", "</pre>"},
+        {"<script", "</script>"},
+        {"<style", "</style>"}
+    };
+
+    private static final String FRONT_MATTER_DELIMITER = "---";
+
+    private final Parser parser = Parser.builder().build();
+
+    private final Parser frontMatterParser = Parser.builder()
+            .extensions(Arrays.asList(YamlFrontMatterExtension.create()))
+            .build();
+
+    private final HtmlRenderer renderer = HtmlRenderer.builder().build();
+
+    /**
+     * The blocks of the last source rendered. Their sources concatenated
+     * give back the whole document.
+     */
+    private List<Block> blocks = new ArrayList<>();
+
+    private String source = "";
+
+    /**
+     * The link reference definitions of the last source rendered.
+     */
+    private String references = "";
+
+    private Map<String, List<String>> frontMatter = Collections.emptyMap();
+
+    /**
+     * The number of blocks parsed by the last render.
+     */
+    private int blocksParsed;
+
+    /**
+     * Renders the markdown to markup re-parsing only the blocks affected by
+     * the changes since the previous invocation.
+     *
+     * @param markdown to render
+     * @return the markup
+     */
+    public String render(final String markdown) {
+        return render(markdown, false);
+    }
+
+    /**
+     * Renders the markdown to markup re-parsing only the blocks affected by
+     * the changes since the previous invocation, optionally tagging the
+     * blocks with their source line.
+     *
+     * @param markdown to render
+     * @param sourceLines whether to tag the blocks with their source line
+     * @return the markup
+     */
+    public synchronized String render(
+            final String markdown,
+            final boolean sourceLines) {
+        update(markdown);
+        final StringBuilder markup = new StringBuilder(markdown.length());
+        int line = 0;
+        for (Block block : blocks) {
+            if (sourceLines) {
+                appendWithSourceLine(markup, block.html, line);
+            } else {
+                markup.append(block.html);
+            }
+            line += block.lineCount;
+        }
+        return markup.toString();
+    }
+
+    /**
+     * Appends the markup of a block adding the source line attribute to its
+     * first element. Blocks not starting with an element, such as comments,
+     * are appended as they are.
+     *
+     * @param markup to append to
+     * @param html of the block
+     * @param line of the source the block starts at
+     */
+    private static void appendWithSourceLine(
+            final StringBuilder markup,
+            final String html,
+            final int line) {
+        if (html.length() < 2 || html.charAt(0) != '<'
+                || !Character.isLetter(html.charAt(1))) {
+            markup.append(html);
+            return;
+        }
+        int nameEnd = 2;
+        while (nameEnd < html.length()
+                && Character.isLetterOrDigit(html.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        markup.append(html, 0, nameEnd)
+                .append(' ').append(SOURCE_LINE_ATTRIBUTE).append("=\"")
+                .append(line).append('"')
+                .append(html, nameEnd, html.length());
+    }
+
+    /**
+     * Retrieves the front matter of the last source rendered.
+     *
+     * @return the front matter data
+     */
+    public synchronized Map<String, List<String>> getFrontMatter() {
+        return frontMatter;
+    }
+
+    /**
+     * Retrieves the block sources of the last document rendered.
+     *
+     * @return the blocks
+     */
+    synchronized List<String> getBlocks() {
+        final List<String> blockSources = new ArrayList<>(blocks.size());
+        for (Block block : blocks) {
+            blockSources.add(block.source);
+        }
+        return blockSources;
+    }
+
+    /**
+     * Retrieves the number of blocks parsed by the last render.
+     *
+     * @return the blocks parsed
+     */
+    public synchronized int getBlocksParsed() {
+        return blocksParsed;
+    }
+
+    /**
+     * Replaces the blocks overlapping the changed region of the source.
+     *
+     * @param markdown the new source
+     */
+    private void update(final String markdown) {
+        blocksParsed = 0;
+        final int oldLength = source.length();
+        final int newLength = markdown.length();
+        final int limit = Math.min(oldLength, newLength);
+        int prefix = 0;
+        while (prefix < limit
+                && source.charAt(prefix) == markdown.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix == oldLength && prefix == newLength && !blocks.isEmpty()) {
+            return;
+        }
+        int suffix = 0;
+        while (suffix < limit - prefix && source.charAt(oldLength - 1 - suffix)
+                == markdown.charAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+        /*
+         * The block preceding the one edited is split again too as the edit
+         * may join it, e.g. when a list item is added below a list.
+         */
+        int first = 0;
+        int start = 0;
+        int blockStart = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            final int blockEnd = blockStart + blocks.get(i).source.length();
+            if (blockEnd > prefix || i == blocks.size() - 1) {
+                break;
+            }
+            first = i;
+            start = blockStart;
+            blockStart = blockEnd;
+        }
+        /*
+         * Old blocks starting within the unchanged suffix are reused once the
+         * new split lands on their boundary. The markup of the old blocks in
+         * the changed region is kept at hand for blocks merely moved.
+         */
+        final int[] oldStarts = new int[blocks.size()];
+        final Map<String, String> replaced = new HashMap<>();
+        blockStart = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            final Block block = blocks.get(i);
+            oldStarts[i] = blockStart;
+            if (i >= first && blockStart < oldLength - suffix) {
+                replaced.put(block.source, block.html);
+            }
+            blockStart += block.source.length();
+        }
+        final List<Block> updated = new ArrayList<>(blocks.size() + 4);
+        updated.addAll(blocks.subList(0, Math.min(first, blocks.size())));
+        int offset = start;
+        int resumeIndex = -1;
+        while (offset < newLength) {
+            final int end = scanBlock(markdown, offset);
+            final String blockSource = markdown.substring(offset, end);
+            updated.add(new Block(blockSource, replaced.get(blockSource),
+                    readDefinitions(blockSource)));
+            offset = end;
+            final int oldOffset = offset - newLength + oldLength;
+            if (oldOffset > start && oldOffset >= oldLength - suffix) {
+                final int index = Arrays.binarySearch(oldStarts, oldOffset);
+                if (index >= 0) {
+                    resumeIndex = index;
+                    break;
+                }
+            }
+        }
+        if (resumeIndex != -1) {
+            updated.addAll(blocks.subList(resumeIndex, blocks.size()));
+        }
+        blocks = updated;
+        source = markdown;
+        final StringBuilder definitions = new StringBuilder();
+        for (Block block : blocks) {
+            definitions.append(block.definitions);
+        }
+        final boolean referencesChanged
+                = !references.contentEquals(definitions);
+        references = definitions.toString();
+        for (int i = 0; i < blocks.size(); i++) {
+            final Block block = blocks.get(i);
+            if (block.html == null || referencesChanged
+                    && block.source.indexOf('[') != -1) {
+                block.html = renderBlock(block.source, i == 0);
+                blocksParsed++;
+            }
+        }
+        if (blocks.isEmpty() || !isFrontMatter(blocks.get(0).source)) {
+            frontMatter = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Parses and renders a single block.
+     *
+     * @param blockSource to render
+     * @param isFirst whether the block may hold the front matter
+     * @return the block markup
+     */
+    private String renderBlock(final String blockSource, final boolean isFirst) {
+        if (isFirst && isFrontMatter(blockSource)) {
+            final YamlFrontMatterVisitor visitor = new YamlFrontMatterVisitor();
+            frontMatterParser.parse(blockSource).accept(visitor);
+            frontMatter = visitor.getData();
+            return "";
+        }
+        final Node document = references.isEmpty()
+                || blockSource.indexOf('[') == -1
+                ? parser.parse(blockSource)
+                : parser.parse(references + "\n" + blockSource);
+        return renderer.render(document);
+    }
+
+    /**
+     * Extracts the link reference definitions leading the block. Blocks are
+     * parsed preceded by the document definitions so that the first
+     * definition of a label wins as in a whole document parse. Lines not
+     * parsing as definitions only are not shared.
+     *
+     * @param blockSource to extract from
+     * @return the definition lines
+     */
+    private String readDefinitions(final String blockSource) {
+        int lineStart = 0;
+        while (lineStart < blockSource.length()) {
+            int lineEnd = lineEnd(blockSource, lineStart);
+            final String line = blockSource.substring(lineStart, lineEnd);
+            if (!REFERENCE_DEFINITION.matcher(line).matches()) {
+                break;
+            }
+            lineStart = nextLine(blockSource, lineEnd);
+            final boolean hasDestination
+                    = !line.substring(line.indexOf("]:") + 2).trim().isEmpty();
+            if (!hasDestination && lineStart < blockSource.length()) {
+                lineEnd = lineEnd(blockSource, lineStart);
+                lineStart = nextLine(blockSource, lineEnd);
+            }
+            if (lineStart < blockSource.length()) {
+                lineEnd = lineEnd(blockSource, lineStart);
+                final String title
+                        = blockSource.substring(lineStart, lineEnd).trim();
+                if (title.startsWith("\"") || title.startsWith("'")
+                        || title.startsWith("(")) {
+                    lineStart = nextLine(blockSource, lineEnd);
+                }
+            }
+        }
+        if (lineStart == 0) {
+            return "";
+        }
+        final String definitions = blockSource.substring(0, lineStart)
+                + (blockSource.charAt(lineStart - 1) == '\n' ? "" : "\n");
+        return renderer.render(parser.parse(definitions)).isEmpty()
+                ? definitions : "";
+    }
+
+    private static boolean isFrontMatter(final String blockSource) {
+        return blockSource.startsWith(FRONT_MATTER_DELIMITER + "\n")
+                || blockSource.startsWith(FRONT_MATTER_DELIMITER + "\r\n");
+    }
+
+    /**
+     * Finds the end of the block starting at the offset. The block includes
+     * its trailing blank lines.
+     *
+     * @param text the source
+     * @param start offset of the block
+     * @return the offset following the block
+     */
+    static int scanBlock(final String text, final int start) {
+        final int length = text.length();
+        int lineStart = start;
+        int lineEnd = lineEnd(text, lineStart);
+        final String firstLine = text.substring(lineStart, lineEnd);
+        if (start == 0 && firstLine.trim().equals(FRONT_MATTER_DELIMITER)) {
+            lineStart = nextLine(text, lineEnd);
+            while (lineStart < length) {
+                lineEnd = lineEnd(text, lineStart);
+                final String line = text.substring(lineStart, lineEnd).trim();
+                lineStart = nextLine(text, lineEnd);
+                if (line.equals(FRONT_MATTER_DELIMITER) || line.equals("...")) {
+                    break;
+                }
+            }
+            return skipBlankLines(text, lineStart);
+        }
+        boolean isList = false;
+        String closing = null;
+        char fenceChar = 0;
+        int fenceLength = 0;
+        while (lineStart < length) {
+            lineEnd = lineEnd(text, lineStart);
+            final String line = text.substring(lineStart, lineEnd);
+            if (closing != null) {
+                if (line.contains(closing)) {
+                    closing = null;
+                }
+            } else if (fenceLength > 0) {
+                final String trimmed = line.trim();
+                if (trimmed.length() >= fenceLength
+                        && trimmed.charAt(0) == fenceChar
+                        && trimmed.replace(String.valueOf(fenceChar), "")
+                                .isEmpty()) {
+                    fenceLength = 0;
+                }
+            } else if (FENCE.matcher(line).matches()) {
+                final String trimmed = line.trim();
+                fenceChar = trimmed.charAt(0);
+                fenceLength = 0;
+                while (fenceLength < trimmed.length()
+                        && trimmed.charAt(fenceLength) == fenceChar) {
+                    fenceLength++;
+                }
+            } else if (isBlank(line)) {
+                final int next = skipBlankLines(text, lineStart);
+                if (next >= length) {
+                    return length;
+                }
+                final char firstChar = text.charAt(next);
+                final String nextLine = text.substring(next,
+                        lineEnd(text, next));
+                if (firstChar != ' ' && firstChar != '\t' && !(isList
+                        && LIST_ITEM.matcher(nextLine).matches())) {
+                    return next;
+                }
+                lineStart = next;
+                continue;
+            } else {
+                isList |= LIST_ITEM.matcher(line).matches();
+                final String trimmed = line.trim();
+                for (String[] htmlBlock : HTML_BLOCKS) {
+                    if (trimmed.startsWith(htmlBlock[0])
+                            && !trimmed.contains(htmlBlock[1])) {
+                        closing = htmlBlock[1];
+                    }
+                }
+            }
+            lineStart = nextLine(text, lineEnd);
+        }
+        return length;
+    }
+
+    private static int lineEnd(final String text, final int lineStart) {
+        final int end = text.indexOf('\n', lineStart);
+        return end == -1 ? text.length() : end;
+    }
+
+    private static int nextLine(final String text, final int lineEnd) {
+        return Math.min(lineEnd + 1, text.length());
+    }
+
+    private static int skipBlankLines(final String text, final int offset) {
+        int lineStart = offset;
+        while (lineStart < text.length()) {
+            final int lineEnd = lineEnd(text, lineStart);
+            if (!isBlank(text.substring(lineStart, lineEnd))) {
+                break;
+            }
+            lineStart = nextLine(text, lineEnd);
+        }
+        return lineStart;
+    }
+
+    private static boolean isBlank(final String line) {
+        return line.trim().isEmpty();
+    }
+
+    /**
+     * A top-level block and its markup.
+     */
+    private static final class Block {
+
+        private final String source;
+        private final String definitions;
+        private final int lineCount;
+        private String html;
+
+        private Block(
+                final String source,
+                final String html,
+                final String definitions) {
+            this.source = source;
+            this.definitions = definitions;
+            this.html = html;
+            int newLines = 0;
+            for (int i = source.indexOf('\n'); i != -1;
+                    i = source.indexOf('\n', i + 1)) {
+                newLines++;
+            }
+            this.lineCount = newLines;
+        }
+    }
+}
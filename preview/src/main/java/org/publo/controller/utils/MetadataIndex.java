@@ -0,0 +1,345 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Index of the front matter of all the pages of a project.
+ *
+ * Only the front matter of the pages is read, through the
+ * {@link FrontMatterScanner}, the bodies are never rendered. The index is
+ * exposed to the templates as the {@code pages} {@link PageList} so that
+ * listing pages need not parse the whole project.
+ *
+ * The index is refreshed on demand once invalidated: pages whose
+ * modification time changed are parsed again, in parallel. Changes to single
+ * pages are applied to their entries only, without listing the project
+ * again. Changes to other resources, such as templates, reports and the
+ * autosave copies of the editor, are ignored. Every change to the metadata
+ * increments the {@link #getVersion() version}, part of the rendered pages
+ * cache key. Edits to the page bodies only leave it as is.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class MetadataIndex {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(MetadataIndex.class.getName());
+
+    private static final String MARKDOWN_EXT = ".md";
+    private static final String TARGET_DIR_NAME = "target";
+
+    /**
+     * The indexes by project root.
+     */
+    private static final Map<Path, MetadataIndex> INDEXES
+            = new ConcurrentHashMap<>();
+
+    private final Path projectPath;
+
+    /**
+     * The pages metadata by source path.
+     */
+    private final Map<String, PageMetadata> entries = new HashMap<>();
+
+    private PageList pages = PageList.EMPTY;
+    private long version;
+    private volatile boolean stale = true;
+
+    /**
+     * The pages changed since the last refresh, by source path.
+     */
+    private final Set<String> changedPages = ConcurrentHashMap.newKeySet();
+
+    private MetadataIndex(final Path projectPath) {
+        this.projectPath = projectPath;
+    }
+
+    /**
+     * Retrieves the index of the project a page belongs to.
+     *
+     * @param page path of a project page
+     * @return the project index
+     */
+    public static MetadataIndex of(final Path page) {
+        return INDEXES.computeIfAbsent(projectRootOf(page), MetadataIndex::new);
+    }
+
+    /**
+     * Forgets the index of the project a page belongs to.
+     *
+     * @param page path of a project page
+     */
+    static void discard(final Path page) {
+        INDEXES.remove(projectRootOf(page));
+    }
+
+    /**
+     * Marks the entry of a page changed for refresh. Directories created or
+     * deleted mark the whole index of the project for refresh, other
+     * resources are ignored.
+     *
+     * @param path of the resource changed
+     */
+    public static void invalidate(final Path path) {
+        INDEXES.forEach((root, index) -> {
+            if (path.startsWith(root) && !path.equals(root)) {
+                index.invalidate(path, root.relativize(path));
+            }
+        });
+    }
+
+    private void invalidate(final Path path, final Path relativePath) {
+        for (Path name : relativePath) {
+            if (isSkipped(name.toString())) {
+                return;
+            }
+        }
+        final String name = path.getFileName().toString();
+        if (name.endsWith(MARKDOWN_EXT)) {
+            changedPages.add(relativePath.toString()
+                    .replace(File.separatorChar, '/'));
+        } else if (Files.isDirectory(path)
+                || (!Files.exists(path) && name.indexOf('.') < 0)) {
+            stale = true;
+        }
+    }
+
+    /**
+     * Whether a file or directory holds no pages.
+     *
+     * @param name of the file or directory
+     * @return true if not to be indexed
+     */
+    private static boolean isSkipped(final String name) {
+        return TARGET_DIR_NAME.equals(name)
+                || TemplateRenderer.TEMPLATES_DIR_NAME.equals(name)
+                || name.startsWith(".");
+    }
+
+    /**
+     * Retrieves the root of the project a page belongs to: the directory
+     * within the {@value TemplateRenderer#PROJ_DIR_NAME} directory. Pages
+     * outside of it are their own project.
+     *
+     * @param page path of the page
+     * @return the project root
+     */
+    static Path projectRootOf(final Path page) {
+        for (Path path = page; path.getParent() != null;
+                path = path.getParent()) {
+            final Path parentName = path.getParent().getFileName();
+            if (parentName != null && TemplateRenderer.PROJ_DIR_NAME
+                    .equals(parentName.toString())) {
+                return path;
+            }
+        }
+        return page.getParent();
+    }
+
+    /**
+     * Retrieves the pages, refreshing the index if invalidated.
+     *
+     * @return the pages sorted by path
+     */
+    public synchronized PageList getPages() {
+        refreshIfInvalidated();
+        return pages;
+    }
+
+    /**
+     * Retrieves the index version, refreshing the index if invalidated.
+     *
+     * @return a number incremented on every change
+     */
+    public synchronized long getVersion() {
+        refreshIfInvalidated();
+        return version;
+    }
+
+    private void refreshIfInvalidated() {
+        if (stale) {
+            refresh();
+        } else if (!changedPages.isEmpty()) {
+            refreshChangedPages();
+        }
+    }
+
+    /**
+     * Brings the index up to date: new and modified pages are parsed in
+     * parallel, deleted ones dropped.
+     */
+    public synchronized void refresh() {
+        stale = false;
+        changedPages.clear();
+        final Map<String, Long> sources = listSources();
+        boolean changed = entries.keySet().retainAll(sources.keySet());
+        final List<PageMetadata> parsed = sources.entrySet().stream()
+                .filter(source -> {
+                    final PageMetadata entry = entries.get(source.getKey());
+                    return entry == null
+                            || entry.getLastModified() != source.getValue();
+                })
+                .collect(Collectors.toList())
+                .parallelStream()
+                .map(source -> parse(source.getKey(), source.getValue()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        update(parsed, changed);
+    }
+
+    /**
+     * Brings the entries of the pages changed up to date, reading their
+     * front matter again if modified, dropping the ones deleted.
+     */
+    private void refreshChangedPages() {
+        boolean changed = false;
+        final List<PageMetadata> parsed = new ArrayList<>();
+        for (String path : changedPages) {
+            changedPages.remove(path);
+            final Path file = projectPath.resolve(path);
+            final PageMetadata entry = entries.get(path);
+            try {
+                final long lastModified
+                        = Files.getLastModifiedTime(file).toMillis();
+                if (entry == null || entry.getLastModified() != lastModified) {
+                    final PageMetadata page = parse(path, lastModified);
+                    if (page != null) {
+                        parsed.add(page);
+                    }
+                }
+            } catch (IOException ex) {
+                changed |= entries.remove(path) != null;
+            }
+        }
+        update(parsed, changed);
+    }
+
+    /**
+     * Stores the entries parsed, sorting the pages again and incrementing
+     * the version if the metadata changed.
+     *
+     * @param parsed the entries parsed
+     * @param removed whether entries were removed
+     */
+    private void update(
+            final List<PageMetadata> parsed,
+            final boolean removed) {
+        boolean changed = removed;
+        for (PageMetadata entry : parsed) {
+            final PageMetadata previous = entries.put(entry.getPath(), entry);
+            changed |= previous == null
+                    || !previous.getValues().equals(entry.getValues());
+        }
+        if (changed || parsed.size() > 0) {
+            final List<PageMetadata> sorted = new ArrayList<>(entries.values());
+            sorted.sort(Comparator.comparing(PageMetadata::getPath));
+            pages = new PageList(sorted);
+        }
+        if (changed) {
+            version++;
+            LOGGER.log(Level.INFO, "Metadata of {0}: {1} pages, {2} parsed.",
+                    new Object[]{projectPath, entries.size(), parsed.size()});
+        }
+    }
+
+    /**
+     * Reads the front matter of a page.
+     *
+     * @return the metadata or null if the page could not be read
+     */
+    private PageMetadata parse(final String path, final long lastModified) {
+        try {
+            return new PageMetadata(path, lastModified,
+                    FrontMatterScanner.scan(projectPath.resolve(path)));
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not read " + path, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Lists the pages of the project with their modification time.
+     */
+    private Map<String, Long> listSources() {
+        final Map<String, Long> sources = new HashMap<>();
+        try {
+            Files.walkFileTree(projectPath, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(
+                        final Path dir,
+                        final BasicFileAttributes attrs) {
+                    if (!dir.equals(projectPath)
+                            && isSkipped(dir.getFileName().toString())) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(
+                        final Path file,
+                        final BasicFileAttributes attrs) {
+                    final String name = file.getFileName().toString();
+                    if (name.endsWith(MARKDOWN_EXT) && !name.startsWith(".")) {
+                        sources.put(projectPath.relativize(file).toString()
+                                .replace(File.separatorChar, '/'),
+                                attrs.lastModifiedTime().toMillis());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(
+                        final Path file,
+                        final IOException ex) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not list the pages of "
+                    + projectPath, ex);
+        }
+        return sources;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the application counters, gauges and histograms.
+ *
+ * Metrics are created on first use and shared by name. They are exposed
+ * through JMX as {@value #OBJECT_NAME} and written as a machine readable build
+ * report after each export. Durations are recorded in nanoseconds, sizes in
+ * bytes.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class Metrics {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(Metrics.class.getName());
+
+    /**
+     * The JMX object name of the metrics.
+     */
+    public static final String OBJECT_NAME = "org.publo:type=Metrics";
+
+    /**
+     * The time to render a page, cached pages excluded.
+     */
+    public static final String RENDER_PAGE_NANOS = "render.page.nanos";
+
+    /**
+     * The time to process a page template, fragments included.
+     */
+    public static final String RENDER_TEMPLATE_NANOS = "render.template.nanos";
+
+    /**
+     * The time to resolve a template or fragment to its resource.
+     */
+    public static final String TEMPLATE_RESOLVE_NANOS
+            = "template.resolve.nanos";
+
+    private static final String[] PERCENTILES = {"p50", "p95", "p99"};
+
+    private static final Map<String, LongAdder> COUNTERS
+            = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS
+            = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> GAUGES
+            = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Retrieves a counter, creating it if necessary.
+     *
+     * @param name of the counter
+     * @return the counter
+     */
+    public static LongAdder counter(final String name) {
+        return COUNTERS.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Retrieves a histogram, creating it if necessary.
+     *
+     * @param name of the histogram
+     * @return the histogram
+     */
+    public static Histogram histogram(final String name) {
+        return HISTOGRAMS.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Records the time elapsed since a start in a histogram.
+     *
+     * @param name of the histogram
+     * @param startNanos the start as per {@link System#nanoTime()}
+     */
+    public static void recordSince(final String name, final long startNanos) {
+        histogram(name).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Defines a gauge, replacing any previous one by the same name.
+     *
+     * @param name of the gauge
+     * @param gauge supplying the current value
+     */
+    public static void gauge(final String name, final LongSupplier gauge) {
+        GAUGES.put(name, gauge);
+    }
+
+    /**
+     * Retrieves all the values, histograms being summarised by their count,
+     * sum, maximum and percentiles.
+     *
+     * @return the values sorted by name
+     */
+    public static SortedMap<String, Long> getValues() {
+        final SortedMap<String, Long> values = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> values.put(name, counter.sum()));
+        GAUGES.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        HISTOGRAMS.forEach((name, histogram) -> {
+            values.put(name + ".count", histogram.getCount());
+            values.put(name + ".sum", histogram.getSum());
+            values.put(name + ".max", histogram.getMax());
+            for (String percentile : PERCENTILES) {
+                values.put(name + "." + percentile, histogram.getPercentile(
+                        Double.parseDouble(percentile.substring(1))));
+            }
+        });
+        return values;
+    }
+
+    /**
+     * Clears the counters and histograms. Gauges are left as they are.
+     */
+    public static void reset() {
+        COUNTERS.values().forEach(LongAdder::reset);
+        HISTOGRAMS.values().forEach(Histogram::reset);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, once.
+     */
+    public static synchronized void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(new MXBean(), objectName);
+            }
+        } catch (JMException ex) {
+            LOGGER.log(Level.WARNING, "Unable to register the metrics.", ex);
+        }
+    }
+
+    /**
+     * Writes the values as a JSON object along with the time of the report
+     * and the duration it covers.
+     *
+     * @param reportPath the report file
+     * @param durationNanos the duration covered
+     * @throws IOException on failure to write
+     */
+    public static void writeReport(
+            final Path reportPath,
+            final long durationNanos) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(reportPath,
+                StandardCharsets.UTF_8)) {
+            writer.write("{\"time\":\"" + Instant.now() + "\",");
+            writer.newLine();
+            writer.write("\"durationMillis\":" + durationNanos / 1_000_000
+                    + ",");
+            writer.newLine();
+            writer.write("\"metrics\":{");
+            String separator = "";
+            for (Map.Entry<String, Long> value : getValues().entrySet()) {
+                writer.write(separator);
+                writer.newLine();
+                writer.write("\"" + value.getKey() + "\":" + value.getValue());
+                separator = ",";
+            }
+            writer.newLine();
+            writer.write("}}");
+            writer.newLine();
+        }
+    }
+
+    /**
+     * The registered {@link MetricsMXBean}.
+     */
+    private static final class MXBean implements MetricsMXBean {
+
+        @Override
+        public Map<String, Long> getValues() {
+            return Metrics.getValues();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+
+        @Override
+        public boolean isTracing() {
+            return Trace.isEnabled();
+        }
+
+        @Override
+        public void setTracing(final boolean tracing) {
+            Trace.setEnabled(tracing);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the {@link Metrics}.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public interface MetricsMXBean {
+
+    /**
+     * Retrieves the value of all the counters and gauges, and the count, sum,
+     * maximum and percentiles of the histograms.
+     *
+     * @return the values by name
+     */
+    Map<String, Long> getValues();
+
+    /**
+     * Clears the counters and histograms.
+     */
+    void reset();
+
+    /**
+     * Whether the hot paths are being traced.
+     *
+     * @return true if tracing
+     * @see Trace
+     */
+    boolean isTracing();
+
+    /**
+     * Turns tracing on or off.
+     *
+     * @param tracing whether to trace
+     */
+    void setTracing(boolean tracing);
+}
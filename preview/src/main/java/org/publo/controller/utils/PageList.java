@@ -0,0 +1,147 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable list of project pages with the queries useful to listing
+ * templates. Queries return a new list and can be chained:
+ * <pre>
+ * th:each="post : ${pages.under('blog').where('template', 'post')
+ *         .sortedBy('date').reversed().limit(10)}"
+ * </pre>
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class PageList extends AbstractList<PageMetadata> {
+
+    /**
+     * The list of no pages.
+     */
+    public static final PageList EMPTY
+            = new PageList(Collections.emptyList());
+
+    private final List<PageMetadata> pages;
+
+    /**
+     * Creates a list of pages.
+     *
+     * @param pages to hold, not copied
+     */
+    PageList(final List<PageMetadata> pages) {
+        this.pages = pages;
+    }
+
+    @Override
+    public PageMetadata get(final int index) {
+        return pages.get(index);
+    }
+
+    @Override
+    public int size() {
+        return pages.size();
+    }
+
+    /**
+     * Selects the pages with a front matter value.
+     *
+     * @param key of the value
+     * @param value expected
+     * @return the pages matching
+     */
+    public PageList where(final String key, final String value) {
+        return filter(page -> value.equals(page.get(key)));
+    }
+
+    /**
+     * Selects the pages listing a value, such as a tag, in the front matter.
+     *
+     * @param key of the list
+     * @param value expected among the items
+     * @return the pages matching
+     */
+    public PageList tagged(final String key, final String value) {
+        return filter(page -> page.getValues().containsKey(key)
+                && page.getValues().get(key).contains(value));
+    }
+
+    /**
+     * Selects the pages defining a front matter value.
+     *
+     * @param key of the value
+     * @return the pages matching
+     */
+    public PageList having(final String key) {
+        return filter(page -> page.getData().containsKey(key));
+    }
+
+    /**
+     * Selects the pages in a directory and its sub-directories.
+     *
+     * @param directory relative to the project, '/' separated
+     * @return the pages matching
+     */
+    public PageList under(final String directory) {
+        final String prefix = directory.endsWith("/")
+                ? directory : directory + "/";
+        return filter(page -> page.getPath().startsWith(prefix));
+    }
+
+    /**
+     * Sorts the pages by a front matter value, pages not defining it last.
+     *
+     * @param key of the value
+     * @return the pages sorted
+     */
+    public PageList sortedBy(final String key) {
+        final List<PageMetadata> sorted = new ArrayList<>(pages);
+        sorted.sort(Comparator.comparing(page -> page.get(key),
+                Comparator.nullsLast(Comparator.naturalOrder())));
+        return new PageList(sorted);
+    }
+
+    public PageList reversed() {
+        final List<PageMetadata> reversed = new ArrayList<>(pages);
+        Collections.reverse(reversed);
+        return new PageList(reversed);
+    }
+
+    public PageList limit(final int count) {
+        return count >= pages.size()
+                ? this : new PageList(pages.subList(0, Math.max(0, count)));
+    }
+
+    private PageList filter(final Predicate<PageMetadata> predicate) {
+        return new PageList(pages.stream().filter(predicate)
+                .collect(Collectors.toList()));
+    }
+}
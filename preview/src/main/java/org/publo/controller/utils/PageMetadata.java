@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The front matter of a project page, as exposed to the templates.
+ *
+ * Values are available joined, as the page own variables are, through
+ * {@link #getData()} and as lists through {@link #getValues()}.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class PageMetadata {
+
+    private static final String MARKDOWN_EXT = ".md";
+    private static final String MARKUP_EXT = ".html";
+
+    private final String path;
+    private final long lastModified;
+    private final Map<String, List<String>> values;
+    private final Map<String, String> data;
+
+    /**
+     * Creates the metadata of a page.
+     *
+     * @param path of the page relative to the project, '/' separated
+     * @param lastModified time of the page source
+     * @param values of the front matter
+     */
+    public PageMetadata(
+            final String path,
+            final long lastModified,
+            final Map<String, List<String>> values) {
+        this.path = path;
+        this.lastModified = lastModified;
+        this.values = Collections.unmodifiableMap(values);
+        final Map<String, String> joined = new LinkedHashMap<>();
+        values.forEach((key, value) -> joined.put(key, String.join("", value)));
+        this.data = Collections.unmodifiableMap(joined);
+    }
+
+    /**
+     * Retrieves the page source path relative to the project.
+     *
+     * @return the '/' separated path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Retrieves the exported page path relative to the site root.
+     *
+     * @return the '/' separated url
+     */
+    public String getUrl() {
+        return path.endsWith(MARKDOWN_EXT)
+                ? path.substring(0, path.length() - MARKDOWN_EXT.length())
+                + MARKUP_EXT
+                : path;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public Map<String, String> getData() {
+        return data;
+    }
+
+    public Map<String, List<String>> getValues() {
+        return values;
+    }
+
+    /**
+     * Retrieves a front matter value.
+     *
+     * @param key of the value
+     * @return the value or null if not defined
+     */
+    public String get(final String key) {
+        return data.get(key);
+    }
+
+    @Override
+    public String toString() {
+        return path + data;
+    }
+}
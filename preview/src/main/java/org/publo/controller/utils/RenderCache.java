@@ -0,0 +1,275 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Size-bounded least recently used cache of rendered pages.
+ *
+ * Entries are keyed by the markdown content hash, the resolved template
+ * identity and modification time, the base path, the project metadata
+ * version and the preview flag. Any
+ * change to one of them results in a different {@link Key} hence a miss. The
+ * memory budget is expressed in bytes and is an estimate of the space taken
+ * by the cached markup.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class RenderCache {
+
+    /**
+     * The memory budget system property key.
+     */
+    public static final String BUDGET_KEY = "publo.render.cache.bytes";
+
+    /**
+     * The default memory budget: 32 MiB.
+     */
+    public static final long DEFAULT_BUDGET = 32L * 1024 * 1024;
+
+    /**
+     * Fixed cost accounted for each entry on top of its markup.
+     */
+    private static final long ENTRY_OVERHEAD = 128;
+
+    private long budget;
+
+    private final LinkedHashMap<Key, String> entries
+            = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache with the budget defined in the system properties or the
+     * {@link #DEFAULT_BUDGET}.
+     */
+    public RenderCache() {
+        this(Long.getLong(BUDGET_KEY, DEFAULT_BUDGET));
+    }
+
+    /**
+     * Creates a cache with the given budget. A budget of zero disables
+     * caching.
+     *
+     * @param budget in bytes
+     */
+    public RenderCache(final long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Retrieves a cached page.
+     *
+     * @param key of the page
+     * @return the page markup or null if not cached
+     */
+    public synchronized String get(final Key key) {
+        final String page = entries.get(key);
+        if (page == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return page;
+    }
+
+    /**
+     * Caches a page evicting the least recently used entries as necessary to
+     * stay within budget. Pages larger than the whole budget are not cached.
+     *
+     * @param key of the page
+     * @param page markup
+     */
+    public synchronized void put(final Key key, final String page) {
+        final long pageSize = sizeOf(page);
+        if (pageSize > budget) {
+            return;
+        }
+        final String previous = entries.put(key, page);
+        if (previous != null) {
+            size -= sizeOf(previous);
+        }
+        size += pageSize;
+        evictOverBudget();
+    }
+
+    /**
+     * Changes the budget, evicting the least recently used entries as
+     * necessary to stay within the new one.
+     *
+     * @param budget in bytes
+     */
+    public synchronized void setBudget(final long budget) {
+        this.budget = budget;
+        evictOverBudget();
+    }
+
+    /**
+     * Drops all entries. Metrics are retained.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Retrieves the estimated memory taken by the cached pages.
+     *
+     * @return size in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Render cache: " + entries.size() + " entries, " + size + "/"
+                + budget + " bytes, " + hits + " hits, " + misses
+                + " misses, " + evictions + " evictions";
+    }
+
+    private void evictOverBudget() {
+        final Iterator<Map.Entry<Key, String>> iterator
+                = entries.entrySet().iterator();
+        while (size > budget && iterator.hasNext()) {
+            final Map.Entry<Key, String> eldest = iterator.next();
+            size -= sizeOf(eldest.getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private static long sizeOf(final String page) {
+        return ENTRY_OVERHEAD + 2L * page.length();
+    }
+
+    /**
+     * Computes a SHA-256 digest of the content.
+     *
+     * @param content to hash
+     * @return the Base64 encoded digest
+     */
+    static String hash(final String content) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(
+                    digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available.", ex);
+        }
+    }
+
+    /**
+     * The rendered page identity.
+     */
+    public static final class Key {
+
+        private final String contentHash;
+        private final String templateId;
+        private final long templateModified;
+        private final String basePath;
+        private final long metadataVersion;
+        private final boolean isPreview;
+
+        public Key(
+                final String markdown,
+                final String templateId,
+                final long templateModified,
+                final String basePath,
+                final boolean isPreview) {
+            this(markdown, templateId, templateModified, basePath, 0,
+                    isPreview);
+        }
+
+        public Key(
+                final String markdown,
+                final String templateId,
+                final long templateModified,
+                final String basePath,
+                final long metadataVersion,
+                final boolean isPreview) {
+            this.contentHash = hash(markdown);
+            this.templateId = templateId;
+            this.templateModified = templateModified;
+            this.basePath = basePath;
+            this.metadataVersion = metadataVersion;
+            this.isPreview = isPreview;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(contentHash, templateId, templateModified,
+                    basePath, metadataVersion, isPreview);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return templateModified == other.templateModified
+                    && metadataVersion == other.metadataVersion
+                    && isPreview == other.isPreview
+                    && contentHash.equals(other.contentHash)
+                    && Objects.equals(templateId, other.templateId)
+                    && Objects.equals(basePath, other.basePath);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of threads rendering pages by priority.
+ *
+ * Renders are queued in {@link Lane}s. Workers always take the oldest render
+ * of the most urgent lane with work, so a preview waits at most for the
+ * renders already running. One worker only serves the
+ * {@link Lane#INTERACTIVE} lane, hence a preview never waits for the
+ * background renders to free a thread either. Renders running are not
+ * interrupted.
+ *
+ * Each lane holds a bounded number of renders: submitting to a full lane
+ * blocks until a worker takes one, slowing the producer down to the pace of
+ * the pool. A lane may also be capped to a number of renders running at
+ * once, as the {@link Lane#EXPORT} lane is to the project export threads;
+ * workers then pass over it to the less urgent lanes. The depth of each
+ * lane, the renders running, the time renders wait in it and the number of
+ * submissions held back are recorded in the {@link Metrics}.
+ *
+ * Every render processes its template with its own context, the pages may
+ * then be rendered concurrently.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class RenderService {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(RenderService.class.getName());
+
+    /**
+     * The system property setting the number of background workers.
+     */
+    public static final String THREADS_KEY = "publo.render.threads";
+
+    /**
+     * The number of renders each lane holds before submissions block.
+     */
+    public static final int LANE_CAPACITY = 64;
+
+    /**
+     * The render lanes, most urgent first.
+     */
+    public enum Lane {
+
+        /**
+         * Renders the user is waiting on, such as the editor preview.
+         */
+        INTERACTIVE,
+        /**
+         * Pages rebuilt as their sources change, such as the preview server
+         * ones.
+         */
+        WATCH,
+        /**
+         * Site exports.
+         */
+        EXPORT;
+
+        private final String metricPrefix
+                = "render.lane." + name().toLowerCase(Locale.ROOT);
+    }
+
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Map<Lane, Condition> notFull = new EnumMap<>(Lane.class);
+    private final Map<Lane, ArrayDeque<Job<?>>> queues
+            = new EnumMap<>(Lane.class);
+    private final Map<Lane, AtomicInteger> depths = new EnumMap<>(Lane.class);
+    private final Map<Lane, AtomicInteger> running = new EnumMap<>(Lane.class);
+    private final Map<Lane, Integer> limits = new EnumMap<>(Lane.class);
+    private boolean shutdown;
+
+    /**
+     * Creates a service and starts its workers.
+     *
+     * @param threads the number of workers serving all the lanes, one more
+     * being reserved to the interactive lane
+     * @param capacity the number of renders each lane holds
+     */
+    RenderService(final int threads, final int capacity) {
+        this.capacity = capacity;
+        for (Lane lane : Lane.values()) {
+            notFull.put(lane, lock.newCondition());
+            queues.put(lane, new ArrayDeque<>());
+            final AtomicInteger depth = new AtomicInteger();
+            depths.put(lane, depth);
+            Metrics.gauge(lane.metricPrefix + ".depth", depth::get);
+            final AtomicInteger runningCount = new AtomicInteger();
+            running.put(lane, runningCount);
+            Metrics.gauge(lane.metricPrefix + ".running", runningCount::get);
+            limits.put(lane, Integer.MAX_VALUE);
+        }
+        startWorker("publo-render-interactive", true);
+        for (int i = 0; i < threads; i++) {
+            startWorker("publo-render-" + i, false);
+        }
+    }
+
+    /**
+     * Retrieves the shared service, started on first use with as many
+     * background workers as the system property defines or as processors.
+     *
+     * @return the service
+     */
+    public static RenderService getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Queues a render, waiting for room in the lane if full.
+     *
+     * @param <T> the type of the result
+     * @param lane of the render
+     * @param render the render
+     * @return the future result
+     * @throws RejectedExecutionException if interrupted while waiting for
+     * room or the service is shut down
+     */
+    public <T> CompletableFuture<T> submit(
+            final Lane lane,
+            final Supplier<T> render) {
+        final Job<T> job = new Job<>(lane, render);
+        final ArrayDeque<Job<?>> queue = queues.get(lane);
+        lock.lock();
+        try {
+            if (queue.size() >= capacity) {
+                Metrics.counter(lane.metricPrefix + ".blocked").increment();
+                do {
+                    notFull.get(lane).await();
+                } while (queue.size() >= capacity && !shutdown);
+            }
+            if (shutdown) {
+                throw new RejectedExecutionException("Render service shut "
+                        + "down.");
+            }
+            queue.addLast(job);
+            depths.get(lane).incrementAndGet();
+            available.signalAll();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for the "
+                    + lane + " lane.", ex);
+        } finally {
+            lock.unlock();
+        }
+        return job.future;
+    }
+
+    /**
+     * Queues a render and waits for its result.
+     *
+     * @param <T> the type of the result
+     * @param lane of the render
+     * @param render the render
+     * @return the result
+     */
+    public <T> T render(final Lane lane, final Supplier<T> render) {
+        try {
+            return submit(lane, render).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Caps the number of renders of a lane running at once. Renders already
+     * running are not affected.
+     *
+     * @param lane the lane
+     * @param limit the renders running at once, at least one
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public void setConcurrency(final Lane lane, final int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Invalid concurrency " + limit
+                    + " for the " + lane + " lane.");
+        }
+        lock.lock();
+        try {
+            limits.put(lane, limit);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of renders waiting in a lane.
+     *
+     * @param lane the lane
+     * @return the renders queued
+     */
+    public int getDepth(final Lane lane) {
+        return depths.get(lane).get();
+    }
+
+    /**
+     * Stops the workers once the renders running complete. Renders queued are
+     * cancelled.
+     */
+    void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            for (Lane lane : Lane.values()) {
+                queues.get(lane).forEach(job -> job.future.cancel(false));
+                queues.get(lane).clear();
+                depths.get(lane).set(0);
+                notFull.get(lane).signalAll();
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startWorker(final String name, final boolean interactive) {
+        final Thread worker = new Thread(() -> work(interactive), name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Runs the renders queued, most urgent first, until shut down.
+     *
+     * @param interactive whether to serve the interactive lane only
+     */
+    private void work(final boolean interactive) {
+        while (true) {
+            final Job<?> job;
+            lock.lock();
+            try {
+                Job<?> next;
+                while ((next = poll(interactive)) == null) {
+                    if (shutdown) {
+                        return;
+                    }
+                    available.await();
+                }
+                job = next;
+            } catch (InterruptedException ex) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                job.run();
+            } finally {
+                lock.lock();
+                try {
+                    running.get(job.lane).decrementAndGet();
+                    available.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest render of the most urgent lane with work and below
+     * its concurrency cap. To be called holding the lock.
+     *
+     * @param interactive whether to look at the interactive lane only
+     * @return the render or null if none can run
+     */
+    private Job<?> poll(final boolean interactive) {
+        for (Lane lane : Lane.values()) {
+            final Job<?> job = running.get(lane).get() < limits.get(lane)
+                    ? queues.get(lane).pollFirst() : null;
+            if (job != null) {
+                depths.get(lane).decrementAndGet();
+                running.get(lane).incrementAndGet();
+                notFull.get(lane).signal();
+                return job;
+            }
+            if (interactive) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A queued render.
+     *
+     * @param <T> the type of the result
+     */
+    private static final class Job<T> {
+
+        private final Lane lane;
+        private final Supplier<T> render;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long queuedNanos = System.nanoTime();
+
+        private Job(final Lane lane, final Supplier<T> render) {
+            this.lane = lane;
+            this.render = render;
+        }
+
+        private void run() {
+            if (future.isDone()) {
+                return;
+            }
+            Metrics.recordSince(lane.metricPrefix + ".wait.nanos",
+                    queuedNanos);
+            try {
+                future.complete(render.get());
+            } catch (RuntimeException | Error ex) {
+                LOGGER.log(Level.FINE, "Render failed.", ex);
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * Lazily starts the shared service.
+     */
+    private static final class Holder {
+
+        private static final RenderService INSTANCE = new RenderService(
+                Integer.getInteger(THREADS_KEY,
+                        Runtime.getRuntime().availableProcessors()),
+                LANE_CAPACITY);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Warms up the render pipeline so that the first preview is not slowed down by
+ * loading and compiling commonmark, Thymeleaf and Jsoup.
+ *
+ * Opt-in through the {@value #WARMUP_KEY} system property. Synthetic pages of
+ * a throw-away project are rendered through the {@link TemplateRenderer} on a
+ * low priority thread, bypassing the render cache. The warm-up stops as soon
+ * as a real page is requested, or after {@value #MAX_RENDERS} renders.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class RenderWarmUp {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(RenderWarmUp.class.getName());
+
+    /**
+     * The system property enabling the warm-up.
+     */
+    public static final String WARMUP_KEY = "publo.render.warmup";
+
+    /**
+     * The maximum number of synthetic renders.
+     */
+    static final int MAX_RENDERS = 300;
+
+    private static final String TEMPLATE_NAME = "warmup";
+
+    private static final String TEMPLATE
+            = "<!DOCTYPE html>\n"
+            + "<html xmlns:th=\"http://www.thymeleaf.org\">\n"
+            + "<head><title th:text=\"${title}\">Title</title></head>\n"
+            + "<body>\n"
+            + "<nav th:replace=\"~{warmup-fragments :: nav}\"></nav>\n"
+            + "<main th:utext=\"${main}\"></main>\n"
+            + "<ul><li th:each=\"page : ${pages.sortedBy('title')}\">"
+            + "<a th:href=\"${page.url}\" th:text=\"${page.data.title}\">"
+            + "</a></li></ul>\n"
+            + "</body>\n"
+            + "</html>\n";
+
+    private static final String FRAGMENTS
+            = "<nav th:fragment=\"nav\"><a href=\"index.html\">Home</a></nav>\n";
+
+    private RenderWarmUp() {
+    }
+
+    /**
+     * Starts the warm-up in the background if enabled.
+     *
+     * @return true if started
+     */
+    public static boolean startIfEnabled() {
+        if (!Boolean.getBoolean(WARMUP_KEY)) {
+            return false;
+        }
+        final Thread thread
+                = new Thread(() -> warmUp(MAX_RENDERS), "publo-render-warmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Renders synthetic pages until a real page is requested.
+     *
+     * @param maxRenders the maximum number of renders
+     * @return the number of renders
+     */
+    static int warmUp(final int maxRenders) {
+        final long requests = TemplateRenderer.getRequestCount();
+        final long start = System.nanoTime();
+        int renders = 0;
+        Path projectPath = null;
+        try {
+            projectPath = Files.createTempDirectory("publo-warmup");
+            final Path templatesPath = Files.createDirectory(projectPath
+                    .resolve(TemplateRenderer.TEMPLATES_DIR_NAME));
+            write(templatesPath.resolve(TEMPLATE_NAME + ".html"), TEMPLATE);
+            write(templatesPath.resolve("warmup-fragments.html"), FRAGMENTS);
+            final Path page = projectPath.resolve("index.md");
+            write(page, page(0));
+            write(projectPath.resolve("about.md"), page(1));
+            final IncrementalMarkdownRenderer markdownRenderer
+                    = new IncrementalMarkdownRenderer();
+            try {
+                while (renders < maxRenders
+                        && TemplateRenderer.getRequestCount() == requests) {
+                    final boolean isPreview = renders % 2 == 0;
+                    TemplateRenderer.renderUncached(page(renders), page,
+                            isPreview, isPreview ? markdownRenderer : null);
+                    renders++;
+                }
+            } finally {
+                TemplateDependencies.discard(page);
+                MetadataIndex.discard(page);
+            }
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Render warm-up failed.", ex);
+        } finally {
+            delete(projectPath);
+        }
+        LOGGER.log(Level.INFO, "Render warm-up: {0} renders in {1} ms{2}.",
+                new Object[]{renders, (System.nanoTime() - start) / 1_000_000,
+                    renders < maxRenders ? ", stopped by a real render" : ""});
+        return renders;
+    }
+
+    /**
+     * Generates a page touching most of the markdown syntax, slightly varied
+     * by iteration.
+     *
+     * @param iteration of the warm-up
+     * @return the page markdown
+     */
+    private static String page(final int iteration) {
+        final StringBuilder markdown = new StringBuilder()
+                .append("---\n")
+                .append("title: Warm-up ").append(iteration).append('\n')
+                .append("template: ").append(TEMPLATE_NAME).append('\n')
+                .append("tags:\n  - one\n  - two\n")
+                .append("---\n\n")
+                .append("# Heading ").append(iteration).append("\n\n");
+        for (int i = 0; i < 10; i++) {
+            markdown.append("A paragraph with *emphasis*, **strong**, `code` "
+                    + "and a [link](page").append(i).append(".html).\n\n")
+                    .append("- item ").append(i).append("\n- item\n\n")
+                    .append("> quote\n\n")
+                    .append("```\ncode block ").append(iteration)
+                    .append("\n```\n\n");
+        }
+        return markdown.toString();
+    }
+
+    private static void write(final Path path, final String content)
+            throws IOException {
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void delete(final Path projectPath) {
+        if (projectPath == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(projectPath)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.FINE, "Could not delete " + path, ex);
+                }
+            });
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Could not delete " + projectPath, ex);
+        }
+    }
+}
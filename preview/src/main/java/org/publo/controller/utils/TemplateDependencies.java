@@ -0,0 +1,402 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Graph of the templates each page of a project depends on.
+ *
+ * Edges are recorded as pages render: page to template, and template to the
+ * templates it includes fragments from. Pages reading the metadata of the
+ * other pages, through the {@code pages} variable, are marked as such as
+ * they depend on every page.
+ *
+ * The graph tells the pages affected by a template change so that only those
+ * are exported or previewed again. It is persisted in the project
+ * {@value #FILE_NAME} file to be valid across sessions.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class TemplateDependencies {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(TemplateDependencies.class.getName());
+
+    /**
+     * The name of the file the graph is persisted to.
+     */
+    public static final String FILE_NAME = ".template-dependencies";
+
+    /**
+     * The persisted format header.
+     */
+    private static final String HEADER = "# publo template dependencies 1";
+
+    private static final String PAGE_EDGE = "P";
+    private static final String INCLUDE_EDGE = "I";
+    private static final String METADATA_READ = "M";
+
+    /**
+     * The graphs by project root.
+     */
+    private static final Map<Path, TemplateDependencies> GRAPHS
+            = new ConcurrentHashMap<>();
+
+    private final Path projectPath;
+
+    /**
+     * The templates each page is rendered with, by page.
+     */
+    private final Map<String, Set<String>> pageTemplates = new HashMap<>();
+
+    /**
+     * The templates fragments are included from, by template.
+     */
+    private final Map<String, Set<String>> includes = new HashMap<>();
+
+    /**
+     * The pages depending on the metadata of all pages.
+     */
+    private final Set<String> metadataPages = new HashSet<>();
+
+    private boolean modified;
+
+    TemplateDependencies(final Path projectPath) {
+        this.projectPath = projectPath;
+    }
+
+    /**
+     * Retrieves the graph of the project a page belongs to, loading it on
+     * first access.
+     *
+     * @param page path of a project page
+     * @return the project graph
+     */
+    public static TemplateDependencies of(final Path page) {
+        return GRAPHS.computeIfAbsent(MetadataIndex.projectRootOf(page),
+                projectPath -> {
+                    final TemplateDependencies graph
+                            = new TemplateDependencies(projectPath);
+                    graph.load();
+                    return graph;
+                });
+    }
+
+    /**
+     * Forgets the graph of the project a page belongs to, without saving it.
+     *
+     * @param page path of a project page
+     */
+    static void discard(final Path page) {
+        GRAPHS.remove(MetadataIndex.projectRootOf(page));
+    }
+
+    /**
+     * Persists all the graphs loaded.
+     */
+    public static void saveAll() {
+        for (TemplateDependencies graph : GRAPHS.values()) {
+            try {
+                graph.save();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Could not save the dependencies of "
+                        + graph.projectPath, ex);
+            }
+        }
+    }
+
+    /**
+     * Replaces the dependencies of a page with the ones recorded rendering
+     * it. Template includes are added to the ones known as they may vary by
+     * page.
+     *
+     * @param page path of the page
+     * @param recording of the render
+     */
+    public synchronized void record(final Path page, final Recording recording) {
+        final String pageId = id(page);
+        final Set<String> templates = new TreeSet<>();
+        recording.pageTemplates.forEach(template -> templates.add(id(template)));
+        modified |= !templates.equals(pageTemplates.put(pageId, templates));
+        modified |= recording.readsMetadata
+                ? metadataPages.add(pageId) : metadataPages.remove(pageId);
+        recording.includes.forEach((template, fragments) -> {
+            final Set<String> known = includes.computeIfAbsent(id(template),
+                    key -> new TreeSet<>());
+            fragments.forEach(fragment -> {
+                modified |= known.add(id(fragment));
+            });
+        });
+    }
+
+    /**
+     * Whether the dependencies of a page were ever recorded.
+     *
+     * @param page path of the page
+     * @return true if known
+     */
+    public synchronized boolean contains(final Path page) {
+        return pageTemplates.containsKey(id(page));
+    }
+
+    /**
+     * Whether a page depends on the metadata of all the pages.
+     *
+     * @param page path of the page
+     * @return true if the page reads the {@code pages} variable
+     */
+    public synchronized boolean readsMetadata(final Path page) {
+        return metadataPages.contains(id(page));
+    }
+
+    /**
+     * Retrieves all the templates a page depends on, directly or through
+     * fragments.
+     *
+     * @param page path of the page
+     * @return the template paths
+     */
+    public synchronized Set<Path> getTemplates(final Path page) {
+        final Set<Path> templates = new LinkedHashSet<>();
+        final Deque<String> pending = new ArrayDeque<>(
+                pageTemplates.getOrDefault(id(page), new HashSet<>()));
+        final Set<String> visited = new HashSet<>();
+        while (!pending.isEmpty()) {
+            final String template = pending.pop();
+            if (visited.add(template)) {
+                templates.add(projectPath.resolve(template));
+                pending.addAll(includes.getOrDefault(template, new HashSet<>()));
+            }
+        }
+        return templates;
+    }
+
+    /**
+     * Retrieves the latest modification time of the templates a page depends
+     * on.
+     *
+     * @param page path of the page
+     * @return the time in milliseconds, zero if none exists
+     */
+    public long getLastModified(final Path page) {
+        long lastModified = 0;
+        for (Path template : getTemplates(page)) {
+            try {
+                lastModified = Math.max(lastModified,
+                        Files.getLastModifiedTime(template).toMillis());
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, "Template {0} not found.", template);
+            }
+        }
+        return lastModified;
+    }
+
+    /**
+     * Retrieves the pages depending on a template, directly or through
+     * fragments.
+     *
+     * @param template path of the template
+     * @return the page paths
+     */
+    public synchronized Set<Path> getAffectedPages(final Path template) {
+        final Set<String> templates = new HashSet<>();
+        final Deque<String> pending = new ArrayDeque<>();
+        pending.push(id(template));
+        while (!pending.isEmpty()) {
+            final String fragment = pending.pop();
+            if (templates.add(fragment)) {
+                includes.forEach((owner, fragments) -> {
+                    if (fragments.contains(fragment)) {
+                        pending.push(owner);
+                    }
+                });
+            }
+        }
+        final Set<Path> pages = new TreeSet<>();
+        pageTemplates.forEach((page, pageTemplateIds) -> {
+            for (String pageTemplate : pageTemplateIds) {
+                if (templates.contains(pageTemplate)) {
+                    pages.add(projectPath.resolve(page));
+                    break;
+                }
+            }
+        });
+        return pages;
+    }
+
+    /**
+     * Persists the graph, if modified, to the {@value #FILE_NAME} file of
+     * the project. The file is written aside and moved in place.
+     *
+     * @throws IOException on failure to write the file
+     */
+    public synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        final Path graphPath = projectPath.resolve(FILE_NAME);
+        final Path tempPath = graphPath.resolveSibling(FILE_NAME + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempPath,
+                StandardCharsets.UTF_8)) {
+            writer.write(HEADER + "\n");
+            for (Map.Entry<String, Set<String>> page
+                    : new TreeMap<>(pageTemplates).entrySet()) {
+                writer.write(PAGE_EDGE + "\t" + page.getKey());
+                for (String template : page.getValue()) {
+                    writer.write("\t" + template);
+                }
+                writer.write("\n");
+            }
+            for (Map.Entry<String, Set<String>> template
+                    : new TreeMap<>(includes).entrySet()) {
+                writer.write(INCLUDE_EDGE + "\t" + template.getKey());
+                for (String fragment : template.getValue()) {
+                    writer.write("\t" + fragment);
+                }
+                writer.write("\n");
+            }
+            for (String page : new TreeSet<>(metadataPages)) {
+                writer.write(METADATA_READ + "\t" + page + "\n");
+            }
+        }
+        Files.move(tempPath, graphPath, ATOMIC_MOVE, REPLACE_EXISTING);
+        modified = false;
+    }
+
+    /**
+     * Loads the graph persisted in the project, if any. An unreadable file
+     * leaves the graph empty: pages are then rendered anew.
+     */
+    synchronized void load() {
+        pageTemplates.clear();
+        includes.clear();
+        metadataPages.clear();
+        final Path graphPath = projectPath.resolve(FILE_NAME);
+        try (BufferedReader reader = Files.newBufferedReader(graphPath,
+                StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                throw new IOException("Unknown format.");
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split("\t");
+                final Set<String> targets = new TreeSet<>();
+                for (int i = 2; i < fields.length; i++) {
+                    targets.add(fields[i]);
+                }
+                switch (fields[0]) {
+                    case PAGE_EDGE:
+                        pageTemplates.put(fields[1], targets);
+                        break;
+                    case INCLUDE_EDGE:
+                        includes.put(fields[1], targets);
+                        break;
+                    case METADATA_READ:
+                        metadataPages.add(fields[1]);
+                        break;
+                    default:
+                        throw new IOException("Unknown entry " + fields[0]);
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            LOGGER.log(Level.FINE, "No dependencies found for {0}.",
+                    projectPath);
+        } catch (IOException | ArrayIndexOutOfBoundsException ex) {
+            LOGGER.log(Level.WARNING, "Discarding the dependencies of "
+                    + projectPath, ex);
+            pageTemplates.clear();
+            includes.clear();
+            metadataPages.clear();
+        }
+    }
+
+    private String id(final Path path) {
+        return projectPath.relativize(path).toString()
+                .replace(File.separatorChar, '/');
+    }
+
+    /**
+     * The dependencies met rendering a page.
+     */
+    public static final class Recording {
+
+        private final Set<Path> pageTemplates = new LinkedHashSet<>();
+        private final Map<Path, Set<Path>> includes = new HashMap<>();
+        private final Map<String, Path> resources = new HashMap<>();
+        private volatile boolean readsMetadata;
+
+        /**
+         * Records the resolution of a template.
+         *
+         * @param owner the name of the template including it, null for the
+         * page template
+         * @param template the name of the template
+         * @param resource the template file
+         */
+        public synchronized void resolved(
+                final String owner,
+                final String template,
+                final Path resource) {
+            resources.putIfAbsent(template, resource);
+            final Path ownerResource = owner == null
+                    ? null : resources.get(owner);
+            if (ownerResource == null) {
+                pageTemplates.add(resource);
+            } else if (!ownerResource.equals(resource)) {
+                includes.computeIfAbsent(ownerResource, key -> new HashSet<>())
+                        .add(resource);
+            }
+        }
+
+        /**
+         * Records the page reading the metadata of all the pages.
+         */
+        public void metadataRead() {
+            readsMetadata = true;
+        }
+    }
+}
@@ -23,10 +23,16 @@
  */
 package org.publo.controller.utils;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.commonmark.Extension;
@@ -38,11 +44,13 @@ import org.commonmark.renderer.html.HtmlRenderer;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
 import org.thymeleaf.templateresolver.FileTemplateResolver;
+import org.thymeleaf.templateresource.ITemplateResource;
 
 /**
  * Template Rendering Library Wrapper.
@@ -55,8 +63,32 @@ public final class TemplateRenderer {
     private static final Logger LOGGER
             = Logger.getLogger(TemplateRenderer.class.getName());
 
-    private static final String WINDOW_SCROLL_FUNCTION
-            = "<script>function scrollWin(value){ window.scrollTo(0, (document.body.scrollHeight - window.innerHeight) * value); }</script>";
+    /**
+     * Scrolls the preview to the element of a source line, interpolating
+     * between the elements of the blocks around it. The elements are looked
+     * up once per page.
+     */
+    private static final String SCROLL_TO_LINE_FUNCTION
+            = "<script>var publoLines;"
+            + "function scrollToLine(line){"
+            + "if(!publoLines){publoLines=[];"
+            + "var els=document.querySelectorAll('["
+            + IncrementalMarkdownRenderer.SOURCE_LINE_ATTRIBUTE + "]');"
+            + "for(var i=0;i<els.length;i++){publoLines.push([+els[i]"
+            + ".getAttribute('"
+            + IncrementalMarkdownRenderer.SOURCE_LINE_ATTRIBUTE
+            + "'),els[i]]);}}"
+            + "var lo=0,hi=publoLines.length-1,prev=-1;"
+            + "while(lo<=hi){var mid=(lo+hi)>>1;"
+            + "if(publoLines[mid][0]<=line){prev=mid;lo=mid+1;}else{hi=mid-1;}}"
+            + "if(prev<0){window.scrollTo(0,0);return;}"
+            + "var top=function(el){return el.getBoundingClientRect().top"
+            + "+window.pageYOffset;};"
+            + "var y=top(publoLines[prev][1]);"
+            + "if(prev+1<publoLines.length){var next=publoLines[prev+1];"
+            + "y+=(top(next[1])-y)*(line-publoLines[prev][0])"
+            + "/(next[0]-publoLines[prev][0]);}"
+            + "window.scrollTo(0,y);}</script>";
 
     private static final String DEFAULT_TEMPLATE_NAME = "default-template";
     private static final String TEMPLATE_SUFFIX = ".html";
@@ -64,6 +96,34 @@ public final class TemplateRenderer {
     public static final String PROJ_DIR_NAME = ".publo";
     public static final String TEMPLATES_DIR_NAME = "templates";
 
+    private static final String TEMPLATE_KEY = "template";
+
+    /**
+     * The template variable holding the {@link PageList} of the project.
+     */
+    private static final String PAGES_KEY = "pages";
+
+    /**
+     * The rendered pages cache. Serves the previews of documents switched
+     * back to, the pages of the preview server and the pages exported again.
+     * Previews of the document being edited rely on their
+     * {@link IncrementalMarkdownRenderer} instead.
+     */
+    private static final RenderCache CACHE = new RenderCache();
+
+    /**
+     * The count of pages requested, so that the {@link RenderWarmUp} can tell
+     * when real work arrives.
+     */
+    private static final AtomicLong REQUESTS = new AtomicLong();
+
+    static {
+        Metrics.gauge("render.cache.hits", CACHE::getHits);
+        Metrics.gauge("render.cache.misses", CACHE::getMisses);
+        Metrics.gauge("render.cache.bytes", CACHE::getSize);
+        Metrics.gauge("render.cache.evictions", CACHE::getEvictions);
+    }
+
     /**
      * Renders the content. Provides the option to the preview facility by
      * injecting a window scrolling java-script function in the markup and a
@@ -72,6 +132,13 @@ public final class TemplateRenderer {
      * If the isPreview is false it will assume the markup generated is not
      * going to be used in a {@code WebView} preview.
      *
+     * Pages are served from the {@link RenderCache} when the markdown, the
+     * templates the page depends on and their modification time are
+     * unchanged. Pages listing the project pages also require their metadata
+     * to be unchanged. The dependencies met rendering the page are recorded
+     * in the project {@link TemplateDependencies}. The time taken by pages not
+     * cached is recorded in the {@link Metrics#RENDER_PAGE_NANOS} histogram.
+     *
      * @param markdown of the main
      * @param basePath for preview media loading
      * @return the page markup
@@ -80,18 +147,245 @@ public final class TemplateRenderer {
             final String markdown,
             final Path basePath,
             final boolean isPreview) {
-        final List<Extension> extensions
-                = Arrays.asList(YamlFrontMatterExtension.create());
-        final Parser parser = Parser.builder().extensions(extensions).build();
-        final Node document = parser.parse(markdown);
-        final YamlFrontMatterVisitor frontMatterVisitor
-                = new YamlFrontMatterVisitor();
-        document.accept(frontMatterVisitor);
-        final HtmlRenderer renderer = HtmlRenderer.builder().build();
-        final String markup = renderer.render(document);
+        REQUESTS.incrementAndGet();
+        return renderCached(markdown, basePath, isPreview, null, null);
+    }
+
+    /**
+     * Renders the content converting the markdown through an
+     * {@link IncrementalMarkdownRenderer}. Only the blocks changed since the
+     * previous render of the same document are parsed. For preview, the
+     * blocks are tagged with their source line, so that the preview can be
+     * scrolled to the line at the top of the editor.
+     *
+     * Pages rendered through an {@link IncrementalMarkdownRenderer} are not
+     * cached: each edit results in a page never requested again, and hashing
+     * the whole document on every keystroke would cost more than the blocks
+     * parsed. Documents just opened go through
+     * {@link #renderCached(String, Path, boolean, IncrementalMarkdownRenderer)}
+     * instead.
+     *
+     * @param markdown of the main
+     * @param basePath for preview media loading
+     * @param isPreview whether the markup is for preview
+     * @param markdownRenderer holding the document state, null to parse the
+     * whole markdown
+     * @return the page markup
+     */
+    public static String render(
+            final String markdown,
+            final Path basePath,
+            final boolean isPreview,
+            final IncrementalMarkdownRenderer markdownRenderer) {
+        REQUESTS.incrementAndGet();
+        if (markdownRenderer == null) {
+            return renderCached(markdown, basePath, isPreview, null, null);
+        }
+        return renderTimed(markdown, basePath, isPreview, markdownRenderer,
+                null);
+    }
+
+    /**
+     * Renders the content of a document just opened, or switched back to,
+     * through an {@link IncrementalMarkdownRenderer}. The page is served from
+     * the {@link RenderCache} when unchanged since the document was last
+     * rendered this way, otherwise the renderer parses the whole markdown and
+     * the page is cached.
+     *
+     * @param markdown of the main
+     * @param basePath for preview media loading
+     * @param isPreview whether the markup is for preview
+     * @param markdownRenderer to hold the document state
+     * @return the page markup
+     */
+    public static String renderCached(
+            final String markdown,
+            final Path basePath,
+            final boolean isPreview,
+            final IncrementalMarkdownRenderer markdownRenderer) {
+        REQUESTS.incrementAndGet();
+        return renderCached(markdown, basePath, isPreview, markdownRenderer,
+                null);
+    }
+
+    /**
+     * Renders a page to export, served from the {@link RenderCache} when
+     * unchanged since the previous export.
+     *
+     * @param markdown of the main
+     * @param basePath of the page
+     * @return the page markup
+     */
+    public static String renderForExport(
+            final String markdown,
+            final Path basePath) {
+        return renderForExport(markdown, basePath, null);
+    }
+
+    /**
+     * Renders a page to export, handing over the markdown document parsed,
+     * front matter included, so that it can be analysed further, for
+     * instance indexed, without parsing the markdown again. Pages served from
+     * the {@link RenderCache} are not parsed, the consumer is then not
+     * invoked.
+     *
+     * @param markdown of the main
+     * @param basePath of the page
+     * @param documentConsumer of the markdown document, null if none
+     * @return the page markup
+     */
+    public static String renderForExport(
+            final String markdown,
+            final Path basePath,
+            final Consumer<Node> documentConsumer) {
+        REQUESTS.incrementAndGet();
+        return renderCached(markdown, basePath, false, null,
+                documentConsumer);
+    }
+
+    /**
+     * Retrieves a page from the {@link RenderCache} or renders and caches
+     * it. The page is cached under the dependencies recorded by its render,
+     * which may differ from the ones known beforehand. Preview pages are
+     * always converted through an {@link IncrementalMarkdownRenderer}, a new
+     * one if none is given, so that the pages cached carry the source lines
+     * whichever way they are requested.
+     *
+     * @param markdown of the main
+     * @param basePath of the page
+     * @param isPreview whether the markup is for preview
+     * @param markdownRenderer holding the document state, null if none
+     * @param documentConsumer of the markdown document parsed, null if none
+     * @return the page markup
+     */
+    private static String renderCached(
+            final String markdown,
+            final Path basePath,
+            final boolean isPreview,
+            final IncrementalMarkdownRenderer markdownRenderer,
+            final Consumer<Node> documentConsumer) {
+        final String cachedPage = CACHE.get(
+                cacheKey(markdown, basePath, isPreview));
+        if (cachedPage != null) {
+            return cachedPage;
+        }
+        final IncrementalMarkdownRenderer renderer
+                = isPreview && markdownRenderer == null
+                        ? new IncrementalMarkdownRenderer()
+                        : markdownRenderer;
+        final String page = renderTimed(markdown, basePath, isPreview,
+                renderer, documentConsumer);
+        CACHE.put(cacheKey(markdown, basePath, isPreview), page);
+        return page;
+    }
+
+    /**
+     * Renders a page bypassing the cache and the metrics. Meant for warming
+     * up the rendering libraries.
+     *
+     * @param markdown of the main
+     * @param basePath of the page
+     * @param isPreview whether the markup is for preview
+     * @param markdownRenderer holding the document state
+     * @return the page markup
+     */
+    static String renderUncached(
+            final String markdown,
+            final Path basePath,
+            final boolean isPreview,
+            final IncrementalMarkdownRenderer markdownRenderer) {
+        return renderPage(markdown, basePath, isPreview, markdownRenderer,
+                null, MetadataIndex.of(basePath),
+                TemplateDependencies.of(basePath));
+    }
+
+    /**
+     * Retrieves the count of pages requested so far, cached or not.
+     *
+     * @return the count of requests
+     */
+    static long getRequestCount() {
+        return REQUESTS.get();
+    }
+
+    /**
+     * Renders a page recording the time taken in the
+     * {@link Metrics#RENDER_PAGE_NANOS} histogram.
+     *
+     * @param markdown of the main
+     * @param basePath of the page
+     * @param isPreview whether the markup is for preview
+     * @param markdownRenderer holding the document state, null to parse the
+     * whole markdown
+     * @param documentConsumer of the markdown document parsed, null if none
+     * @return the page markup
+     */
+    private static String renderTimed(
+            final String markdown,
+            final Path basePath,
+            final boolean isPreview,
+            final IncrementalMarkdownRenderer markdownRenderer,
+            final Consumer<Node> documentConsumer) {
+        final long start = System.nanoTime();
+        final String page = renderPage(markdown, basePath, isPreview,
+                markdownRenderer, documentConsumer, MetadataIndex.of(basePath),
+                TemplateDependencies.of(basePath));
+        Metrics.recordSince(Metrics.RENDER_PAGE_NANOS, start);
+        return page;
+    }
+
+    /**
+     * Renders a page: converts the markdown, processes the template and, for
+     * preview, injects the base path and scrolling scripts.
+     *
+     * @param markdown of the main
+     * @param basePath of the page
+     * @param isPreview whether the markup is for preview
+     * @param markdownRenderer holding the document state, null to parse the
+     * whole markdown
+     * @param documentConsumer of the markdown document, null if none. Not
+     * invoked for documents held by a markdownRenderer, parsed in blocks
+     * @param metadataIndex of the project
+     * @param dependencies of the project
+     * @return the page markup
+     */
+    private static String renderPage(
+            final String markdown,
+            final Path basePath,
+            final boolean isPreview,
+            final IncrementalMarkdownRenderer markdownRenderer,
+            final Consumer<Node> documentConsumer,
+            final MetadataIndex metadataIndex,
+            final TemplateDependencies dependencies) {
+        final String markup;
+        final Map<String, List<String>> data;
+        if (markdownRenderer == null) {
+            final YamlFrontMatterVisitor frontMatterVisitor
+                    = new YamlFrontMatterVisitor();
+            markup = Trace.time("render.markdown", () -> {
+                final List<Extension> extensions
+                        = Arrays.asList(YamlFrontMatterExtension.create());
+                final Parser parser
+                        = Parser.builder().extensions(extensions).build();
+                final Node document = parser.parse(markdown);
+                document.accept(frontMatterVisitor);
+                if (documentConsumer != null) {
+                    documentConsumer.accept(document);
+                }
+                return HtmlRenderer.builder().build().render(document);
+            });
+            data = frontMatterVisitor.getData();
+        } else {
+            markup = Trace.time("render.markdown",
+                    () -> markdownRenderer.render(markdown, isPreview));
+            data = markdownRenderer.getFrontMatter();
+        }
         final Context context = new Context();
         context.setVariable("main", markup);
-        final Map<String, List<String>> data = frontMatterVisitor.getData();
+        final TemplateDependencies.Recording recording
+                = new TemplateDependencies.Recording();
+        context.setVariable(PAGES_KEY, new PageList(
+                new MetadataReadRecorder(metadataIndex.getPages(), recording)));
         data.keySet().stream().forEach((key) -> {
             final StringBuilder valueBuilder = new StringBuilder();
             data.get(key).forEach((item) -> {
@@ -100,21 +394,101 @@ public final class TemplateRenderer {
             final String value = valueBuilder.toString();
             context.setVariable(key, value);
         });
-        final String html = render(context, basePath.getParent());
-        Document htmlDoc = Jsoup.parse(html);
-        if (isPreview) {
-            LOGGER.info("Project base path: " + basePath);
-            Element headElement = htmlDoc.head();
-            Element firstElement = headElement.children().first();
-            if (firstElement != null) {
-                firstElement.before(getBaseTag(basePath));
-                firstElement.before(WINDOW_SCROLL_FUNCTION);
-            } else {
-                headElement.append(getBaseTag(basePath));
-                headElement.append(WINDOW_SCROLL_FUNCTION);
+        final String html = render(context, basePath.getParent(), recording);
+        dependencies.record(basePath, recording);
+        return Trace.time("render.markup", () -> {
+            Document htmlDoc = Jsoup.parse(html);
+            if (isPreview) {
+                LOGGER.log(Level.FINE, "Project base path: {0}", basePath);
+                Element headElement = htmlDoc.head();
+                Element firstElement = headElement.children().first();
+                if (firstElement != null) {
+                    firstElement.before(getBaseTag(basePath));
+                    firstElement.before(SCROLL_TO_LINE_FUNCTION);
+                } else {
+                    headElement.append(getBaseTag(basePath));
+                    headElement.append(SCROLL_TO_LINE_FUNCTION);
+                }
             }
+            return htmlDoc.toString();
+        });
+    }
+
+    /**
+     * Retrieves the rendered pages cache. Mainly for metrics purposes.
+     *
+     * @return the cache
+     */
+    public static RenderCache getCache() {
+        return CACHE;
+    }
+
+    /**
+     * Builds the cache key of a page from the dependencies recorded for it.
+     * Pages listing the project pages, or never rendered, depend on the
+     * version of the project metadata.
+     *
+     * @param markdown of the page
+     * @param basePath of the page
+     * @param isPreview whether the markup is for preview
+     * @return the cache key
+     */
+    private static RenderCache.Key cacheKey(
+            final String markdown,
+            final Path basePath,
+            final boolean isPreview) {
+        final TemplateDependencies dependencies
+                = TemplateDependencies.of(basePath);
+        final boolean readsMetadata = !dependencies.contains(basePath)
+                || dependencies.readsMetadata(basePath);
+        return cacheKey(markdown, basePath,
+                readsMetadata ? MetadataIndex.of(basePath).getVersion() : 0,
+                isPreview);
+    }
+
+    /**
+     * Builds the cache key of a page resolving the template it refers to.
+     *
+     * @param markdown of the page
+     * @param basePath of the page
+     * @param metadataVersion of the project {@link MetadataIndex}
+     * @param isPreview whether the markup is for preview
+     * @return the cache key
+     */
+    private static RenderCache.Key cacheKey(
+            final String markdown,
+            final Path basePath,
+            final long metadataVersion,
+            final boolean isPreview) {
+        final Path projectPath = basePath.getParent();
+        final Path templatePath = projectPath.resolve(TEMPLATES_DIR_NAME)
+                .resolve(readTemplateName(markdown) + TEMPLATE_SUFFIX);
+        String templateId;
+        long templateModified;
+        try {
+            templateModified
+                    = Files.getLastModifiedTime(templatePath).toMillis();
+            templateId = templatePath.toString();
+        } catch (IOException ex) {
+            templateModified = 0;
+            templateId = DEFAULT_TEMPLATE_NAME;
         }
-        return htmlDoc.toString();
+        templateModified = Math.max(templateModified,
+                TemplateDependencies.of(basePath).getLastModified(basePath));
+        return new RenderCache.Key(markdown, templateId, templateModified,
+                projectPath.toString(), metadataVersion, isPreview);
+    }
+
+    /**
+     * Reads the template name parsing the front matter only.
+     *
+     * @param markdown of the page
+     * @return the template name, "null" if none is defined
+     */
+    private static String readTemplateName(final String markdown) {
+        final List<String> values
+                = FrontMatterScanner.scan(markdown).get(TEMPLATE_KEY);
+        return values == null ? "null" : String.join("", values);
     }
 
     /**
@@ -131,15 +505,18 @@ public final class TemplateRenderer {
      * Renders the markup to the template provided a Thymeleaf context.
      *
      * @param context to process against
+     * @param basePath the directory holding the templates directory
+     * @param recording of the templates resolved
      * @return the compiled markup.
      */
     private static String render(
             final Context context,
-            final Path basePath) {
+            final Path basePath,
+            final TemplateDependencies.Recording recording) {
         String output;
         try {
             final FileTemplateResolver fileTemplateResover
-                    = new FileTemplateResolver();
+                    = new RecordingTemplateResolver(recording);
             final Path templatesPath = basePath.resolve(TEMPLATES_DIR_NAME);
             fileTemplateResover.setPrefix(templatesPath + "/");
             fileTemplateResover.setTemplateMode(TemplateMode.HTML);
@@ -147,8 +524,11 @@ public final class TemplateRenderer {
             final TemplateEngine templateEngine = new TemplateEngine();
             templateEngine.setTemplateResolver(fileTemplateResover);
             final String template = "" + context.getVariable("template");
-            LOGGER.log(Level.INFO, "Rendering {0}", template);
-            output = templateEngine.process(template, context);
+            LOGGER.log(Level.FINE, "Rendering {0}", template);
+            final long start = System.nanoTime();
+            output = Trace.time("render.template",
+                    () -> templateEngine.process(template, context));
+            Metrics.recordSince(Metrics.RENDER_TEMPLATE_NANOS, start);
         } catch (Exception ex) {
             LOGGER.log(Level.SEVERE, "Using default template.", ex);
             final ClassLoaderTemplateResolver fileTemplateResover
@@ -161,4 +541,67 @@ public final class TemplateRenderer {
         }
         return output;
     }
+
+    /**
+     * A {@link FileTemplateResolver} recording the templates resolved, the
+     * page template and the ones fragments are included from, and timing
+     * their resolution.
+     */
+    private static final class RecordingTemplateResolver
+            extends FileTemplateResolver {
+
+        private final TemplateDependencies.Recording recording;
+
+        private RecordingTemplateResolver(
+                final TemplateDependencies.Recording recording) {
+            this.recording = recording;
+        }
+
+        @Override
+        protected ITemplateResource computeTemplateResource(
+                final IEngineConfiguration configuration,
+                final String ownerTemplate,
+                final String template,
+                final String resourceName,
+                final String characterEncoding,
+                final Map<String, Object> templateResolutionAttributes) {
+            final long start = System.nanoTime();
+            recording.resolved(ownerTemplate, template, Paths.get(resourceName));
+            final ITemplateResource resource = super.computeTemplateResource(
+                    configuration, ownerTemplate, template, resourceName,
+                    characterEncoding, templateResolutionAttributes);
+            Metrics.recordSince(Metrics.TEMPLATE_RESOLVE_NANOS, start);
+            return resource;
+        }
+    }
+
+    /**
+     * The project pages as seen by the templates, recording whether they are
+     * read.
+     */
+    private static final class MetadataReadRecorder
+            extends AbstractList<PageMetadata> {
+
+        private final List<PageMetadata> pages;
+        private final TemplateDependencies.Recording recording;
+
+        private MetadataReadRecorder(
+                final List<PageMetadata> pages,
+                final TemplateDependencies.Recording recording) {
+            this.pages = pages;
+            this.recording = recording;
+        }
+
+        @Override
+        public PageMetadata get(final int index) {
+            recording.metadataRead();
+            return pages.get(index);
+        }
+
+        @Override
+        public int size() {
+            recording.metadataRead();
+            return pages.size();
+        }
+    }
 }
@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Span style timing of the hot paths: rendering, exporting, uploading and
+ * previewing.
+ *
+ * Tracing is off unless the {@value #TRACE_KEY} system property is set, and
+ * can be turned on and off at runtime, also through the JMX
+ * {@link MetricsMXBean}. When off, sections run as they are and
+ * {@link #span(String)} returns a shared no-op span: no span is allocated,
+ * nothing is timed or logged. When on, each span
+ * records its duration in the {@code trace.<name>.nanos} histogram of the
+ * {@link Metrics} and logs it at {@code FINER}.
+ *
+ * <pre>
+ * final String output = Trace.time("render.template",
+ *         () -&gt; templateEngine.process(template, context));
+ * </pre>
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class Trace {
+
+    private static final Logger LOGGER = Logger.getLogger(Trace.class.getName());
+
+    /**
+     * The system property enabling tracing on start.
+     */
+    public static final String TRACE_KEY = "publo.trace";
+
+    private static final String METRIC_PREFIX = "trace.";
+    private static final String METRIC_SUFFIX = ".nanos";
+
+    private static final Span NOOP = new Span(null, null, 0);
+
+    private static volatile boolean enabled = Boolean.getBoolean(TRACE_KEY);
+
+    private Trace() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns tracing on or off. Spans open remain as they are.
+     *
+     * @param isEnabled whether to trace
+     */
+    public static void setEnabled(final boolean isEnabled) {
+        enabled = isEnabled;
+        LOGGER.log(Level.INFO, "Tracing {0}.", isEnabled ? "on" : "off");
+    }
+
+    /**
+     * Opens a span.
+     *
+     * @param name of the span, a constant
+     * @return the span, to close once done
+     */
+    public static Span span(final String name) {
+        return enabled ? new Span(name, null, System.nanoTime()) : NOOP;
+    }
+
+    /**
+     * Opens a span with a detail, such as the page path, only computed if
+     * tracing.
+     *
+     * @param name of the span, a constant
+     * @param detail of the span, logged on close
+     * @return the span, to close once done
+     */
+    public static Span span(final String name, final Supplier<?> detail) {
+        return enabled ? new Span(name, detail, System.nanoTime()) : NOOP;
+    }
+
+    /**
+     * Runs a section of code in a span.
+     *
+     * @param <T> the type of the section result
+     * @param <E> the type of the exception the section may throw
+     * @param name of the span, a constant
+     * @param section to run
+     * @return the section result
+     * @throws E if the section fails
+     */
+    public static <T, E extends Exception> T time(
+            final String name,
+            final Section<T, E> section) throws E {
+        return time(name, null, section);
+    }
+
+    /**
+     * Runs a section of code in a span with a detail, such as the page path,
+     * only computed if tracing.
+     *
+     * @param <T> the type of the section result
+     * @param <E> the type of the exception the section may throw
+     * @param name of the span, a constant
+     * @param detail of the span, logged on close
+     * @param section to run
+     * @return the section result
+     * @throws E if the section fails
+     */
+    public static <T, E extends Exception> T time(
+            final String name,
+            final Supplier<?> detail,
+            final Section<T, E> section) throws E {
+        if (!enabled) {
+            return section.call();
+        }
+        final Span span = new Span(name, detail, System.nanoTime());
+        try {
+            return section.call();
+        } finally {
+            span.close();
+        }
+    }
+
+    /**
+     * Runs a block of code, returning nothing, in a span with a detail only
+     * computed if tracing.
+     *
+     * @param <E> the type of the exception the block may throw
+     * @param name of the span, a constant
+     * @param detail of the span, logged on close
+     * @param block to run
+     * @throws E if the block fails
+     */
+    public static <E extends Exception> void run(
+            final String name,
+            final Supplier<?> detail,
+            final Block<E> block) throws E {
+        time(name, detail, () -> {
+            block.run();
+            return null;
+        });
+    }
+
+    /**
+     * A section of code returning a result.
+     *
+     * @param <T> the type of the result
+     * @param <E> the type of the exception thrown
+     */
+    @FunctionalInterface
+    public interface Section<T, E extends Exception> {
+
+        T call() throws E;
+    }
+
+    /**
+     * A block of code returning nothing.
+     *
+     * @param <E> the type of the exception thrown
+     */
+    @FunctionalInterface
+    public interface Block<E extends Exception> {
+
+        void run() throws E;
+    }
+
+    /**
+     * A timed section of code.
+     */
+    public static final class Span implements AutoCloseable {
+
+        private final String name;
+        private final Supplier<?> detail;
+        private final long start;
+
+        private Span(
+                final String name,
+                final Supplier<?> detail,
+                final long start) {
+            this.name = name;
+            this.detail = detail;
+            this.start = start;
+        }
+
+        /**
+         * Closes the span recording its duration. Does nothing for spans
+         * opened while not tracing.
+         */
+        @Override
+        public void close() {
+            if (name == null) {
+                return;
+            }
+            final long nanos = System.nanoTime() - start;
+            Metrics.histogram(METRIC_PREFIX + name + METRIC_SUFFIX)
+                    .record(nanos);
+            if (LOGGER.isLoggable(Level.FINER)) {
+                LOGGER.log(Level.FINER, "{0} {1} {2} us", new Object[]{
+                    name, detail == null ? "" : detail.get(), nanos / 1000});
+            }
+        }
+    }
+}
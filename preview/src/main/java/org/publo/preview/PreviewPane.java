@@ -24,16 +24,29 @@
 package org.publo.preview;
 
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
 import javafx.beans.property.ReadOnlyObjectProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.concurrent.Worker;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
+import org.publo.controller.utils.IncrementalMarkdownRenderer;
+import org.publo.controller.utils.MetadataIndex;
+import org.publo.controller.utils.RenderService;
+import org.publo.controller.utils.TemplateDependencies;
 import org.publo.controller.utils.TemplateRenderer;
+import org.publo.controller.utils.Trace;
 
 /**
  * A {@code BorderPane} {@code WebView}.
@@ -51,30 +64,127 @@ public final class PreviewPane
     private final WebView webView;
     private final WebEngine webEngine;
 
+    /**
+     * The number of documents whose preview is kept, as many as the editor
+     * keeps open by default.
+     */
+    private static final int PREVIEWED_DOCUMENTS = 8;
+
+    /**
+     * The documents recently previewed by path, least recently used first.
+     * Accessed on the application thread only.
+     */
+    private final Map<Path, PreviewedDocument> previewedDocuments
+            = new LinkedHashMap<Path, PreviewedDocument>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(
+                final Map.Entry<Path, PreviewedDocument> eldest) {
+            return size() > PREVIEWED_DOCUMENTS;
+        }
+    };
+
     /**
      * The {@code WebView} markup base path. Used to point the
      * {@code WebEngine to the corrent assets location}.
      */
     private Path basePath;
 
+    /**
+     * The markdown previewed.
+     */
+    private String markdown;
+
+    /**
+     * The base path of the last render started. Accessed on the application
+     * thread only.
+     */
+    private Path renderedPath;
+
+    /**
+     * Whether a render is in progress. Accessed on the application thread
+     * only.
+     */
+    private boolean rendering;
+
+    /**
+     * Whether the markdown changed since the render in progress started.
+     * Accessed on the application thread only.
+     */
+    private boolean stale;
+
+    /**
+     * The source line to scroll to, applied once per frame. Accessed on the
+     * application thread only.
+     */
+    private double scrollLine;
+
+    /**
+     * The source line the page was last scrolled to, NaN if none.
+     */
+    private double scrolledLine = Double.NaN;
+
+    /**
+     * Applies the latest source line requested on the next frame, then
+     * stops.
+     */
+    private final AnimationTimer scrollTimer = new AnimationTimer() {
+        @Override
+        public void handle(final long now) {
+            stop();
+            applyScrollLine();
+        }
+    };
+
     public PreviewPane() {
         this.webView = new WebView();
         this.webEngine = this.webView.getEngine();
         this.setCenter(this.webView);
+        this.webEngine.getLoadWorker().stateProperty().addListener(
+                (observable, oldState, newState) -> {
+                    if (newState == Worker.State.SUCCEEDED) {
+                        scrolledLine = Double.NaN;
+                        applyScrollLine();
+                    }
+                });
     }
 
     /**
-     * Scrolls the {@code WebView} to the requested percentage.
+     * Scrolls the {@code WebView} to the element rendered from a source line.
+     *
+     * Requests are applied once per frame at most, the latest one winning, so
+     * that scrolling the editor does not run a script per scroll event. Pages
+     * loaded afterwards are scrolled to the same line.
      *
-     * @param percentage of the page to scroll to
+     * @param line of the source, fractional parts scrolling part way to the
+     * next block
      */
-    public void scrollTo(double percentage) {
-        this.webEngine.executeScript("window.scrollWin(" + percentage + ");");
+    public void scrollToLine(final double line) {
+        this.scrollLine = line;
+        scrollTimer.start();
+    }
+
+    private void applyScrollLine() {
+        if (scrollLine == scrolledLine || webEngine.getLoadWorker()
+                .getState() != Worker.State.SUCCEEDED) {
+            return;
+        }
+        scrolledLine = scrollLine;
+        try {
+            webEngine.executeScript("if (window.scrollToLine) {"
+                    + " window.scrollToLine(" + scrollLine + "); }");
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.FINE, "Could not scroll the preview.", ex);
+        }
     }
 
     /**
      * On change of the {@code TextArea} update the {@code WebView}.
      *
+     * The page is rendered in the {@link RenderService.Lane#INTERACTIVE} lane
+     * so that typing is not held back by the render. Changes made while a
+     * render is in progress are rendered together once it completes, the
+     * outdated page being discarded.
+     *
      * @param observable not used
      * @param oldValue used to verify the presence of changes
      * @param newValue populate the area
@@ -84,18 +194,168 @@ public final class PreviewPane
             final ObservableValue observable,
             final String oldValue,
             final String newValue) {
-        LOGGER.info("Updating the Preview Pane.");
-        final String renderedMarkup
-                = TemplateRenderer.render(newValue, this.basePath, true);
-        webEngine.loadContent(renderedMarkup);
+        LOGGER.fine("Updating the Preview Pane.");
+        this.markdown = newValue;
+        if (rendering) {
+            stale = true;
+        } else {
+            render();
+        }
+    }
+
+    /**
+     * Renders the markdown in the background, loading the page unless the
+     * markdown changed in the meantime.
+     *
+     * Switching back to a document recently previewed loads its last page
+     * as is when neither its markdown, its templates nor the project
+     * metadata changed since. Otherwise only the blocks changed are parsed,
+     * each document keeping its own {@link IncrementalMarkdownRenderer}. The
+     * first render of a document goes through the render cache.
+     */
+    private void render() {
+        rendering = true;
+        stale = false;
+        final String source = this.markdown;
+        final Path path = this.basePath;
+        final boolean switched = !Objects.equals(path, renderedPath);
+        renderedPath = path;
+        final PreviewedDocument document = previewedDocuments
+                .computeIfAbsent(path, key -> new PreviewedDocument());
+        final RenderedPage previous = switched ? document.page : null;
+        final CompletableFuture<RenderedPage> page = RenderService
+                .getInstance().submit(RenderService.Lane.INTERACTIVE,
+                        () -> Trace.time("preview.update",
+                                () -> document.render(source, path, switched,
+                                        previous)));
+        page.whenComplete((renderedPage, ex) -> Platform.runLater(() -> {
+            rendering = false;
+            if (ex != null) {
+                LOGGER.log(Level.SEVERE, "Could not render the preview.", ex);
+            }
+            if (stale) {
+                render();
+            } else if (renderedPage != null) {
+                document.page = renderedPage;
+                webEngine.loadContent(renderedPage.markup);
+            }
+        }));
+    }
+
+    /**
+     * On change of a project resource update the {@code WebView} if the page
+     * previewed depends on it, being one of its templates.
+     *
+     * @param path of the resource changed
+     */
+    public void invalidate(final Path path) {
+        if (basePath == null || markdown == null) {
+            return;
+        }
+        if (TemplateDependencies.of(basePath).getAffectedPages(path)
+                .contains(basePath)) {
+            LOGGER.log(Level.INFO, "Template {0} changed.", path);
+            changed(null, markdown, markdown);
+        }
     }
 
     @Override
     public void invalidated(Observable observable) {
-        LOGGER.info("Updating the base path for preview.");
+        LOGGER.fine("Updating the base path for preview.");
         final ReadOnlyObjectProperty property
                 = (ReadOnlyObjectProperty) observable;
         final Path path = (Path) property.getValue();
         this.basePath = path;
     }
+
+    /**
+     * A document previewed: the renderer holding its blocks and its last page
+     * loaded.
+     */
+    private static final class PreviewedDocument {
+
+        private final IncrementalMarkdownRenderer markdownRenderer
+                = new IncrementalMarkdownRenderer();
+
+        /**
+         * The last page loaded, null if none. Accessed on the application
+         * thread only.
+         */
+        private RenderedPage page;
+
+        /**
+         * Renders the markdown of the document, unless the page previously
+         * loaded is still current.
+         *
+         * @param markdown to render
+         * @param path of the document
+         * @param switched whether the document was just switched to
+         * @param previous page loaded, null if none
+         * @return the page
+         */
+        private RenderedPage render(
+                final String markdown,
+                final Path path,
+                final boolean switched,
+                final RenderedPage previous) {
+            if (previous != null && previous.isCurrent(markdown, path)) {
+                return previous;
+            }
+            final String markup = switched && previous == null
+                    ? TemplateRenderer.renderCached(markdown, path, true,
+                            markdownRenderer)
+                    : TemplateRenderer.render(markdown, path, true,
+                            markdownRenderer);
+            return new RenderedPage(markdown, path, markup);
+        }
+    }
+
+    /**
+     * A page rendered along with what it was rendered from: the markdown,
+     * the latest modification of its templates and, for pages listing the
+     * project pages, the project metadata version.
+     */
+    private static final class RenderedPage {
+
+        private final String markdown;
+        private final long templatesModified;
+        private final long metadataVersion;
+        private final String markup;
+
+        private RenderedPage(
+                final String markdown,
+                final Path path,
+                final String markup) {
+            this.markdown = markdown;
+            this.templatesModified = templatesModified(path);
+            this.metadataVersion = metadataVersion(path);
+            this.markup = markup;
+        }
+
+        /**
+         * Whether the page would render the same from the markdown.
+         *
+         * @param markdown of the document
+         * @param path of the document
+         * @return true if neither the markdown, the templates nor the
+         * metadata read changed
+         */
+        private boolean isCurrent(final String markdown, final Path path) {
+            return this.markdown.equals(markdown)
+                    && templatesModified == templatesModified(path)
+                    && metadataVersion == metadataVersion(path);
+        }
+
+        private static long templatesModified(final Path path) {
+            return TemplateDependencies.of(path).getLastModified(path);
+        }
+
+        private static long metadataVersion(final Path path) {
+            final TemplateDependencies dependencies
+                    = TemplateDependencies.of(path);
+            return dependencies.readsMetadata(path)
+                    ? MetadataIndex.of(path).getVersion()
+                    : 0;
+        }
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Measures the latency of the first page rendered in a fresh JVM, with and
+ * without the {@link RenderWarmUp} having run beforehand. Each run happens in
+ * a child JVM, the median of {@value #RUNS} runs being reported.
+ *
+ * Run with {@code java -cp <test classpath>
+ * org.publo.controller.utils.FirstRenderBenchmark}.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class FirstRenderBenchmark {
+
+    private static final int RUNS = 7;
+
+    private static final String CHILD = "child";
+
+    private FirstRenderBenchmark() {
+    }
+
+    /**
+     * Renders a page, after warming up if requested, and prints the time taken
+     * by the render in microseconds.
+     */
+    private static void child(final boolean warmUp) throws IOException {
+        if (warmUp) {
+            RenderWarmUp.warmUp(RenderWarmUp.MAX_RENDERS);
+        }
+        final Path projectPath = Files.createTempDirectory("publo-benchmark");
+        final Path page = projectPath.resolve("page.md");
+        final String markdown = "---\ntitle: First\n---\n\n# First page\n\n"
+                + "Some *markdown* with a [link](other.html).\n\n- a\n- b\n";
+        Files.write(page, markdown.getBytes(StandardCharsets.UTF_8));
+        final long start = System.nanoTime();
+        TemplateRenderer.render(markdown, page, true);
+        System.out.println((System.nanoTime() - start) / 1000);
+    }
+
+    private static long median(final boolean warmUp)
+            throws IOException, InterruptedException {
+        final long[] micros = new long[RUNS];
+        final String java = System.getProperty("java.home") + File.separator
+                + "bin" + File.separator + "java";
+        for (int i = 0; i < RUNS; i++) {
+            final Process process = new ProcessBuilder(java, "-cp",
+                    System.getProperty("java.class.path"),
+                    FirstRenderBenchmark.class.getName(), CHILD,
+                    Boolean.toString(warmUp))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(),
+                            StandardCharsets.UTF_8))) {
+                micros[i] = Long.parseLong(reader.readLine().trim());
+            }
+            process.waitFor();
+        }
+        Arrays.sort(micros);
+        return micros[RUNS / 2];
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && CHILD.equals(args[0])) {
+            child(Boolean.parseBoolean(args[1]));
+            return;
+        }
+        System.out.printf("First render, cold      %10.1f ms%n",
+                median(false) / 1e3);
+        System.out.printf("First render, warmed up %10.1f ms%n",
+                median(true) / 1e3);
+    }
+}
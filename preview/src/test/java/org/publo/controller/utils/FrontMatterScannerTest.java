@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.commonmark.ext.front.matter.YamlFrontMatterExtension;
+import org.commonmark.ext.front.matter.YamlFrontMatterVisitor;
+import org.commonmark.parser.Parser;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FrontMatterScannerTest {
+
+    private static final String[] LINES = {
+        "---", "...", "--- x", "", "  ", "title: Page", "template: my-template",
+        "tags:", "  - java", "   -  markdown ", "- not an item", "text: |",
+        "  literal line", "    more", "bad key: value", "  indented: yes",
+        "# Heading", "key:", "key:    spaced", "----"
+    };
+
+    private static Map<String, List<String>> parse(final String markdown) {
+        final Parser parser = Parser.builder()
+                .extensions(Arrays.asList(YamlFrontMatterExtension.create()))
+                .build();
+        final YamlFrontMatterVisitor visitor = new YamlFrontMatterVisitor();
+        parser.parse(markdown).accept(visitor);
+        return visitor.getData();
+    }
+
+    @Test
+    public void testValues() throws Exception {
+        final String markdown = "---\n"
+                + "title: Page\n"
+                + "tags:\n"
+                + "  - java\n"
+                + "  - markdown\n"
+                + "text: |\n"
+                + "  first\n"
+                + "  second\n"
+                + "empty:\n"
+                + "---\n"
+                + "\n"
+                + "# Page\n";
+        final Map<String, List<String>> data = FrontMatterScanner.scan(markdown);
+        assertEquals(Arrays.asList("Page"), data.get("title"));
+        assertEquals(Arrays.asList("java", "markdown"), data.get("tags"));
+        assertEquals(Arrays.asList("first\nsecond"), data.get("text"));
+        assertTrue(data.get("empty").isEmpty());
+        assertEquals(parse(markdown), data);
+    }
+
+    @Test
+    public void testNoFrontMatter() throws Exception {
+        assertTrue(FrontMatterScanner.scan("# Page\n---\ntitle: x\n---\n")
+                .isEmpty());
+        assertTrue(FrontMatterScanner.scan("").isEmpty());
+    }
+
+    @Test
+    public void testByteOrderMarkAndLineEndings() throws Exception {
+        assertEquals(Arrays.asList("Page"), FrontMatterScanner
+                .scan("\uFEFF---\r\ntitle: Page\r\n---\r\nBody").get("title"));
+    }
+
+    @Test
+    public void testReadsNoFurtherThanTheHeader() throws Exception {
+        final String header = "---\ntitle: Page\n---\n";
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            body.append("Some body text.\n");
+        }
+        final int[] read = new int[1];
+        final Reader reader = new StringReader(header + body) {
+            @Override
+            public int read(char[] buffer, int offset, int length)
+                    throws IOException {
+                final int count = super.read(buffer, offset, length);
+                read[0] += Math.max(count, 0);
+                return count;
+            }
+        };
+        assertEquals(Arrays.asList("Page"),
+                FrontMatterScanner.scan(reader).get("title"));
+        assertTrue(read[0] <= header.length() + 1024);
+    }
+
+    @Test
+    public void testRandomDocumentsMatchFullParse() throws Exception {
+        final Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            final StringBuilder markdown = new StringBuilder();
+            final int count = random.nextInt(12);
+            if (random.nextInt(4) > 0) {
+                markdown.append("---\n");
+            }
+            for (int l = 0; l < count; l++) {
+                markdown.append(LINES[random.nextInt(LINES.length)])
+                        .append('\n');
+            }
+            assertEquals(markdown.toString(), parse(markdown.toString()),
+                    FrontMatterScanner.scan(markdown.toString()));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import org.commonmark.parser.Parser;
+import org.commonmark.renderer.html.HtmlRenderer;
+
+/**
+ * Compares the per-keystroke cost of the incremental renderer against a full
+ * parse and render of documents of increasing size.
+ *
+ * Run with {@code java -cp <test classpath>
+ * org.publo.controller.utils.IncrementalMarkdownRendererBenchmark}.
+ *
+ * @author Antonio Cucchiara
+ * @since 0.4
+ */
+public final class IncrementalMarkdownRendererBenchmark {
+
+    private static final int[] LINES = {1_000, 10_000, 50_000};
+
+    private static final int KEYSTROKES = 200;
+
+    private static final String SECTION = "## Section\n"
+            + "\n"
+            + "Some *emphasis* and a [link](http://example.com) in a\n"
+            + "paragraph spanning a couple of lines.\n"
+            + "\n"
+            + "- item one\n"
+            + "- item two\n"
+            + "\n"
+            + "```\n"
+            + "code\n"
+            + "```\n"
+            + "\n";
+
+    private static final int SECTION_LINES = 12;
+
+    private IncrementalMarkdownRendererBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        final Parser parser = Parser.builder().build();
+        final HtmlRenderer renderer = HtmlRenderer.builder().build();
+        for (int lines : LINES) {
+            final StringBuilder document = new StringBuilder();
+            for (int i = 0; i < lines / SECTION_LINES; i++) {
+                document.append(SECTION);
+            }
+            String markdown = document.toString();
+            final IncrementalMarkdownRenderer incremental
+                    = new IncrementalMarkdownRenderer();
+            incremental.render(markdown);
+            final int offset
+                    = markdown.indexOf("couple", markdown.length() / 2);
+
+            long incrementalNanos = 0;
+            long fullNanos = 0;
+            for (int i = 0; i < KEYSTROKES; i++) {
+                markdown = markdown.substring(0, offset) + 'x'
+                        + markdown.substring(offset);
+                long start = System.nanoTime();
+                incremental.render(markdown);
+                incrementalNanos += System.nanoTime() - start;
+                start = System.nanoTime();
+                renderer.render(parser.parse(markdown));
+                fullNanos += System.nanoTime() - start;
+            }
+            System.out.printf("%,7d lines: incremental %8.3f ms,"
+                    + " full %8.3f ms per keystroke%n",
+                    lines,
+                    incrementalNanos / 1e6 / KEYSTROKES,
+                    fullNanos / 1e6 / KEYSTROKES);
+        }
+    }
+}
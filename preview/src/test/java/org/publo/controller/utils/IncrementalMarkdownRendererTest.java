@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.commonmark.ext.front.matter.YamlFrontMatterExtension;
+import org.commonmark.parser.Parser;
+import org.commonmark.renderer.html.HtmlRenderer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IncrementalMarkdownRendererTest {
+
+    private static final String DOCUMENT = "---\n"
+            + "title: Page\n"
+            + "template: my-template\n"
+            + "---\n"
+            + "\n"
+            + "# Heading\n"
+            + "\n"
+            + "A paragraph with a [link][ref].\n"
+            + "\n"
+            + "- loose\n"
+            + "\n"
+            + "- list\n"
+            + "\n"
+            + "    continued\n"
+            + "\n"
+            + "```\n"
+            + "code\n"
+            + "\n"
+            + "more code\n"
+            + "```\n"
+            + "\n"
+            + "<!--\n"
+            + "\n"
+            + "comment\n"
+            + "-->\n"
+            + "\n"
+            + "> quote\n"
+            + "\n"
+            + "[ref]: http://example.com\n";
+
+    private static String renderFully(String markdown) {
+        final Parser parser = Parser.builder()
+                .extensions(Arrays.asList(YamlFrontMatterExtension.create()))
+                .build();
+        return HtmlRenderer.builder().build().render(parser.parse(markdown));
+    }
+
+    @Test
+    public void testBlocksCoverTheSource() throws Exception {
+        final IncrementalMarkdownRenderer renderer
+                = new IncrementalMarkdownRenderer();
+        renderer.render(DOCUMENT);
+        assertEquals(DOCUMENT, String.join("", renderer.getBlocks()));
+        assertEquals(8, renderer.getBlocks().size());
+    }
+
+    @Test
+    public void testRenderMatchesFullRender() throws Exception {
+        final IncrementalMarkdownRenderer renderer
+                = new IncrementalMarkdownRenderer();
+        assertEquals(renderFully(DOCUMENT), renderer.render(DOCUMENT));
+        assertEquals("[Page]", renderer.getFrontMatter().get("title")
+                .toString());
+    }
+
+    @Test
+    public void testEditParsesAffectedBlocksOnly() throws Exception {
+        final IncrementalMarkdownRenderer renderer
+                = new IncrementalMarkdownRenderer();
+        renderer.render(DOCUMENT);
+        final String edited = DOCUMENT.replace("# Heading", "# Headings");
+        assertEquals(renderFully(edited), renderer.render(edited));
+        assertEquals(1, renderer.getBlocksParsed());
+    }
+
+    @Test
+    public void testRandomEditsMatchFullRender() throws Exception {
+        final IncrementalMarkdownRenderer renderer
+                = new IncrementalMarkdownRenderer();
+        final Random random = new Random(42);
+        final String alphabet = "ab \n\n-`#>[]:*1.";
+        String markdown = DOCUMENT;
+        for (int i = 0; i < 500; i++) {
+            final int offset = random.nextInt(markdown.length() + 1);
+            final int removed = Math.min(random.nextInt(3),
+                    markdown.length() - offset);
+            final char inserted
+                    = alphabet.charAt(random.nextInt(alphabet.length()));
+            markdown = markdown.substring(0, offset) + inserted
+                    + markdown.substring(offset + removed);
+            assertEquals(renderFully(markdown), renderer.render(markdown));
+            assertEquals(markdown, String.join("", renderer.getBlocks()));
+        }
+    }
+
+    @Test
+    public void testSourceLines() throws Exception {
+        final IncrementalMarkdownRenderer renderer
+                = new IncrementalMarkdownRenderer();
+        final String markup = renderer.render(DOCUMENT, true);
+        assertTrue(markup.contains("<h1 data-source-line=\"5\">Heading"));
+        assertTrue(markup.contains("<p data-source-line=\"7\">A paragraph"));
+        assertEquals(renderFully(DOCUMENT),
+                markup.replaceAll(" data-source-line=\"\\d+\"", ""));
+        final String edited = DOCUMENT.replace("# Heading", "# Heading\n\n");
+        assertTrue(renderer.render(edited, true)
+                .contains("<p data-source-line=\"9\">A paragraph"));
+        assertEquals(renderFully(edited), renderer.render(edited));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class MetadataIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path project;
+
+    private Path write(final String name, final String content)
+            throws Exception {
+        final Path path = project.resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private static String post(final String title, final String date) {
+        return "---\ntitle: " + title + "\ndate: " + date
+                + "\ntemplate: post\ntags:\n  - java\n  - " + title
+                + "\n---\n\n# " + title + "\n";
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        project = folder.getRoot().toPath()
+                .resolve(TemplateRenderer.PROJ_DIR_NAME).resolve("site");
+        write("index.md", "---\ntitle: Home\ntemplate: home\n---\n\n# Home\n");
+        write("blog/first.md", post("first", "2017-01-01"));
+        write("blog/second.md", post("second", "2017-02-01"));
+        write("about.md", "# About\n");
+        write("templates/draft.md", post("draft", "2017-03-01"));
+    }
+
+    @Test
+    public void testProjectRootOfNestedPage() throws Exception {
+        assertEquals(project, MetadataIndex.projectRootOf(
+                project.resolve("blog/first.md")));
+        assertEquals(project, MetadataIndex.projectRootOf(project));
+    }
+
+    @Test
+    public void testQueries() throws Exception {
+        final PageList pages
+                = MetadataIndex.of(project.resolve("index.md")).getPages();
+        assertEquals(4, pages.size());
+        assertEquals("about.md", pages.get(0).getPath());
+        final PageList posts = pages.under("blog").where("template", "post")
+                .sortedBy("date").reversed();
+        assertEquals(2, posts.size());
+        assertEquals("second", posts.get(0).get("title"));
+        assertEquals("blog/second.html", posts.get(0).getUrl());
+        assertEquals(1, pages.tagged("tags", "first").size());
+        assertEquals(3, pages.having("title").size());
+        assertEquals(1, posts.limit(1).size());
+        assertNull(pages.sortedBy("date").get(3).get("date"));
+    }
+
+    @Test
+    public void testVersionChangesWithMetadataOnly() throws Exception {
+        final MetadataIndex index = MetadataIndex.of(project);
+        final long version = index.getVersion();
+        index.refresh();
+        assertEquals(version, index.getVersion());
+
+        final Path first = write("blog/first.md",
+                post("first", "2017-01-01") + "\nMore body.\n");
+        Files.setLastModifiedTime(first, FileTime.fromMillis(
+                Files.getLastModifiedTime(first).toMillis() + 2000));
+        MetadataIndex.invalidate(first);
+        assertEquals(version, index.getVersion());
+
+        write("blog/third.md", post("third", "2017-03-01"));
+        MetadataIndex.invalidate(project.resolve("blog/third.md"));
+        assertEquals(version + 1, index.getVersion());
+        assertEquals(3, index.getPages().where("template", "post").size());
+    }
+
+    @Test
+    public void testOnlyPagesChangedAreRead() throws Exception {
+        final MetadataIndex index = MetadataIndex.of(project);
+        final long version = index.getVersion();
+        write("blog/unseen.md", post("unseen", "2017-04-01"));
+        MetadataIndex.invalidate(write("blog/.first.md.autosave", "draft"));
+        MetadataIndex.invalidate(write("target/blog/first.html", "page"));
+        MetadataIndex.invalidate(write("templates/post.html", "<html/>"));
+        assertEquals(version, index.getVersion());
+        assertEquals(4, index.getPages().size());
+
+        final Path third = write("blog/third.md", post("third", "2017-03-01"));
+        MetadataIndex.invalidate(third);
+        assertEquals(version + 1, index.getVersion());
+        assertEquals(5, index.getPages().size());
+        Files.delete(third);
+        MetadataIndex.invalidate(third);
+        assertEquals(version + 2, index.getVersion());
+        assertEquals(4, index.getPages().size());
+    }
+
+    @Test
+    public void testTemplatesListPages() throws Exception {
+        write("templates/home.html", "<html><body><ul>"
+                + "<li th:each=\"post : ${pages.where('template', 'post')"
+                + ".sortedBy('date')}\" th:text=\"${post.data.title}\">"
+                + "</li></ul></body></html>");
+        final Path index = project.resolve("index.md");
+        final String page = TemplateRenderer.render(
+                new String(Files.readAllBytes(index), StandardCharsets.UTF_8),
+                index, false);
+        assertTrue(page, page.contains("<li>first</li>"));
+        assertTrue(page.indexOf("<li>first</li>")
+                < page.indexOf("<li>second</li>"));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBucketsCoverTheValues() throws Exception {
+        for (long value = 0; value < 100_000; value++) {
+            final long upperBound
+                    = Histogram.upperBoundOf(Histogram.bucketOf(value));
+            assertTrue(value <= upperBound);
+            assertTrue(upperBound - value <= value / 8);
+        }
+        assertTrue(Histogram.upperBoundOf(Histogram.bucketOf(Long.MAX_VALUE))
+                >= Long.MAX_VALUE / 8 * 7);
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        final Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getSum());
+        assertEquals(1000, histogram.getMax());
+        final long median = histogram.getPercentile(50);
+        assertTrue(median >= 500 && median <= 500 * 9 / 8);
+        assertEquals(1000, histogram.getPercentile(100));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void testReportAndJmx() throws Exception {
+        Metrics.counter("test.counter").add(3);
+        Metrics.histogram("test.nanos").record(42);
+        Metrics.gauge("test.gauge", () -> 7);
+        assertEquals(Long.valueOf(3), Metrics.getValues().get("test.counter"));
+        assertEquals(Long.valueOf(42), Metrics.getValues().get("test.nanos.p99"));
+
+        final Path report = folder.getRoot().toPath().resolve("report.json");
+        Metrics.writeReport(report, 5_000_000);
+        final String json = new String(Files.readAllBytes(report),
+                StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"durationMillis\":5,"));
+        assertTrue(json.contains("\"test.gauge\":7"));
+
+        Metrics.register();
+        Metrics.register();
+        final TabularData values = (TabularData) ManagementFactory
+                .getPlatformMBeanServer().getAttribute(
+                        new ObjectName(Metrics.OBJECT_NAME), "Values");
+        assertNotNull(values.get(new Object[]{"test.counter"}));
+
+        Metrics.reset();
+        assertEquals(Long.valueOf(0), Metrics.getValues().get("test.counter"));
+        assertEquals(Long.valueOf(7), Metrics.getValues().get("test.gauge"));
+    }
+}
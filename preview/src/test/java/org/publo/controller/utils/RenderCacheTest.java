@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class RenderCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static RenderCache.Key key(String markdown, boolean isPreview) {
+        return new RenderCache.Key(markdown, "template", 1L, "base",
+                isPreview);
+    }
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        final RenderCache cache = new RenderCache(1024 * 1024);
+        assertNull(cache.get(key("# Title", false)));
+        cache.put(key("# Title", false), "<h1>Title</h1>");
+        assertEquals("<h1>Title</h1>", cache.get(key("# Title", false)));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testPreviewFlagIsPartOfTheKey() throws Exception {
+        final RenderCache cache = new RenderCache(1024 * 1024);
+        cache.put(key("# Title", false), "<h1>Title</h1>");
+        assertNull(cache.get(key("# Title", true)));
+    }
+
+    @Test
+    public void testTemplateModificationIsPartOfTheKey() throws Exception {
+        final RenderCache cache = new RenderCache(1024 * 1024);
+        cache.put(key("# Title", false), "<h1>Title</h1>");
+        assertNull(cache.get(new RenderCache.Key("# Title", "template", 2L,
+                "base", false)));
+    }
+
+    @Test
+    public void testEvictionWithinBudget() throws Exception {
+        final RenderCache cache = new RenderCache(1200);
+        final String page = new String(new char[200]);
+        cache.put(key("a", false), page);
+        cache.put(key("b", false), page);
+        cache.get(key("a", false));
+        cache.put(key("c", false), page);
+        assertTrue(cache.getSize() <= cache.getBudget());
+        assertEquals(1, cache.getEvictions());
+        assertNotNull(cache.get(key("a", false)));
+        assertNull(cache.get(key("b", false)));
+    }
+
+    @Test
+    public void testPageLargerThanBudgetIsNotCached() throws Exception {
+        final RenderCache cache = new RenderCache(100);
+        cache.put(key("a", false), new String(new char[200]));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testShrinkingTheBudgetEvicts() throws Exception {
+        final RenderCache cache = new RenderCache(1024 * 1024);
+        final String page = new String(new char[200]);
+        cache.put(key("a", false), page);
+        cache.put(key("b", false), page);
+        cache.setBudget(600);
+        assertEquals(1, cache.getEntryCount());
+        assertNotNull(cache.get(key("b", false)));
+    }
+
+    @Test
+    public void testEditsAreNotCached() throws Exception {
+        final Path page = folder.newFile("page.md").toPath();
+        final RenderCache cache = TemplateRenderer.getCache();
+        final int entries = cache.getEntryCount();
+        final long misses = cache.getMisses();
+        TemplateRenderer.render("# Typed", page, true,
+                new IncrementalMarkdownRenderer());
+        assertEquals(entries, cache.getEntryCount());
+        assertEquals(misses, cache.getMisses());
+    }
+
+    @Test
+    public void testSwitchAndExportRendersAreCached() throws Exception {
+        final Path page = folder.newFile("page.md").toPath();
+        final RenderCache cache = TemplateRenderer.getCache();
+        final IncrementalMarkdownRenderer renderer
+                = new IncrementalMarkdownRenderer();
+        final String preview = TemplateRenderer.renderCached("# Opened",
+                page, true, renderer);
+        TemplateRenderer.render("# Typed", page, true, renderer);
+        final long hits = cache.getHits();
+        assertEquals(preview, TemplateRenderer.renderCached("# Opened", page,
+                true, renderer));
+        final String exported = TemplateRenderer.renderForExport("# Exported",
+                page);
+        assertEquals(exported, TemplateRenderer.renderForExport("# Exported",
+                page, document -> fail("Served from the cache.")));
+        assertEquals(hits + 2, cache.getHits());
+    }
+}
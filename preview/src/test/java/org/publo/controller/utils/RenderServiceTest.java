@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.publo.controller.utils.RenderService.Lane;
+
+public class RenderServiceTest {
+
+    private static String await(CountDownLatch latch, String result) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    @Test
+    public void testInteractiveRenderDoesNotWaitForBackgroundOnes()
+            throws Exception {
+        final RenderService service = new RenderService(1, 8);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            service.submit(Lane.EXPORT, () -> await(release, "export"));
+            assertEquals("preview", service.submit(Lane.INTERACTIVE,
+                    () -> "preview").get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testMostUrgentLaneFirst() throws Exception {
+        final RenderService service = new RenderService(1, 8);
+        final CountDownLatch releaseInteractive = new CountDownLatch(1);
+        final CountDownLatch releaseExport = new CountDownLatch(1);
+        final CountDownLatch exportStarted = new CountDownLatch(1);
+        final CountDownLatch interactiveStarted = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(
+                new ArrayList<>());
+        try {
+            service.submit(Lane.EXPORT, () -> {
+                exportStarted.countDown();
+                return await(releaseExport, "e1");
+            });
+            assertTrue(exportStarted.await(5, TimeUnit.SECONDS));
+            service.submit(Lane.INTERACTIVE, () -> {
+                interactiveStarted.countDown();
+                return await(releaseInteractive, "i1");
+            });
+            assertTrue(interactiveStarted.await(5, TimeUnit.SECONDS));
+            final CompletableFuture<Boolean> e2 = service.submit(Lane.EXPORT,
+                    () -> order.add("e2"));
+            service.submit(Lane.WATCH, () -> order.add("w1"));
+            service.submit(Lane.INTERACTIVE, () -> order.add("i2"));
+            assertEquals(1, service.getDepth(Lane.EXPORT));
+            releaseExport.countDown();
+            e2.get(5, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList("i2", "w1", "e2"), order);
+        } finally {
+            releaseInteractive.countDown();
+            releaseExport.countDown();
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testCappedLaneLeavesWorkersToOthers() throws Exception {
+        final RenderService service = new RenderService(2, 8);
+        service.setConcurrency(Lane.EXPORT, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch exportStarted = new CountDownLatch(1);
+        try {
+            service.submit(Lane.EXPORT, () -> {
+                exportStarted.countDown();
+                return await(release, "e1");
+            });
+            assertTrue(exportStarted.await(5, TimeUnit.SECONDS));
+            final CompletableFuture<String> e2 = service.submit(Lane.EXPORT,
+                    () -> "e2");
+            assertEquals("w1", service.submit(Lane.WATCH, () -> "w1")
+                    .get(5, TimeUnit.SECONDS));
+            assertFalse(e2.isDone());
+            assertEquals(1, service.getDepth(Lane.EXPORT));
+            release.countDown();
+            assertEquals("e2", e2.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testFullLaneBlocksTheProducer() throws Exception {
+        final RenderService service = new RenderService(0, 1);
+        service.submit(Lane.EXPORT, () -> "queued");
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final Thread producer = new Thread(() -> {
+            try {
+                service.submit(Lane.EXPORT, () -> "held back");
+            } catch (RejectedExecutionException ex) {
+                failure.set(ex);
+            }
+        });
+        producer.start();
+        for (int i = 0; i < 500
+                && producer.getState() != Thread.State.WAITING; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, producer.getState());
+        assertEquals(1, service.getDepth(Lane.EXPORT));
+        service.shutdown();
+        producer.join(5000);
+        assertNotNull(failure.get());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class RenderWarmUpTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWarmUpBypassesTheCache() throws Exception {
+        final int entries = TemplateRenderer.getCache().getEntryCount();
+        final long misses = TemplateRenderer.getCache().getMisses();
+        assertEquals(4, RenderWarmUp.warmUp(4));
+        assertEquals(entries, TemplateRenderer.getCache().getEntryCount());
+        assertEquals(misses, TemplateRenderer.getCache().getMisses());
+    }
+
+    @Test
+    public void testWarmUpStopsOnRealRender() throws Exception {
+        final CompletableFuture<Integer> renders = CompletableFuture
+                .supplyAsync(() -> RenderWarmUp.warmUp(Integer.MAX_VALUE));
+        Thread.sleep(200);
+        final Path page = folder.newFile("page.md").toPath();
+        Files.write(page, "# Real".getBytes());
+        TemplateRenderer.render("# Real", page, false);
+        assertTrue(renders.get(30, TimeUnit.SECONDS) < Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class TemplateDependenciesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path project;
+
+    private Path write(final String name, final String content)
+            throws Exception {
+        final Path path = project.resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private String render(final Path page) throws Exception {
+        return TemplateRenderer.render(new String(Files.readAllBytes(page),
+                StandardCharsets.UTF_8), page, false);
+    }
+
+    private static void touch(final Path path) throws Exception {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(
+                Files.getLastModifiedTime(path).toMillis() + 2000));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        project = folder.getRoot().toPath()
+                .resolve(TemplateRenderer.PROJ_DIR_NAME).resolve("site");
+        write("templates/page.html", "<html><body><main th:utext=\"${main}\">"
+                + "</main><div th:replace=\"~{layout :: footer}\"></div>"
+                + "</body></html>");
+        write("templates/layout.html", "<html><body>"
+                + "<footer th:fragment=\"footer\">"
+                + "<p th:replace=\"~{legal :: notice}\"></p></footer>"
+                + "</body></html>");
+        write("templates/legal.html", "<html><body>"
+                + "<p th:fragment=\"notice\">Copyright</p></body></html>");
+        write("templates/plain.html", "<html><body>"
+                + "<main th:utext=\"${main}\"></main></body></html>");
+        write("templates/list.html", "<html><body><ul>"
+                + "<li th:each=\"p : ${pages}\" th:text=\"${p.path}\"></li>"
+                + "</ul></body></html>");
+        write("index.md", "---\ntemplate: page\n---\n\n# Home\n");
+        write("about.md", "---\ntemplate: plain\n---\n\n# About\n");
+        write("list.md", "---\ntemplate: list\n---\n");
+    }
+
+    @Test
+    public void testEdgesAreRecordedWhileRendering() throws Exception {
+        final Path index = project.resolve("index.md");
+        final Path about = project.resolve("about.md");
+        assertTrue(render(index).contains("Copyright"));
+        render(about);
+        final TemplateDependencies dependencies = TemplateDependencies.of(index);
+        assertEquals(new HashSet<>(Arrays.asList(
+                project.resolve("templates/page.html"),
+                project.resolve("templates/layout.html"),
+                project.resolve("templates/legal.html"))),
+                dependencies.getTemplates(index));
+        assertEquals(Collections.singleton(index), dependencies
+                .getAffectedPages(project.resolve("templates/legal.html")));
+        assertEquals(Collections.singleton(about), dependencies
+                .getAffectedPages(project.resolve("templates/plain.html")));
+        assertFalse(dependencies.readsMetadata(index));
+    }
+
+    @Test
+    public void testFragmentChangeInvalidatesCachedPage() throws Exception {
+        final Path index = project.resolve("index.md");
+        assertTrue(render(index).contains("Copyright"));
+        final Path legal = write("templates/legal.html", "<html><body>"
+                + "<p th:fragment=\"notice\">Copyleft</p></body></html>");
+        touch(legal);
+        assertTrue(render(index).contains("Copyleft"));
+    }
+
+    @Test
+    public void testListingPagesReadMetadata() throws Exception {
+        final Path list = project.resolve("list.md");
+        assertTrue(render(list).contains("<li>about.md</li>"));
+        assertTrue(TemplateDependencies.of(list).readsMetadata(list));
+    }
+
+    @Test
+    public void testGraphIsPersisted() throws Exception {
+        final Path index = project.resolve("index.md");
+        render(index);
+        render(project.resolve("list.md"));
+        TemplateDependencies.of(index).save();
+        assertTrue(Files.exists(project.resolve(TemplateDependencies.FILE_NAME)));
+
+        final TemplateDependencies loaded = new TemplateDependencies(project);
+        loaded.load();
+        assertTrue(loaded.contains(index));
+        assertEquals(TemplateDependencies.of(index).getTemplates(index),
+                loaded.getTemplates(index));
+        assertTrue(loaded.readsMetadata(project.resolve("list.md")));
+        assertEquals(Collections.singleton(index), loaded.getAffectedPages(
+                project.resolve("templates/layout.html")));
+    }
+}
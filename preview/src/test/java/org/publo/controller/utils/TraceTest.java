@@ -0,0 +1,55 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016-2017 Antonino Cucchiara.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.publo.controller.utils;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TraceTest {
+
+    @After
+    public void disable() {
+        Trace.setEnabled(false);
+    }
+
+    @Test
+    public void testSpansAreNoOpWhenDisabled() throws Exception {
+        Trace.setEnabled(false);
+        final Trace.Span span = Trace.span("test.off");
+        assertSame(span, Trace.span("test.other", () -> "detail"));
+        span.close();
+        assertEquals("value", Trace.time("test.off", () -> "value"));
+        assertFalse(Metrics.getValues().containsKey("trace.test.off.nanos.count"));
+    }
+
+    @Test
+    public void testSpansAreTimedWhenEnabled() throws Exception {
+        Trace.setEnabled(true);
+        Trace.run("test.on", () -> "detail", () -> Thread.sleep(1));
+        assertEquals(1, Metrics.histogram("trace.test.on.nanos").getCount());
+        assertTrue(Metrics.histogram("trace.test.on.nanos").getMax()
+                >= 1_000_000);
+    }
+}